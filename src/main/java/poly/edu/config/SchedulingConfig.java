@@ -0,0 +1,12 @@
+package poly.edu.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Bật @Scheduled cho các job nền (flush inventory ledger, ...)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,87 @@
+package poly.edu.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.Locale;
+
+/**
+ * Đếm câu SQL Hibernate phát ra trên thread hiện tại (và số cột trong SELECT list),
+ * dùng để đo một trang / một đoạn code phát bao nhiêu query.
+ * <p>
+ * Đăng ký qua hibernate.session_factory.statement_inspector, chỉ trong test và profile diagnostics
+ * (application-diagnostics.properties); khi không có phiên đếm nào đang mở trên thread thì inspect
+ * chỉ trả lại câu SQL. Không thấy các câu chạy qua JdbcTemplate.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<Counts> CURRENT = new ThreadLocal<>();
+
+    // Hibernate tạo instance khi inspector được đăng ký
+    private static volatile boolean registered = false;
+
+    public SqlStatementCounter() {
+        registered = true;
+    }
+
+    public static boolean isRegistered() {
+        return registered;
+    }
+
+    /**
+     * Kết quả đếm
+     *
+     * @param selectColumns tổng số cột trong SELECT list của các câu select
+     */
+    public record Counts(int statements, int selects, int selectColumns) {
+    }
+
+    // Bắt đầu đếm trên thread hiện tại (reset nếu đang đếm)
+    public static void start() {
+        CURRENT.set(new Counts(0, 0, 0));
+    }
+
+    // Dừng đếm và trả về kết quả từ lần start() gần nhất
+    public static Counts stop() {
+        Counts counts = CURRENT.get();
+        CURRENT.remove();
+        return counts != null ? counts : new Counts(0, 0, 0);
+    }
+
+    public static Counts current() {
+        Counts counts = CURRENT.get();
+        return counts != null ? counts : new Counts(0, 0, 0);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        Counts counts = CURRENT.get();
+        if (counts != null) {
+            int columns = selectColumns(sql);
+            CURRENT.set(new Counts(counts.statements() + 1,
+                    counts.selects() + (columns > 0 ? 1 : 0),
+                    counts.selectColumns() + columns));
+        }
+        return sql;
+    }
+
+    // Số biểu thức trong SELECT list (đếm dấu phẩy ở ngoài ngoặc tới FROM đầu tiên), 0 nếu không phải select
+    static int selectColumns(String sql) {
+        String lower = sql.stripLeading().toLowerCase(Locale.ROOT);
+        if (!lower.startsWith("select ")) return 0;
+        int depth = 0;
+        int columns = 1;
+        for (int i = "select ".length(); i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && c == ',') {
+                columns++;
+            } else if (depth == 0 && lower.startsWith(" from ", i)) {
+                break;
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,121 @@
+package poly.edu.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.EnableAsync;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+/**
+ * Chế độ virtual thread cho web tier, @Async và @Scheduled.
+ * <p>
+ * Bật bằng spring.threads.virtual.enabled=true; Spring Boot chỉ áp dụng khi chạy trên Java 21+
+ * (build vẫn target Java 17, chạy trên Java 17 thì giữ platform thread).
+ * Đi kèm: theo dõi virtual thread bị pin (JFR event jdk.VirtualThreadPinned, ví dụ chờ I/O bên trong
+ * synchronized) và Semaphore giới hạn số connection JDBC đang mượn.
+ */
+@Configuration
+@EnableAsync
+public class VirtualThreadConfig {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsRequested;
+
+    @Value("${threads.pinning-diagnostics.enabled:true}")
+    private boolean pinningDiagnostics;
+
+    @Value("${threads.pinning-diagnostics.threshold-ms:20}")
+    private long pinningThresholdMs;
+
+    private RecordingStream pinningStream;
+
+    /**
+     * Bọc DataSource bằng ConnectionLimitingDataSource (static để không khởi tạo sớm cả config này)
+     */
+    @Bean
+    public static BeanPostProcessor connectionLimitingPostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof ConnectionLimitingDataSource) {
+                    return bean;
+                }
+                boolean virtual = environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false);
+                if (!environment.getProperty("jdbc.connection-limit.enabled", Boolean.class, virtual)) {
+                    return bean;
+                }
+                // 0 = bằng kích thước pool, để thread chờ trên Semaphore thay vì timeout trong pool
+                int permits = environment.getProperty("jdbc.connection-limit.permits", Integer.class, 0);
+                if (permits <= 0) {
+                    permits = bean instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 10;
+                }
+                long timeoutMs = environment.getProperty("jdbc.connection-limit.acquire-timeout-ms", Long.class, 30000L);
+                return new ConnectionLimitingDataSource(dataSource, permits, timeoutMs);
+            }
+        };
+    }
+
+    /**
+     * Kiểm tra chế độ thread đang chạy và bật theo dõi pinning
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportThreadMode() {
+        int javaVersion = Runtime.version().feature();
+        boolean virtualActive = virtualThreadsRequested && javaVersion >= 21;
+        if (virtualThreadsRequested && !virtualActive) {
+            System.err.println("spring.threads.virtual.enabled=true needs Java 21+, running on Java "
+                    + javaVersion + " with platform threads");
+            return;
+        }
+        if (virtualActive && pinningDiagnostics) {
+            startPinningDiagnostics();
+        }
+    }
+
+    @PreDestroy
+    public void stopPinningDiagnostics() {
+        if (pinningStream != null) {
+            pinningStream.close();
+        }
+    }
+
+    private void startPinningDiagnostics() {
+        try {
+            pinningStream = new RecordingStream();
+            pinningStream.enable(PINNED_EVENT)
+                    .withThreshold(Duration.ofMillis(pinningThresholdMs))
+                    .withStackTrace();
+            pinningStream.onEvent(PINNED_EVENT, VirtualThreadConfig::logPinned);
+            pinningStream.startAsync();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR starting pinning diagnostics: " + e.getMessage());
+        }
+    }
+
+    private static void logPinned(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        String where = stackTrace == null ? "unknown" : stackTrace.getFrames().stream()
+                .filter(RecordedFrame::isJavaFrame)
+                .limit(8)
+                .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                        + ":" + frame.getLineNumber())
+                .collect(Collectors.joining(" <- "));
+        System.err.println("Virtual thread pinned for " + event.getDuration().toMillis() + " ms at " + where);
+    }
+}
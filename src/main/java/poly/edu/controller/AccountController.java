@@ -14,6 +14,7 @@ import poly.edu.dao.RoleDAO;
 import poly.edu.model.Account;
 import poly.edu.model.Role;
 import poly.edu.service.AuthService;
+import poly.edu.service.DashboardMetrics;
 import poly.edu.service.MailService;
 
 import java.time.LocalDateTime;
@@ -42,6 +43,9 @@ public class AccountController {
     @Autowired
     private AuthService authService;
 
+    @Autowired
+    private DashboardMetrics dashboardMetrics;
+
     // ================== TRANG TÀI KHOẢN CHÍNH ==================
     @GetMapping
     public String accountPage(Model model) {
@@ -113,6 +117,7 @@ public class AccountController {
         }
 
         accountDAO.save(account);
+        dashboardMetrics.onAccountCreated(account);
 
         model.addAttribute("message", "✅ Đăng ký thành công! Hãy đăng nhập.");
         return "poly/taikhoan/login-register";
@@ -164,6 +169,7 @@ public class AccountController {
 
             // Lưu vào database
             accountDAO.save(currentUser);
+            authService.invalidateAccount(currentUser.getUsername());
             
             // Cập nhật lại thông tin trong session (nếu bạn đang lưu user trong session thủ công)
             // session.setAttribute("account", currentUser); 
@@ -9,6 +9,7 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import poly.edu.model.Category;
 import poly.edu.repository.CategoryRepository;
 import poly.edu.service.AuthService;
+import poly.edu.service.CategoryService;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -24,6 +25,9 @@ public class AdminCategoryController {
     @Autowired
     private AuthService authService;
 
+    @Autowired
+    private CategoryService categoryService;
+
     /**
      * Hiển thị danh sách loại sản phẩm
      * URL: /admin/categories
@@ -132,7 +136,7 @@ public class AdminCategoryController {
             }
 
             category.setCreatedAt(LocalDateTime.now());
-            categoryRepository.save(category);
+            categoryService.saveCategory(category);
 
             redirectAttributes.addFlashAttribute("message", "✅ Thêm loại sản phẩm thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -204,7 +208,7 @@ public class AdminCategoryController {
 
             existing.setName(formCategory.getName());
             existing.setDescription(formCategory.getDescription());
-            categoryRepository.save(existing);
+            categoryService.saveCategory(existing);
 
             redirectAttributes.addFlashAttribute("message", "✅ Cập nhật loại sản phẩm thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -243,7 +247,7 @@ public class AdminCategoryController {
                 return "redirect:/admin/categories";
             }
 
-            categoryRepository.delete(cat);
+            categoryService.deleteCategory(cat);
             redirectAttributes.addFlashAttribute("message", "✅ Xóa loại sản phẩm thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
 
@@ -1,37 +1,73 @@
 package poly.edu.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import poly.edu.dao.AccountDAO;
-import poly.edu.model.Account;
+import poly.edu.config.SqlStatementCounter;
+import poly.edu.model.SalesRollup.Dimension;
+import poly.edu.model.SalesRollup.Grain;
 import poly.edu.repository.ProductRepository;
 import poly.edu.service.AuthService;
-import poly.edu.service.OrderService;
+import poly.edu.service.CatalogCache;
+import poly.edu.service.DashboardMetrics;
+import poly.edu.service.ProjectionReport;
+import poly.edu.service.ReviewService;
+import poly.edu.service.SalesAnalytics;
+import poly.edu.service.SalesRollupBackfill;
+import poly.edu.service.MailDispatcher;
+import poly.edu.service.StockRetryPolicy;
+import poly.edu.util.TinyLfuCache;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
 
 @Controller
 @RequestMapping("/admin")
 public class AdminDashboardController {
     
-    @Autowired
-    private OrderService orderService;
-    
     @Autowired
     private ProductRepository productRepository;
     
     @Autowired
-    private AccountDAO accountDAO;
+    private DashboardMetrics dashboardMetrics;
     
     @Autowired
     private AuthService authService;
     
+    @Autowired
+    private CatalogCache catalogCache;
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private ProjectionReport projectionReport;
+
+    @Autowired
+    private StockRetryPolicy stockRetryPolicy;
+
+    @Autowired
+    private MailDispatcher mailDispatcher;
+
+    @Autowired
+    private SalesAnalytics salesAnalytics;
+
+    @Autowired
+    private SalesRollupBackfill salesRollupBackfill;
+    
     @GetMapping("/dashboard")
     public String adminDashboard(Model model, RedirectAttributes redirectAttributes) {
         // 1. Kiểm tra đăng nhập
@@ -51,35 +87,22 @@ public class AdminDashboardController {
         try {
             // --- THỐNG KÊ TỔNG QUAN ---
             
-            // Đếm đơn hàng (Null check an toàn)
-            List<?> orders = orderService.getAllOrders();
-            long totalOrders = (orders != null) ? orders.size() : 0;
+            // Số đơn / tài khoản / doanh thu đọc từ counter (DashboardMetrics), không quét Order / Account
+            DashboardMetrics.Stats stats = dashboardMetrics.stats();
+            long totalOrders = stats.totalOrders();
             
             // Đếm sản phẩm
             long totalProducts = productRepository.count();
             
             // Đếm tổng tài khoản
-            long totalAccounts = accountDAO.count();
+            long totalAccounts = stats.totalAccounts();
             
             // --- PHÂN LOẠI TÀI KHOẢN (USER vs EMPLOYEE) ---
-            List<Account> allAccounts = accountDAO.findAll();
-            if (allAccounts == null) allAccounts = new ArrayList<>();
-
-            long totalUsers = allAccounts.stream()
-                .filter(acc -> acc.getRoles() != null && acc.getRoles().stream()
-                    .anyMatch(role -> "USER".equalsIgnoreCase(role.getRoleName())))
-                .count();
-            
-            long totalEmployees = allAccounts.stream()
-                .filter(acc -> acc.getRoles() != null && acc.getRoles().stream()
-                    .anyMatch(role -> "EMPLOYEE".equalsIgnoreCase(role.getRoleName())))
-                .count();
+            long totalUsers = stats.accounts("USER");
+            long totalEmployees = stats.accounts("EMPLOYEE");
             
             // --- DOANH THU ---
-            Double totalRevenue = orderService.getTotalRevenue();
-            if (totalRevenue == null) {
-                totalRevenue = 0.0;
-            }
+            double totalRevenue = stats.totalRevenue();
             
             // Đưa dữ liệu vào Model
             model.addAttribute("totalOrders", totalOrders);
@@ -91,11 +114,11 @@ public class AdminDashboardController {
             
             // --- THỐNG KÊ TRẠNG THÁI ĐƠN HÀNG ---
             // Giả sử: 1=Pending, 2=Processing, 3=Shipped, 4=Delivered, 5=Cancelled
-            long pendingOrders = orderService.countOrdersByStatus(1);
-            long processingOrders = orderService.countOrdersByStatus(2);
-            long shippedOrders = orderService.countOrdersByStatus(3);
-            long deliveredOrders = orderService.countOrdersByStatus(4);
-            long cancelledOrders = orderService.countOrdersByStatus(5);
+            long pendingOrders = stats.orders(1);
+            long processingOrders = stats.orders(2);
+            long shippedOrders = stats.orders(3);
+            long deliveredOrders = stats.orders(4);
+            long cancelledOrders = stats.orders(5);
             
             model.addAttribute("pendingOrders", pendingOrders);
             model.addAttribute("processingOrders", processingOrders);
@@ -124,4 +147,136 @@ public class AdminDashboardController {
     public String adminRedirect() {
         return "redirect:/admin/dashboard";
     }
-}
\ No newline at end of file
+    
+    // Thống kê catalog cache (hit / miss / eviction) dạng JSON cho admin
+    @GetMapping("/cache-stats")
+    @ResponseBody
+    public ResponseEntity<?> cacheStats() {
+        if (!authService.hasRole("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        List<TinyLfuCache.Stats> stats = new ArrayList<>(catalogCache.stats());
+        stats.add(reviewService.getFirstPageCacheStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    // So sánh entity với projection (số câu SQL, dòng, cột, byte JSON) trên trang listing / bảng đơn hàng.
+    // Chỉ có khi chạy với profile diagnostics (SqlStatementCounter được đăng ký)
+    @GetMapping("/projection-report")
+    @ResponseBody
+    public ResponseEntity<?> projectionReport(@RequestParam(defaultValue = "12") int size) {
+        if (!authService.hasRole("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!SqlStatementCounter.isRegistered()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Projection report needs the diagnostics profile");
+        }
+        return ResponseEntity.ok(projectionReport.compare(Math.min(Math.max(size, 1), 100)));
+    }
+
+    // Tranh chấp tồn kho theo SKU (conflict / retry / hết lượt thử) dạng JSON cho admin
+    @GetMapping("/stock-contention")
+    @ResponseBody
+    public ResponseEntity<?> stockContention() {
+        if (!authService.hasRole("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(stockRetryPolicy.stats(50));
+    }
+
+    // Outbox mail: số mail chờ gửi, đã gửi / retry / lỗi, thời gian gửi
+    @GetMapping("/mail-outbox")
+    @ResponseBody
+    public ResponseEntity<?> mailOutbox() {
+        if (!authService.hasRole("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(mailDispatcher.stats());
+    }
+
+    // Biểu đồ bán hàng: số đơn / doanh thu / số lượng theo giờ, ngày, tháng (đọc bảng SalesRollup)
+    // dimension = ALL | CATEGORY | PRODUCT, id là categoryId / productId; mặc định 48 giờ / 30 ngày / 12 tháng gần nhất
+    @GetMapping("/analytics/sales")
+    @ResponseBody
+    public ResponseEntity<?> salesSeries(@RequestParam(defaultValue = "DAY") String grain,
+                                         @RequestParam(defaultValue = "ALL") String dimension,
+                                         @RequestParam(defaultValue = "0") Integer id,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        if (!authService.hasRole("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Grain g = parse(Grain.class, grain);
+        Dimension d = parse(Dimension.class, dimension);
+        if (g == null || d == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", "invalid grain / dimension"));
+        }
+        LocalDateTime end = to != null ? to : g.next(g.truncate(LocalDateTime.now()));
+        LocalDateTime start = from != null ? from : defaultFrom(g, end);
+        return ResponseEntity.ok(Map.of(
+                "grain", g,
+                "dimension", d,
+                "id", id,
+                "points", salesAnalytics.series(g, d, id, start, end)));
+    }
+
+    // Category / product có doanh thu cao nhất trong khoảng thời gian (cộng các dòng rollup của grain)
+    @GetMapping("/analytics/top")
+    @ResponseBody
+    public ResponseEntity<?> salesTop(@RequestParam(defaultValue = "DAY") String grain,
+                                      @RequestParam(defaultValue = "CATEGORY") String dimension,
+                                      @RequestParam(defaultValue = "10") int limit,
+                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        if (!authService.hasRole("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Grain g = parse(Grain.class, grain);
+        Dimension d = parse(Dimension.class, dimension);
+        if (g == null || d == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", "invalid grain / dimension"));
+        }
+        LocalDateTime end = to != null ? to : g.next(g.truncate(LocalDateTime.now()));
+        LocalDateTime start = from != null ? from : defaultFrom(g, end);
+        return ResponseEntity.ok(salesAnalytics.top(g, d, start, end, Math.min(Math.max(limit, 1), 100)));
+    }
+
+    // Dựng lại bảng rollup từ lịch sử đơn hàng (chạy nền), GET để xem tiến độ
+    @PostMapping("/analytics/backfill")
+    @ResponseBody
+    public ResponseEntity<?> startBackfill() {
+        if (!authService.hasRole("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        boolean started = !salesRollupBackfill.isRunning();
+        if (started) {
+            salesRollupBackfill.start();
+        }
+        return ResponseEntity.ok(Map.of("started", started, "status", salesRollupBackfill.getStatus()));
+    }
+
+    @GetMapping("/analytics/backfill")
+    @ResponseBody
+    public ResponseEntity<?> backfillStatus() {
+        if (!authService.hasRole("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(salesRollupBackfill.getStatus());
+    }
+
+    private static LocalDateTime defaultFrom(Grain grain, LocalDateTime to) {
+        return switch (grain) {
+            case HOUR -> to.minusHours(48);
+            case DAY -> to.minusDays(30);
+            case MONTH -> to.minusMonths(12);
+        };
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -12,6 +12,7 @@ import poly.edu.dao.RoleDAO;
 import poly.edu.model.Account;
 import poly.edu.model.Role;
 import poly.edu.service.AuthService;
+import poly.edu.service.DashboardMetrics;
 
 import java.time.LocalDateTime;
 import java.util.HashSet;
@@ -36,6 +37,9 @@ public class AdminEmployeesController {
     @Autowired
     private AuthService authService;
 
+    @Autowired
+    private DashboardMetrics dashboardMetrics;
+
     /**
      * Hiển thị danh sách nhân viên
      * URL: /admin/employees
@@ -169,6 +173,7 @@ public class AdminEmployeesController {
             }
 
             accountDAO.save(employee);
+            dashboardMetrics.onAccountCreated(employee);
 
             redirectAttributes.addFlashAttribute("message", "✅ Thêm nhân viên thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -266,6 +271,7 @@ public class AdminEmployeesController {
             }
 
             accountDAO.save(existing);
+            authService.invalidateAccount(existing.getUsername());
 
             redirectAttributes.addFlashAttribute("message", "✅ Cập nhật nhân viên thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -306,6 +312,7 @@ public class AdminEmployeesController {
             Account emp = employee.get();
             emp.setActive(false);
             accountDAO.save(emp);
+            authService.invalidateAccount(emp.getUsername());
 
             redirectAttributes.addFlashAttribute("message", "✅ Vô hiệu hóa nhân viên thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -344,6 +351,7 @@ public class AdminEmployeesController {
             Account emp = employee.get();
             emp.setActive(true);
             accountDAO.save(emp);
+            authService.invalidateAccount(emp.getUsername());
 
             redirectAttributes.addFlashAttribute("message", "✅ Kích hoạt nhân viên thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -7,6 +7,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import poly.edu.model.Order;
+import poly.edu.model.OrderSummary;
 import poly.edu.model.OrderDetail;
 import poly.edu.service.AuthService;
 import poly.edu.service.OrderService;
@@ -32,18 +33,12 @@ public class AdminOrderController {
             return "redirect:/home";
         }
         
-        List<Order> orders;
+        List<OrderSummary> orders = orderService.getOrderSummaries(statusFilter);
         
-        if (statusFilter != null && statusFilter > 0) {
-            orders = orderService.getOrdersByStatusId(statusFilter);
-        } else {
-            orders = orderService.getAllOrders();
-        }
-        
-        long pendingCount = orders.stream().filter(o -> o.getStatusId() == 1).count();
-        long processingCount = orders.stream().filter(o -> o.getStatusId() == 2).count();
-        long shippedCount = orders.stream().filter(o -> o.getStatusId() == 3).count();
-        long deliveredCount = orders.stream().filter(o -> o.getStatusId() == 4).count();
+        long pendingCount = orders.stream().filter(o -> o.statusId() == 1).count();
+        long processingCount = orders.stream().filter(o -> o.statusId() == 2).count();
+        long shippedCount = orders.stream().filter(o -> o.statusId() == 3).count();
+        long deliveredCount = orders.stream().filter(o -> o.statusId() == 4).count();
         
         model.addAttribute("orders", orders);
         model.addAttribute("statusFilter", statusFilter);
@@ -6,19 +6,20 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import poly.edu.model.Product;
-import poly.edu.repository.ProductRepository;
 import poly.edu.repository.CategoryRepository;
 import poly.edu.service.AuthService;
-
-import java.util.List;
+import poly.edu.service.CatalogFacetIndex;
+import poly.edu.service.ProductService;
 
 @Controller
 @RequestMapping("/admin")
 public class AdminProductsController {
     
+    // Số sản phẩm mỗi trang
+    private static final int PAGE_SIZE = 20;
+    
     @Autowired
-    private ProductRepository productRepo;
+    private ProductService productService;
     
     @Autowired
     private CategoryRepository categoryRepo;
@@ -49,47 +50,15 @@ public class AdminProductsController {
         }
         
         try {
-            List<Product> allProducts = productRepo.findAll();
-            List<Product> filteredProducts = allProducts;
-            
-            // Lọc theo tìm kiếm
-            if (search != null && !search.trim().isEmpty()) {
-                String searchLower = search.toLowerCase();
-                filteredProducts = filteredProducts.stream()
-                    .filter(p -> p.getName().toLowerCase().contains(searchLower) ||
-                               (p.getDescription() != null && p.getDescription().toLowerCase().contains(searchLower)))
-                    .toList();
-            }
-            
-            // Lọc theo danh mục
-            if (category != null) {
-                filteredProducts = filteredProducts.stream()
-                    .filter(p -> p.getCategoryId().equals(category))
-                    .toList();
-            }
-            
-            // Lọc theo tồn kho
-            if (stock != null) {
-                switch (stock) {
-                    case "in":
-                        filteredProducts = filteredProducts.stream()
-                            .filter(p -> p.getQuantity() >= 10)
-                            .toList();
-                        break;
-                    case "low":
-                        filteredProducts = filteredProducts.stream()
-                            .filter(p -> p.getQuantity() > 0 && p.getQuantity() < 10)
-                            .toList();
-                        break;
-                    case "out":
-                        filteredProducts = filteredProducts.stream()
-                            .filter(p -> p.getQuantity() == 0)
-                            .toList();
-                        break;
-                }
-            }
+            // Lọc bằng facet index (bitset) thay vì load toàn bộ product rồi stream filter
+            String keyword = (search != null && !search.trim().isEmpty()) ? search.trim() : null;
+            CatalogFacetIndex.FacetFilter filter = new CatalogFacetIndex.FacetFilter(category, null, null, stock, null);
+            ProductService.CatalogPage catalog = productService.browseCatalog(keyword, filter, page, PAGE_SIZE);
             
-            model.addAttribute("products", filteredProducts);
+            model.addAttribute("products", catalog.products().getContent());
+            model.addAttribute("totalPages", catalog.products().getTotalPages());
+            model.addAttribute("totalProducts", catalog.products().getTotalElements());
+            model.addAttribute("facets", catalog.facets());
             model.addAttribute("categories", categoryRepo.findAll());
             model.addAttribute("currentPage", page);
             
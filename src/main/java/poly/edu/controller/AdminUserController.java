@@ -12,6 +12,7 @@ import poly.edu.dao.RoleDAO;
 import poly.edu.model.Account;
 import poly.edu.model.Role;
 import poly.edu.service.AuthService;
+import poly.edu.service.DashboardMetrics;
 
 import java.time.LocalDateTime;
 import java.util.HashSet;
@@ -36,6 +37,9 @@ public class AdminUserController {
     @Autowired
     private AuthService authService;
 
+    @Autowired
+    private DashboardMetrics dashboardMetrics;
+
     /**
      * Hiển thị danh sách người dùng
      * URL: /admin/users
@@ -172,6 +176,7 @@ public class AdminUserController {
             }
 
             accountDAO.save(user);
+            dashboardMetrics.onAccountCreated(user);
 
             redirectAttributes.addFlashAttribute("message", "✅ Thêm người dùng thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -269,6 +274,7 @@ public class AdminUserController {
             }
 
             accountDAO.save(existing);
+            authService.invalidateAccount(existing.getUsername());
 
             redirectAttributes.addFlashAttribute("message", "✅ Cập nhật người dùng thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -309,6 +315,7 @@ public class AdminUserController {
             Account usr = user.get();
             usr.setActive(false);
             accountDAO.save(usr);
+            authService.invalidateAccount(usr.getUsername());
 
             redirectAttributes.addFlashAttribute("message", "✅ Vô hiệu hóa người dùng thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -347,6 +354,7 @@ public class AdminUserController {
             Account usr = user.get();
             usr.setActive(true);
             accountDAO.save(usr);
+            authService.invalidateAccount(usr.getUsername());
 
             redirectAttributes.addFlashAttribute("message", "✅ Kích hoạt người dùng thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -1,5 +1,6 @@
 package poly.edu.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -13,10 +14,15 @@ import poly.edu.dao.AccountDAO;
 import poly.edu.model.Account;
 import poly.edu.model.Cart;
 import poly.edu.service.AuthService;
+import poly.edu.service.CartReservationService;
 import poly.edu.service.CartService;
+import poly.edu.service.CheckoutQueue;
 import poly.edu.service.OrderService;
+import poly.edu.service.PricingEngine;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Controller
 @RequestMapping("/cart")
@@ -34,6 +40,15 @@ public class CartController {
     @Autowired
     private AuthService authService;
     
+    @Autowired
+    private CartReservationService cartReservationService;
+    
+    @Autowired
+    private CheckoutQueue checkoutQueue;
+
+    @Autowired
+    private PricingEngine pricingEngine;
+    
     @GetMapping
     public String cartPage(Model model, RedirectAttributes redirectAttributes) {
         if (!authService.isAuthenticated()) {
@@ -45,16 +60,12 @@ public class CartController {
         Integer accountId = authService.getAccountId();
         List<Cart> cartItems = cartService.getCartItems(accountId);
         
-        double total = cartItems.stream()
-                .mapToDouble(item -> {
-                    Double price = item.getProduct().getDiscountedPrice();
-                    return price * item.getQuantity();
-                })
-                .sum();
+        double total = priceCart(cartItems, model);
         
         model.addAttribute("cartItems", cartItems);
         model.addAttribute("total", total);
         model.addAttribute("itemCount", cartItems.size());
+        model.addAttribute("reservationMinutes", cartReservationService.getTtlMinutes());
         
         return "poly/cart";
     }
@@ -77,6 +88,9 @@ public class CartController {
         if (result.equals("out_of_stock")) {
             redirectAttributes.addFlashAttribute("message", "❌ Sản phẩm đã hết hàng!");
             redirectAttributes.addFlashAttribute("messageType", "error");
+        } else if (result.equals("busy")) {
+            redirectAttributes.addFlashAttribute("message", "❌ Sản phẩm đang được nhiều người đặt cùng lúc, vui lòng thử lại!");
+            redirectAttributes.addFlashAttribute("messageType", "error");
         } else if (result.startsWith("insufficient_stock:")) {
             String availableQty = result.split(":")[1];
             redirectAttributes.addFlashAttribute("message", "❌ Chỉ còn " + availableQty + " sản phẩm trong kho!");
@@ -115,6 +129,12 @@ public class CartController {
         if (result.equals("removed")) {
             redirectAttributes.addFlashAttribute("message", "✅ Đã xóa sản phẩm khỏi giỏ hàng!");
             redirectAttributes.addFlashAttribute("messageType", "success");
+        } else if (result.equals("out_of_stock")) {
+            redirectAttributes.addFlashAttribute("message", "❌ Sản phẩm đã hết hàng!");
+            redirectAttributes.addFlashAttribute("messageType", "error");
+        } else if (result.equals("busy")) {
+            redirectAttributes.addFlashAttribute("message", "❌ Sản phẩm đang được nhiều người đặt cùng lúc, vui lòng thử lại!");
+            redirectAttributes.addFlashAttribute("messageType", "error");
         } else if (result.startsWith("insufficient_stock:")) {
             String availableQty = result.split(":")[1];
             redirectAttributes.addFlashAttribute("message", "❌ Chỉ còn " + availableQty + " sản phẩm trong kho!");
@@ -191,12 +211,12 @@ public class CartController {
             return "redirect:/cart";
         }
         
-        double total = cartItems.stream()
-                .mapToDouble(item -> {
-                    Double price = item.getProduct().getDiscountedPrice();
-                    return price * item.getQuantity();
-                })
-                .sum();
+        return showCheckout(accountId, cartItems, model);
+    }
+
+    // Trang checkout: giỏ hàng, tổng tiền và thông tin giao hàng mặc định của account
+    private String showCheckout(Integer accountId, List<Cart> cartItems, Model model) {
+        double total = priceCart(cartItems, model);
         
         Account account = authService.getAccount();
         
@@ -215,6 +235,8 @@ public class CartController {
     public String processCheckout(@RequestParam String shippingAddress,
                                   @RequestParam String phone,
                                   @RequestParam(required = false) String note,
+                                  Model model,
+                                  HttpServletResponse response,
                                   RedirectAttributes redirectAttributes) {
         
         if (!authService.isAuthenticated()) {
@@ -237,24 +259,32 @@ public class CartController {
             return "redirect:/cart/checkout";
         }
         
+        // Checkout bất đồng bộ: ghi lệnh (kèm các dòng giỏ đang có) vào hàng đợi rồi chuyển sang trang theo dõi ticket
+        if (checkoutQueue.isEnabled()) {
+            CheckoutQueue.Ticket ticket = checkoutQueue.enqueue(OrderService.CheckoutRequest.of(
+                    accountId, shippingAddress, phone, note, cartService.getCartItems(accountId)));
+            if (ticket == null) {
+                // Hàng đợi đầy: từ chối ngay bằng 503 + Retry-After và hiển thị lại trang checkout (không redirect)
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                response.setHeader("Retry-After", String.valueOf(checkoutQueue.getRetryAfterSeconds()));
+                model.addAttribute("message", "❌ Hệ thống đang nhận quá nhiều đơn hàng, vui lòng thử lại sau "
+                        + checkoutQueue.getRetryAfterSeconds() + " giây!");
+                model.addAttribute("messageType", "error");
+                return showCheckout(accountId, cartService.getCartItems(accountId), model);
+            }
+            return "redirect:/orders/" + ticket.getCode() + "/track";
+        }
+        
         String result = orderService.createOrderFromCart(accountId, shippingAddress, phone, note);
         
         if (result.equals("empty_cart")) {
             redirectAttributes.addFlashAttribute("message", "❌ Giỏ hàng của bạn đang trống!");
             redirectAttributes.addFlashAttribute("messageType", "error");
             return "redirect:/cart";
-        } else if (result.startsWith("out_of_stock:")) {
-            String productName = result.split(":")[1];
-            redirectAttributes.addFlashAttribute("message", "❌ Sản phẩm '" + productName + "' đã hết hàng!");
-            redirectAttributes.addFlashAttribute("messageType", "error");
-            return "redirect:/cart/checkout";
-        } else if (result.startsWith("insufficient_stock:")) {
-            String[] parts = result.split(":");
-            String productName = parts[1];
-            String availableQty = parts[2];
-            redirectAttributes.addFlashAttribute("message", "❌ Sản phẩm '" + productName + "' chỉ còn " + availableQty + " sản phẩm trong kho!");
+        } else if (result.equals("reservation_expired")) {
+            redirectAttributes.addFlashAttribute("message", "❌ Một số sản phẩm trong giỏ đã hết thời gian giữ hàng, vui lòng kiểm tra lại giỏ hàng!");
             redirectAttributes.addFlashAttribute("messageType", "error");
-            return "redirect:/cart/checkout";
+            return "redirect:/cart";
         } else if (result.startsWith("product_not_found:")) {
             redirectAttributes.addFlashAttribute("message", "❌ Không tìm thấy sản phẩm!");
             redirectAttributes.addFlashAttribute("messageType", "error");
@@ -270,4 +300,17 @@ public class CartController {
             return "redirect:/cart/checkout";
         }
     }
-}
\ No newline at end of file
+
+    // Giá bán từng product trong giỏ (cùng snapshot giá với checkout) -> "unitPrices", trả về tổng tiền
+    private double priceCart(List<Cart> cartItems, Model model) {
+        Map<Integer, Double> unitPrices = new HashMap<>();
+        double total = 0.0;
+        for (Cart item : cartItems) {
+            double price = pricingEngine.unitPrice(item.getProductId());
+            unitPrices.put(item.getProductId(), price);
+            total += price * item.getQuantity();
+        }
+        model.addAttribute("unitPrices", unitPrices);
+        return total;
+    }
+}
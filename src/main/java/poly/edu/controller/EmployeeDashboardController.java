@@ -7,26 +7,19 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import poly.edu.dao.AccountDAO;
-import poly.edu.model.Account;
 import poly.edu.repository.ProductRepository;
 import poly.edu.service.AuthService;
-import poly.edu.service.OrderService;
-
-import java.util.List;
+import poly.edu.service.DashboardMetrics;
 
 @Controller
 @RequestMapping("/employee")
 public class EmployeeDashboardController {
     
-    @Autowired
-    private OrderService orderService;
-    
     @Autowired
     private ProductRepository productRepository;
     
     @Autowired
-    private AccountDAO accountDAO;
+    private DashboardMetrics dashboardMetrics;
     
     @Autowired
     private AuthService authService;
@@ -52,27 +45,14 @@ public class EmployeeDashboardController {
         }
         
         try {
-            // Get statistics
-            long totalOrders = orderService.getAllOrders().size();
+            // Get statistics (counter trong bộ nhớ, không quét Order / Account)
+            DashboardMetrics.Stats stats = dashboardMetrics.stats();
+            long totalOrders = stats.totalOrders();
             long totalProducts = productRepository.count();
-            long totalAccounts = accountDAO.count();
-            
-            // Đếm số lượng Users và Employees
-            List<Account> allAccounts = accountDAO.findAll();
-            long totalUsers = allAccounts.stream()
-                .filter(acc -> acc.getRoles().stream()
-                    .anyMatch(role -> role.getRoleName().equals("USER")))
-                .count();
-            
-            long totalEmployees = allAccounts.stream()
-                .filter(acc -> acc.getRoles().stream()
-                    .anyMatch(role -> role.getRoleName().equals("EMPLOYEE")))
-                .count();
-            
-            Double totalRevenue = orderService.getTotalRevenue();
-            if (totalRevenue == null) {
-                totalRevenue = 0.0;
-            }
+            long totalAccounts = stats.totalAccounts();
+            long totalUsers = stats.accounts("USER");
+            long totalEmployees = stats.accounts("EMPLOYEE");
+            double totalRevenue = stats.totalRevenue();
             
             model.addAttribute("totalOrders", totalOrders);
             model.addAttribute("totalProducts", totalProducts);
@@ -82,11 +62,11 @@ public class EmployeeDashboardController {
             model.addAttribute("totalRevenue", totalRevenue);
             
             // Order statistics by status
-            long pendingOrders = orderService.countOrdersByStatus(1);
-            long processingOrders = orderService.countOrdersByStatus(2);
-            long shippedOrders = orderService.countOrdersByStatus(3);
-            long deliveredOrders = orderService.countOrdersByStatus(4);
-            long cancelledOrders = orderService.countOrdersByStatus(5);
+            long pendingOrders = stats.orders(1);
+            long processingOrders = stats.orders(2);
+            long shippedOrders = stats.orders(3);
+            long deliveredOrders = stats.orders(4);
+            long cancelledOrders = stats.orders(5);
             
             model.addAttribute("pendingOrders", pendingOrders);
             model.addAttribute("processingOrders", processingOrders);
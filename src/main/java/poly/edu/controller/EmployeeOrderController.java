@@ -7,8 +7,10 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import poly.edu.model.Order;
+import poly.edu.model.OrderSummary;
 import poly.edu.model.OrderDetail;
 import poly.edu.service.AuthService;
+import poly.edu.service.DashboardMetrics;
 import poly.edu.service.OrderService;
 
 import java.util.List;
@@ -22,6 +24,9 @@ public class EmployeeOrderController {
     
     @Autowired
     private AuthService authService;
+
+    @Autowired
+    private DashboardMetrics dashboardMetrics;
     
     // Danh sách đơn hàng
     @GetMapping
@@ -33,20 +38,16 @@ public class EmployeeOrderController {
             return "redirect:/home";
         }
         
-        List<Order> orders;
-        if (statusFilter != null && statusFilter > 0) {
-            orders = orderService.getOrdersByStatusId(statusFilter);
-        } else {
-            orders = orderService.getAllOrders();
-        }
+        List<OrderSummary> orders = orderService.getOrderSummaries(statusFilter);
         
         // Thống kê nhanh
         model.addAttribute("orders", orders);
         model.addAttribute("statusFilter", statusFilter);
-        model.addAttribute("pendingCount", orderService.countOrdersByStatus(1));
-        model.addAttribute("processingCount", orderService.countOrdersByStatus(2));
-        model.addAttribute("shippedCount", orderService.countOrdersByStatus(3));
-        model.addAttribute("deliveredCount", orderService.countOrdersByStatus(4));
+        DashboardMetrics.Stats stats = dashboardMetrics.stats();
+        model.addAttribute("pendingCount", stats.orders(1));
+        model.addAttribute("processingCount", stats.orders(2));
+        model.addAttribute("shippedCount", stats.orders(3));
+        model.addAttribute("deliveredCount", stats.orders(4));
         
         return "poly/employee/orders";
     }
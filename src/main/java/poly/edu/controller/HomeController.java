@@ -3,8 +3,6 @@ package poly.edu.controller;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -17,11 +15,12 @@ import poly.edu.model.Account;
 import poly.edu.model.Category;
 import poly.edu.model.Product;
 import poly.edu.repository.ProductRepository;
-import poly.edu.repository.CartRepository;
 import poly.edu.repository.CategoryRepository;
+import poly.edu.service.CartService;
+import poly.edu.service.CatalogFacetIndex;
 import poly.edu.service.CategoryService;
+import poly.edu.service.PricingEngine;
 import poly.edu.service.ProductService;
-import poly.edu.model.Review;          
 import poly.edu.service.ReviewService; 
 import poly.edu.service.AuthService;
 
@@ -51,7 +50,7 @@ public class HomeController {
 	model.addAttribute("account", account);
 
 	// Đếm số lượng items trong cart
-	int cartCount = cartRepository.findByAccountId(account.getAccountId()).size();
+	int cartCount = cartService.getCartSummary(account.getAccountId()).itemCount();
 	model.addAttribute("cartCount", cartCount);
 	} else {
 	model.addAttribute("cartCount", 0);
@@ -63,13 +62,16 @@ public class HomeController {
 	*/
     @Autowired
     private ProductService productService;
+
+    @Autowired
+    private PricingEngine pricingEngine;
     
     @Autowired
     private CategoryService categoryService;
     
     
     @Autowired
-    private CartRepository cartRepository;
+    private CartService cartService;
     
     @Autowired
     private AuthService authService; // 1. Inject AuthService vào đây
@@ -83,11 +85,12 @@ public class HomeController {
         // Account account = (Account) session.getAttribute("account"); 
 
         // MỚI (Dùng AuthService để lấy user chuẩn từ Spring Security):
-        Account account = authService.getAccount(); 
+        // CurrentAccount được cache theo session nên không query Account ở mỗi trang
+        AuthService.CurrentAccount account = authService.getCurrentAccount();
 
         if (account != null) {
             // Logic giữ nguyên
-            int cartCount = cartRepository.findByAccountId(account.getAccountId()).size();
+            int cartCount = cartService.getCartSummary(account.accountId()).itemCount();
             model.addAttribute("cartCount", cartCount);
             model.addAttribute("account", account); // Đưa account vào Model để View dùng
         } else {
@@ -100,17 +103,18 @@ public class HomeController {
     * Trang Promotions - chỉ hiển thị sản phẩm có khuyến mãi
     */
     @GetMapping("/promotions")
-    public String promotions(@RequestParam(defaultValue = "0") int page, Model model) {
+    public String promotions(@RequestParam(required = false) String cursor, Model model) {
     int pageSize = 12;
-    Pageable pageable = PageRequest.of(page, pageSize);
 
-    // Lấy sản phẩm có promotionId không null
-    Page<Product> productPage = productRepository.findProductsWithPromotion(pageable);
+    // Lấy sản phẩm đang giảm giá (mức giảm sâu trước, rồi rating; keyset pagination theo cursor)
+    ProductService.ProductSlice productPage = productService.getPromotionProductsByCursor(cursor, pageSize);
 
-    model.addAttribute("products", productPage.getContent());
-    model.addAttribute("currentPage", page);
-    model.addAttribute("totalPages", productPage.getTotalPages());
-    model.addAttribute("totalProducts", productPage.getTotalElements());
+    model.addAttribute("products", productPage.content());
+    model.addAttribute("currentPage", productPage.pageNumber());
+    model.addAttribute("totalPages", productPage.totalPages());
+    model.addAttribute("totalProducts", productPage.totalElements());
+    model.addAttribute("nextCursor", productPage.nextCursor());
+    model.addAttribute("prevCursor", productPage.prevCursor());
     model.addAttribute("isPromotionPage", true);
 
     return "poly/promotions";
@@ -121,19 +125,20 @@ public class HomeController {
      */
     @GetMapping({"/", "/home"})
     public String home(Model model, 
-                       @RequestParam(defaultValue = "0") int page,
+                       @RequestParam(required = false) String cursor,
                        HttpSession session) {
         try {
-            Pageable pageable = PageRequest.of(page, 12);
-            Page<Product> products = productRepository.findAll(pageable);
+            ProductService.ProductSlice products = productService.getProductsByCursor(cursor, 12);
 
             List<Category> categories = categoryService.getCategoriesWithProducts();
 
-            model.addAttribute("products", products.getContent());
+            model.addAttribute("products", products.content());
             model.addAttribute("categories", categories);
-            model.addAttribute("currentPage", page);
-            model.addAttribute("totalPages", products.getTotalPages());
-            model.addAttribute("totalProducts", products.getTotalElements());
+            model.addAttribute("currentPage", products.pageNumber());
+            model.addAttribute("totalPages", products.totalPages());
+            model.addAttribute("totalProducts", products.totalElements());
+            model.addAttribute("nextCursor", products.nextCursor());
+            model.addAttribute("prevCursor", products.prevCursor());
             
             addCartCount(model, session);
 
@@ -161,14 +166,16 @@ public class HomeController {
         if (productOpt.isPresent()) {
             Product product = productOpt.get();
             
-            // --- CODE THÊM MỚI: Lấy danh sách review ---
-            List<Review> reviews = reviewService.getReviewsByProduct(id);
-            model.addAttribute("reviews", reviews);
-            // -------------------------------------------
+            // Trang đầu của review feed (cache theo product), các trang sau tải qua /api/products/{id}/reviews
+            ReviewService.ReviewPage reviews = reviewService.getReviewFeed(id, null);
+            model.addAttribute("reviews", reviews.reviews());
+            model.addAttribute("reviewsNextCursor", reviews.nextCursor());
 
             List<Category> categories = categoryService.getCategoriesWithProducts();
             model.addAttribute("categories", categories);
             model.addAttribute("product", product);
+            // Giá bán lấy cùng snapshot với listing / giỏ hàng
+            model.addAttribute("pricing", pricingEngine.price(id));
             
             addCartCount(model, session);
 
@@ -189,15 +196,15 @@ public class HomeController {
                                HttpSession session) {
         
         // SỬA DÒNG NÀY: Lấy account từ AuthService thay vì Session
-        Account account = authService.getAccount();
+        Integer accountId = authService.getAccountId();
         
-        if (account == null) {
+        if (accountId == null) {
             redirectAttributes.addFlashAttribute("message", "❌ Vui lòng đăng nhập để đánh giá!");
             return "redirect:/account/login";
         }
 
         try {
-            reviewService.addReview(account.getAccountId(), productId, content, rating);
+            reviewService.addReview(accountId, productId, content, rating);
             redirectAttributes.addFlashAttribute("message", "✅ Cảm ơn bạn đã đánh giá!");
             redirectAttributes.addFlashAttribute("messageType", "success");
         } catch (Exception e) {
@@ -215,22 +222,24 @@ public class HomeController {
      */
     @GetMapping("/category/{name}")
     public String viewCategory(@PathVariable String name,
-                              @RequestParam(defaultValue = "0") int page,
+                              @RequestParam(required = false) String cursor,
                               Model model,
                               HttpSession session) {
 
         Category category = categoryService.getCategoryByName(name)
             .orElseThrow(() -> new RuntimeException("Category not found"));
 
-        Pageable pageable = PageRequest.of(page, 12);
-        Page<Product> products = productRepository.findByCategoryId(category.getCategoryId(), pageable);
+        ProductService.ProductSlice products = productService.getCategoryProductsByCursor(
+                category.getCategoryId().intValue(), cursor, 12);
 
         List<Category> categories = categoryService.getCategoriesWithProducts();
         model.addAttribute("categories", categories);
         model.addAttribute("categoryName", category.getName());
-        model.addAttribute("products", products.getContent());
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", products.getTotalPages());
+        model.addAttribute("products", products.content());
+        model.addAttribute("currentPage", products.pageNumber());
+        model.addAttribute("totalPages", products.totalPages());
+        model.addAttribute("nextCursor", products.nextCursor());
+        model.addAttribute("prevCursor", products.prevCursor());
         
         addCartCount(model, session);
 
@@ -244,21 +253,45 @@ public class HomeController {
     public String search(@RequestParam("q") String keyword, 
                         Model model, 
                         @RequestParam(defaultValue = "0") int page,
+                        @RequestParam(required = false) Integer category,
+                        @RequestParam(required = false) String price,
+                        @RequestParam(required = false) String rating,
+                        @RequestParam(required = false) String stock,
+                        @RequestParam(required = false) String promo,
                         HttpSession session) {
-        if (keyword == null || keyword.trim().isEmpty()) {
+        CatalogFacetIndex.FacetFilter filter = new CatalogFacetIndex.FacetFilter(
+                category, price, rating, stock, promo);
+        boolean hasKeyword = keyword != null && !keyword.trim().isEmpty();
+        boolean hasFacet = !filter.equals(CatalogFacetIndex.FacetFilter.none());
+
+        if (!hasKeyword && !hasFacet) {
             Page<Product> featuredProducts = productService.getFeaturedProducts(page, 12);
             model.addAttribute("products", featuredProducts.getContent());
             model.addAttribute("currentPage", page);
             model.addAttribute("totalPages", featuredProducts.getTotalPages());
             model.addAttribute("totalProducts", featuredProducts.getTotalElements());
+            model.addAttribute("facets", productService.browseCatalog(null, filter, 0, 1).facets());
         } else {
-            Page<Product> searchResults = productService.searchProducts(keyword, page, 12);
-            model.addAttribute("products", searchResults.getContent());
+            // Kết quả search + sidebar facet lấy từ cùng một lần lọc trên facet index
+            ProductService.CatalogPage catalog = productService.browseCatalog(hasKeyword ? keyword : null, filter, page, 12);
+            model.addAttribute("products", catalog.products().getContent());
             model.addAttribute("currentPage", page);
-            model.addAttribute("totalPages", searchResults.getTotalPages());
-            model.addAttribute("totalProducts", searchResults.getTotalElements());
+            model.addAttribute("totalPages", catalog.products().getTotalPages());
+            model.addAttribute("totalProducts", catalog.products().getTotalElements());
+            model.addAttribute("facets", catalog.facets());
         }
 
+        // Facet đang chọn + nhãn hiển thị cho sidebar
+        model.addAttribute("selectedCategory", category);
+        model.addAttribute("selectedPrice", filter.price());
+        model.addAttribute("selectedRating", filter.rating());
+        model.addAttribute("selectedStock", filter.stock());
+        model.addAttribute("selectedPromo", filter.promotion());
+        model.addAttribute("priceBuckets", CatalogFacetIndex.PRICE_BUCKETS);
+        model.addAttribute("ratingBuckets", CatalogFacetIndex.RATING_BUCKETS);
+        model.addAttribute("stockBands", CatalogFacetIndex.STOCK_BANDS);
+        model.addAttribute("promotionOptions", CatalogFacetIndex.PROMOTION_OPTIONS);
+
         List<Category> categories = categoryService.getCategoriesWithProducts();
         model.addAttribute("categories", categories);
         model.addAttribute("keyword", keyword);
@@ -325,4 +358,4 @@ public class HomeController {
             return "poly/test-db";
         }
     }
-}
\ No newline at end of file
+}
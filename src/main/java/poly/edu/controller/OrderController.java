@@ -1,5 +1,6 @@
 package poly.edu.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -7,8 +8,10 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import poly.edu.model.Order;
+import poly.edu.model.OrderSummary;
 import poly.edu.model.OrderDetail;
 import poly.edu.service.AuthService;
+import poly.edu.service.CheckoutQueue;
 import poly.edu.service.OrderService;
 
 import java.util.List;
@@ -23,6 +26,9 @@ public class OrderController {
     @Autowired
     private AuthService authService;
     
+    @Autowired
+    private CheckoutQueue checkoutQueue;
+    
     @GetMapping
     public String ordersPage(Model model, RedirectAttributes redirectAttributes) {
         if (!authService.isAuthenticated()) {
@@ -32,7 +38,7 @@ public class OrderController {
         }
         
         Integer accountId = authService.getAccountId();
-        List<Order> orders = orderService.getOrdersByAccount(accountId);
+        List<OrderSummary> orders = orderService.getOrderSummariesByAccount(accountId);
         model.addAttribute("orders", orders);
         return "poly/orders";
     }
@@ -94,9 +100,13 @@ public class OrderController {
         return "redirect:/orders/" + orderId;
     }
     
+    /**
+     * Theo dõi đơn hàng, hoặc ticket của checkout bất đồng bộ (mã dạng "Q123")
+     */
     @GetMapping("/{orderId}/track")
-    public String trackOrder(@PathVariable Integer orderId,
+    public String trackOrder(@PathVariable String orderId,
                             Model model,
+                            HttpServletResponse response,
                             RedirectAttributes redirectAttributes) {
         if (!authService.isAuthenticated()) {
             redirectAttributes.addFlashAttribute("message", "❌ Vui lòng đăng nhập!");
@@ -104,7 +114,16 @@ public class OrderController {
             return "redirect:/account/login";
         }
         
-        Order order = orderService.getOrderById(orderId);
+        if (orderId.startsWith(CheckoutQueue.TICKET_PREFIX)) {
+            return trackTicket(orderId, model, response, redirectAttributes);
+        }
+        
+        Order order = null;
+        try {
+            order = orderService.getOrderById(Integer.valueOf(orderId));
+        } catch (NumberFormatException e) {
+            // Mã không hợp lệ, xử lý như không tìm thấy
+        }
         
         if (order == null) {
             redirectAttributes.addFlashAttribute("message", "❌ Không tìm thấy đơn hàng!");
@@ -124,4 +143,44 @@ public class OrderController {
         
         return "poly/order-tracking";
     }
-}
\ No newline at end of file
+    
+    private String trackTicket(String code, Model model, HttpServletResponse response, RedirectAttributes redirectAttributes) {
+        CheckoutQueue.Ticket ticket = checkoutQueue.getTicket(code);
+        
+        if (ticket == null || !ticket.accountId().equals(authService.getAccountId())) {
+            redirectAttributes.addFlashAttribute("message", "❌ Không tìm thấy yêu cầu đặt hàng!");
+            redirectAttributes.addFlashAttribute("messageType", "error");
+            return "redirect:/orders";
+        }
+        
+        // Chưa xử lý xong: trang chờ tự tải lại sau retryAfterSeconds
+        if (ticket.state() == CheckoutQueue.State.QUEUED) {
+            response.setHeader("Retry-After", String.valueOf(checkoutQueue.getRetryAfterSeconds()));
+            model.addAttribute("ticket", ticket);
+            model.addAttribute("retryAfterSeconds", checkoutQueue.getRetryAfterSeconds());
+            return "poly/order-pending";
+        }
+        
+        String result = ticket.result();
+        if (result.startsWith("success:")) {
+            String newOrderId = result.split(":")[1];
+            redirectAttributes.addFlashAttribute("message", "✅ Đặt hàng thành công! Mã đơn hàng: #" + newOrderId);
+            redirectAttributes.addFlashAttribute("messageType", "success");
+            return "redirect:/orders/" + newOrderId;
+        }
+        
+        if (result.equals("empty_cart")) {
+            redirectAttributes.addFlashAttribute("message", "❌ Giỏ hàng của bạn đang trống!");
+        } else if (result.equals("reservation_expired")) {
+            redirectAttributes.addFlashAttribute("message", "❌ Một số sản phẩm trong giỏ đã hết thời gian giữ hàng, vui lòng kiểm tra lại giỏ hàng!");
+        } else if (result.equals("cart_changed")) {
+            redirectAttributes.addFlashAttribute("message", "❌ Giỏ hàng đã thay đổi trong lúc chờ xử lý, vui lòng kiểm tra lại và đặt hàng lại!");
+        } else if (result.startsWith("product_not_found:")) {
+            redirectAttributes.addFlashAttribute("message", "❌ Không tìm thấy sản phẩm!");
+        } else {
+            redirectAttributes.addFlashAttribute("message", "❌ Đã có lỗi xảy ra khi đặt hàng!");
+        }
+        redirectAttributes.addFlashAttribute("messageType", "error");
+        return "redirect:/cart";
+    }
+}
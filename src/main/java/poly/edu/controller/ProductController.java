@@ -11,6 +11,7 @@ import poly.edu.model.Product;
 import poly.edu.repository.ProductRepository;
 import poly.edu.repository.CategoryRepository;
 import poly.edu.service.AuthService;
+import poly.edu.service.ProductService;
 import poly.edu.service.PromotionService;
 
 import java.time.LocalDateTime;
@@ -28,6 +29,9 @@ public class ProductController {
     @Autowired
     private PromotionService promotionService;
     
+    @Autowired
+    private ProductService productService;
+    
     @Autowired
     private AuthService authService;
     
@@ -93,7 +97,7 @@ public class ProductController {
             
             product.setCreatedAt(LocalDateTime.now());
             
-            productRepo.save(product);
+            productService.saveProduct(product);
             
             redirectAttributes.addFlashAttribute("message", "✅ Thêm sản phẩm thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -162,11 +166,15 @@ public class ProductController {
             existingProduct.setCategoryId(product.getCategoryId());
             existingProduct.setPromotionId(product.getPromotionId());
             
-            if (product.getRating() != null) {
+            // Đã có review thì Rating luôn lấy từ tổng hợp (RatingSum / RatingCount), bỏ qua giá trị trên form;
+            // chỉ product chưa có review mới nhận rating admin nhập
+            if (existingProduct.getRatingCount() > 0) {
+                existingProduct.setRating(Math.round(existingProduct.getRatingSum() * 10.0 / existingProduct.getRatingCount()) / 10.0);
+            } else if (product.getRating() != null) {
                 existingProduct.setRating(product.getRating());
             }
             
-            productRepo.save(existingProduct);
+            productService.saveProduct(existingProduct);
             
             redirectAttributes.addFlashAttribute("message", "✅ Cập nhật sản phẩm thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -199,7 +207,7 @@ public class ProductController {
                 return "redirect:/admin/dashboard";
             }
             
-            productRepo.delete(product);
+            productService.deleteProduct(product);
             
             redirectAttributes.addFlashAttribute("message", "✅ Xóa sản phẩm thành công!");
             redirectAttributes.addFlashAttribute("messageType", "success");
@@ -3,9 +3,7 @@ package poly.edu.controller.api;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import poly.edu.model.Product;
 import poly.edu.service.ProductService;
-import org.springframework.data.domain.Page;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -18,16 +16,35 @@ public class HomeRestController {
     private ProductService productService;
 
     @GetMapping("/home")
-    public ResponseEntity<?> getHomeData(@RequestParam(defaultValue = "0") int page) {
-        // Lấy 12 sản phẩm mỗi trang, giống như Controller cũ
-        Page<Product> products = productService.getAllProducts(page, 12);
+    public ResponseEntity<?> getHomeData(@RequestParam(required = false) String cursor) {
+        // Lấy 12 sản phẩm mỗi trang theo cursor (keyset pagination, không OFFSET)
+        ProductService.ProductSlice products = productService.getProductsByCursor(cursor, 12);
         
         // Trả về JSON gồm list sản phẩm và thông tin phân trang
         Map<String, Object> response = new HashMap<>();
-        response.put("products", products.getContent());
-        response.put("currentPage", page);
-        response.put("totalPages", products.getTotalPages());
+        response.put("products", products.content());
+        response.put("currentPage", products.pageNumber());
+        response.put("totalPages", products.totalPages());
+        response.put("nextCursor", products.nextCursor());
+        response.put("prevCursor", products.prevCursor());
         
         return ResponseEntity.ok(response);
     }
-}
\ No newline at end of file
+
+    // Sản phẩm đang giảm giá (mức giảm sâu trước, rồi rating), cùng dữ liệu với trang /promotions
+    @GetMapping("/promotions")
+    public ResponseEntity<?> getPromotionProducts(@RequestParam(required = false) String cursor,
+                                                  @RequestParam(defaultValue = "12") int size) {
+        ProductService.ProductSlice products = productService.getPromotionProductsByCursor(cursor, Math.max(1, Math.min(size, 60)));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("products", products.content());
+        response.put("currentPage", products.pageNumber());
+        response.put("totalPages", products.totalPages());
+        response.put("totalProducts", products.totalElements());
+        response.put("nextCursor", products.nextCursor());
+        response.put("prevCursor", products.prevCursor());
+
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,21 @@
+package poly.edu.controller.api;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import poly.edu.service.ReviewService;
+
+@RestController
+@RequestMapping("/api/products")
+public class ReviewRestController {
+
+    @Autowired
+    private ReviewService reviewService;
+
+    // Review feed của sản phẩm, mới nhất trước; truyền nextCursor của trang trước để lấy trang sau
+    @GetMapping("/{productId}/reviews")
+    public ResponseEntity<?> reviews(@PathVariable Integer productId,
+                                     @RequestParam(required = false) String cursor) {
+        return ResponseEntity.ok(reviewService.getReviewFeed(productId, cursor));
+    }
+}
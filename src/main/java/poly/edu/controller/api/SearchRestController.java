@@ -0,0 +1,54 @@
+package poly.edu.controller.api;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import poly.edu.service.CatalogFacetIndex;
+import poly.edu.service.ProductService;
+import poly.edu.service.SuggestionTrie;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/search")
+public class SearchRestController {
+
+    @Autowired
+    private SuggestionTrie suggestionTrie;
+
+    @Autowired
+    private ProductService productService;
+
+    // Gợi ý tên sản phẩm / danh mục khi người dùng đang gõ (đọc từ trie trong bộ nhớ)
+    @GetMapping("/suggest")
+    public ResponseEntity<?> suggest(@RequestParam("q") String prefix,
+                                     @RequestParam(defaultValue = "8") int limit) {
+        int size = Math.min(Math.max(limit, 1), SuggestionTrie.MAX_SUGGESTIONS);
+        List<SuggestionTrie.Suggestion> suggestions = suggestionTrie.suggest(prefix, size);
+        return ResponseEntity.ok(suggestions);
+    }
+
+    // Lọc catalog theo keyword + facet, trả về trang sản phẩm kèm số đếm từng facet cho sidebar
+    @GetMapping("/catalog")
+    public ResponseEntity<?> catalog(@RequestParam(value = "q", required = false) String keyword,
+                                     @RequestParam(required = false) Integer category,
+                                     @RequestParam(required = false) String price,
+                                     @RequestParam(required = false) String rating,
+                                     @RequestParam(required = false) String stock,
+                                     @RequestParam(required = false) String promo,
+                                     @RequestParam(defaultValue = "0") int page,
+                                     @RequestParam(defaultValue = "12") int size) {
+        CatalogFacetIndex.FacetFilter filter = new CatalogFacetIndex.FacetFilter(category, price, rating, stock, promo);
+        ProductService.CatalogPage catalog = productService.browseCatalog(keyword, filter, page, Math.min(Math.max(size, 1), 100));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("products", catalog.products().getContent());
+        response.put("currentPage", page);
+        response.put("totalPages", catalog.products().getTotalPages());
+        response.put("totalProducts", catalog.products().getTotalElements());
+        response.put("facets", catalog.facets());
+        return ResponseEntity.ok(response);
+    }
+}
@@ -1,9 +1,11 @@
 package poly.edu.dao;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import poly.edu.model.Account;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -16,4 +18,8 @@ public interface AccountDAO extends JpaRepository<Account, Integer> {
     Optional<Account> findByEmailOrUsername(String email, String username);
     
     Optional<Account> findById(int accountId );
+
+    // Số tài khoản theo từng role [roleName, count] (DashboardMetrics đối soát)
+    @Query("SELECT r.roleName, COUNT(DISTINCT a.accountId) FROM Account a JOIN a.roles r GROUP BY r.roleName")
+    List<Object[]> countGroupByRoleName();
 }
@@ -0,0 +1,31 @@
+package poly.edu.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một dòng duy nhất (Id = 1): sequence cuối cùng của journal inventory ledger đã được
+ * cộng vào Product.Quantity. Cập nhật cùng transaction với các delta nên khi khởi động lại
+ * chỉ replay các bản ghi journal có sequence lớn hơn.
+ */
+@Entity
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "InventoryCheckpoint")
+public class InventoryCheckpoint {
+
+    @Id
+    @Column(name = "Id")
+    private Integer id;
+
+    @Column(name = "LastSeq", nullable = false)
+    private Long lastSeq;
+
+    @Column(name = "UpdatedAt")
+    private LocalDateTime updatedAt;
+}
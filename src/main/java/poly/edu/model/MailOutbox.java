@@ -0,0 +1,60 @@
+package poly.edu.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Nationalized;
+
+import java.time.LocalDateTime;
+
+/**
+ * Mail chờ gửi. Request chỉ insert vào đây, MailDispatcher gửi nền và retry khi lỗi.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "MailOutbox", indexes = @Index(name = "IX_MailOutbox_Status_NextAttemptAt", columnList = "Status, NextAttemptAt"))
+public class MailOutbox {
+
+    public static final int PENDING = 0;
+    public static final int SENT = 1;
+    // Hết lượt thử
+    public static final int FAILED = 2;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "MailId")
+    private Long mailId;
+
+    @Column(name = "Recipient", nullable = false, length = 320)
+    private String recipient;
+
+    @Nationalized
+    @Column(name = "Subject", nullable = false, length = 500)
+    private String subject;
+
+    @Lob
+    @Nationalized
+    @Column(name = "Body", nullable = false)
+    private String body;
+
+    @Column(name = "Status", nullable = false)
+    private Integer status;
+
+    @Column(name = "Attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "NextAttemptAt", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "CreatedAt", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "SentAt")
+    private LocalDateTime sentAt;
+
+    @Nationalized
+    @Column(name = "LastError", length = 1000)
+    private String lastError;
+}
@@ -13,6 +13,9 @@ import java.util.List;
 @Table(name = "[Order]")
 public class Order {
     
+    // Trạng thái Delivered: chỉ đơn đã giao mới tính doanh thu (dashboard, analytics, rollup)
+    public static final int DELIVERED = 4;
+    
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "OrderId")
@@ -0,0 +1,18 @@
+package poly.edu.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một dòng trong danh sách đơn hàng (trang "Đơn hàng của tôi", bảng đơn hàng admin / nhân viên).
+ * Đọc bằng constructor expression (Order LEFT JOIN Account) nên không load orderDetails / account
+ * theo từng đơn khi render.
+ *
+ * @param customerName họ tên chủ tài khoản đặt đơn
+ */
+public record OrderSummary(Integer orderId, Integer accountId, String customerName, LocalDateTime orderDate,
+                           Integer statusId, Double total, String shippingAddress, String phone, String note) {
+
+    public boolean isCancellable() {
+        return statusId != null && statusId == 1;
+    }
+}
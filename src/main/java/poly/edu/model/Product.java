@@ -1,6 +1,9 @@
 package poly.edu.model;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties; // Nhớ import dòng này
 
@@ -9,7 +12,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties; // Nhớ import d
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(name = "Product")
+@Table(name = "Product", indexes = @Index(name = "IX_Product_OnSale", columnList = "OnSale, ProductId"))
 public class Product {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -37,13 +40,56 @@ public class Product {
     @Column(name = "Rating")
     private Double rating;
     
+    // Tổng hợp review (số lượng, tổng sao, số review theo từng mức 1-5), chỉ ghi bằng câu UPDATE
+    // của ProductRepository (cộng dồn mỗi review / rebuild) nên không insert / update qua entity
+    @ColumnDefault("0")
+    @Column(name = "RatingCount", nullable = false, insertable = false, updatable = false)
+    private int ratingCount;
+    
+    @ColumnDefault("0")
+    @Column(name = "RatingSum", nullable = false, insertable = false, updatable = false)
+    private long ratingSum;
+    
+    @ColumnDefault("0")
+    @Column(name = "Rating1", nullable = false, insertable = false, updatable = false)
+    private int rating1;
+    
+    @ColumnDefault("0")
+    @Column(name = "Rating2", nullable = false, insertable = false, updatable = false)
+    private int rating2;
+    
+    @ColumnDefault("0")
+    @Column(name = "Rating3", nullable = false, insertable = false, updatable = false)
+    private int rating3;
+    
+    @ColumnDefault("0")
+    @Column(name = "Rating4", nullable = false, insertable = false, updatable = false)
+    private int rating4;
+    
+    @ColumnDefault("0")
+    @Column(name = "Rating5", nullable = false, insertable = false, updatable = false)
+    private int rating5;
+    
     @Column(name = "CreatedAt", nullable = false)
     private LocalDateTime createdAt;
     
+    // Optimistic locking: mọi lần ghi Product (kể cả UPDATE tồn kho bằng JPQL / JDBC) đều tăng version.
+    // Default 0 để cột thêm vào bảng cũ có giá trị cho các dòng sẵn có
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "Version", nullable = false)
+    private long version;
+    
     // ✅ Thêm PromotionId
     @Column(name = "PromotionId")
     private Integer promotionId;
     
+    // Promotion đang hiệu lực (materialized): chỉ PromotionScheduler ghi bằng câu UPDATE theo batch
+    // khi qua ngày bắt đầu / kết thúc promotion, không insert / update qua entity
+    @ColumnDefault("0")
+    @Column(name = "OnSale", nullable = false, insertable = false, updatable = false)
+    private boolean onSale;
+    
     @ManyToOne
     @JoinColumn(name = "CategoryId", insertable = false, updatable = false) // <--- THÊM insertable và updatable = false
     @JsonIgnoreProperties("products")
@@ -56,23 +102,17 @@ public class Product {
     @JoinColumn(name = "PromotionId", insertable = false, updatable = false)
     private Promotion promotion;
     
-    // Helper method để tính giá sau khi giảm
+    // Helper method để tính giá sau khi giảm (chỉ khi promotion đang hiệu lực hôm nay).
+    // Listing / giỏ hàng / checkout đọc giá từ PricingEngine, không gọi qua entity
     public Double getDiscountedPrice() {
-        if (promotion != null && promotion.getStatus() && 
-            promotion.getDiscount() != null && promotion.getDiscount() > 0) {
+        if (hasActivePromotion() && promotion.getDiscount() != null && promotion.getDiscount() > 0) {
             return price * (1 - promotion.getDiscount());
         }
         return price;
     }
     
-    // Check xem product có promotion hợp lệ không
+    // Check xem product có promotion hợp lệ không (startDate / endDate tính trọn ngày)
     public boolean hasActivePromotion() {
-        if (promotion == null || !promotion.getStatus()) return false;
-        
-        java.util.Date now = new java.util.Date();
-        if (promotion.getStartDate() != null && promotion.getStartDate().after(now)) return false;
-        if (promotion.getEndDate() != null && promotion.getEndDate().before(now)) return false;
-        
-        return true;
+        return promotion != null && promotion.isActiveOn(LocalDate.now());
     }
 }
\ No newline at end of file
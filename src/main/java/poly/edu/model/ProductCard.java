@@ -0,0 +1,33 @@
+package poly.edu.model;
+
+/**
+ * Dữ liệu một thẻ sản phẩm cho các trang listing / search / bảng admin và các API JSON.
+ * Đọc bằng constructor expression (Product LEFT JOIN Category) nên chỉ lấy đúng các cột
+ * cần hiển thị, không có association để lazy load hay để Jackson đi theo.
+ * Giá bán và mức giảm được gắn từ PricingEngine lúc đọc (withPricing), thẻ trong cache chỉ có giá niêm yết.
+ *
+ * @param discountedPrice giá bán (bằng price nếu không có promotion đang hiệu lực)
+ * @param discount        mức giảm của promotion đang hiệu lực, null nếu không có
+ */
+public record ProductCard(Integer productId, String name, String description, String imageUrl,
+                          Double price, Double discountedPrice, Double discount, Double rating, Integer quantity,
+                          Integer categoryId, String categoryName) {
+
+    // Thứ tự tham số khớp câu SELECT new trong ProductRepository.findCardsByIdIn
+    public ProductCard(Integer productId, String name, String description, String imageUrl, Double price,
+                       Double rating, Integer quantity, Integer categoryId, String categoryName) {
+        this(productId, name, description, imageUrl, price, price, null, rating, quantity, categoryId, categoryName);
+    }
+
+    public static ProductCard of(Product product) {
+        Category category = product.getCategory();
+        return new ProductCard(product.getProductId(), product.getName(), product.getDescription(), product.getImageUrl(),
+                product.getPrice(), product.getRating(), product.getQuantity(), product.getCategoryId(),
+                category != null ? category.getName() : null);
+    }
+
+    public ProductCard withPricing(Double discountedPrice, Double discount) {
+        return new ProductCard(productId, name, description, imageUrl, price, discountedPrice, discount,
+                rating, quantity, categoryId, categoryName);
+    }
+}
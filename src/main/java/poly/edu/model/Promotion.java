@@ -3,6 +3,8 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Date;
 import java.util.List;
 
@@ -39,4 +41,21 @@ public class Promotion {
     // Relationship with Product
     @OneToMany(mappedBy = "promotion")
     private List<Product> products;
+
+    // Có hiệu lực trong ngày day (đang bật, startDate / endDate tính trọn ngày)
+    public boolean isActiveOn(LocalDate day) {
+        if (!Boolean.TRUE.equals(status)) return false;
+        LocalDate start = toLocalDate(startDate);
+        LocalDate end = toLocalDate(endDate);
+        if (start != null && start.isAfter(day)) return false;
+        if (end != null && end.isBefore(day)) return false;
+        return true;
+    }
+
+    // java.sql.Date (Hibernate trả về với @Temporal DATE) không hỗ trợ toInstant()
+    public static LocalDate toLocalDate(Date date) {
+        if (date == null) return null;
+        if (date instanceof java.sql.Date sqlDate) return sqlDate.toLocalDate();
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
 }
\ No newline at end of file
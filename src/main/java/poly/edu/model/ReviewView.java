@@ -0,0 +1,11 @@
+package poly.edu.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một dòng review cho storefront, đọc thẳng bằng constructor expression (JOIN Account lấy tên người viết)
+ * nên không tạo entity Review / Account và không lazy load khi render.
+ */
+public record ReviewView(Integer reviewId, Integer productId, Integer accountId, String reviewerName,
+                         Integer rating, String content, LocalDateTime reviewDate) {
+}
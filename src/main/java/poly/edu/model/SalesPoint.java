@@ -0,0 +1,18 @@
+package poly.edu.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một điểm trên biểu đồ bán hàng (một kỳ của một dimension), đọc từ SalesRollup.
+ * Kỳ không có đơn Delivered nào vẫn có điểm với các số bằng 0.
+ */
+public record SalesPoint(LocalDateTime periodStart, long orderCount, double revenue, long unitsSold) {
+
+    public static SalesPoint of(SalesRollup rollup) {
+        return new SalesPoint(rollup.getPeriodStart(), rollup.getOrderCount(), rollup.getRevenue(), rollup.getUnitsSold());
+    }
+
+    public static SalesPoint empty(LocalDateTime periodStart) {
+        return new SalesPoint(periodStart, 0, 0.0, 0);
+    }
+}
@@ -0,0 +1,80 @@
+package poly.edu.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Số liệu bán hàng (đơn Delivered) đã cộng sẵn theo kỳ: một dòng cho mỗi
+ * (Grain = HOUR / DAY / MONTH, Dimension = ALL / CATEGORY / PRODUCT, DimensionId, PeriodStart).
+ * Kỳ tính theo OrderDate của đơn; Dimension ALL dùng DimensionId = 0.
+ * Ghi bằng SalesRollupJdbcRepository (MERGE cộng delta), biểu đồ admin chỉ đọc bảng này.
+ */
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "SalesRollup",
+        uniqueConstraints = @UniqueConstraint(name = "UX_SalesRollup_Key",
+                columnNames = {"Grain", "Dimension", "DimensionId", "PeriodStart"}),
+        indexes = @Index(name = "IX_SalesRollup_Period", columnList = "Grain, Dimension, PeriodStart"))
+public class SalesRollup {
+
+    public enum Grain {
+        HOUR, DAY, MONTH;
+
+        // Đầu kỳ chứa thời điểm time
+        public LocalDateTime truncate(LocalDateTime time) {
+            return switch (this) {
+                case HOUR -> time.truncatedTo(ChronoUnit.HOURS);
+                case DAY -> time.truncatedTo(ChronoUnit.DAYS);
+                case MONTH -> time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+            };
+        }
+
+        public LocalDateTime next(LocalDateTime periodStart) {
+            return switch (this) {
+                case HOUR -> periodStart.plusHours(1);
+                case DAY -> periodStart.plusDays(1);
+                case MONTH -> periodStart.plusMonths(1);
+            };
+        }
+    }
+
+    public enum Dimension {
+        ALL, CATEGORY, PRODUCT
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "Id")
+    private Long id;
+
+    @Column(name = "Grain", nullable = false, length = 10)
+    private String grain;
+
+    @Column(name = "Dimension", nullable = false, length = 10)
+    private String dimension;
+
+    @Column(name = "DimensionId", nullable = false)
+    private Integer dimensionId;
+
+    @Column(name = "PeriodStart", nullable = false)
+    private LocalDateTime periodStart;
+
+    // Số đơn có ít nhất một dòng thuộc dimension
+    @Column(name = "OrderCount", nullable = false)
+    private Long orderCount;
+
+    @Column(name = "Revenue", nullable = false)
+    private Double revenue;
+
+    @Column(name = "UnitsSold", nullable = false)
+    private Long unitsSold;
+}
@@ -0,0 +1,19 @@
+package poly.edu.model;
+
+/**
+ * Tổng bán hàng của một category / product trong một khoảng thời gian (cộng các dòng SalesRollup).
+ * Tên được gắn sau (withName), câu GROUP BY chỉ đọc bảng rollup.
+ *
+ * @param orderCount cộng số đơn của từng kỳ (một đơn chỉ nằm trong một kỳ nên không bị đếm trùng)
+ */
+public record SalesTotal(Integer dimensionId, String name, long orderCount, double revenue, long unitsSold) {
+
+    // Thứ tự tham số khớp câu SELECT new trong SalesRollupRepository.findTotals
+    public SalesTotal(Integer dimensionId, Long orderCount, Double revenue, Long unitsSold) {
+        this(dimensionId, null, orderCount, revenue, unitsSold);
+    }
+
+    public SalesTotal withName(String name) {
+        return new SalesTotal(dimensionId, name, orderCount, revenue, unitsSold);
+    }
+}
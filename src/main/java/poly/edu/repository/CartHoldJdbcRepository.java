@@ -0,0 +1,56 @@
+package poly.edu.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Xóa các dòng giỏ hàng (hold) bằng một câu DELETE ... OUTPUT để biết chính xác dòng nào
+ * đã bị xóa bởi lần gọi này (sweeper, clear cart và checkout có thể chạy đồng thời).
+ */
+@Repository
+public class CartHoldJdbcRepository {
+
+    // Giới hạn 2100 tham số của SQL Server
+    private static final int MAX_IDS_PER_STATEMENT = 2000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Một hold vừa được xóa
+     */
+    public record ReleasedHold(Integer cartId, Integer accountId, Integer productId, Integer quantity) {
+    }
+
+    /**
+     * Xóa các dòng Cart theo id.
+     *
+     * @param addedBefore nếu khác null chỉ xóa dòng có AddedAt <= mốc này (hold đã hết hạn)
+     * @return các dòng thực sự đã bị xóa
+     */
+    public List<ReleasedHold> deleteHolds(List<Integer> cartIds, LocalDateTime addedBefore) {
+        List<ReleasedHold> released = new ArrayList<>();
+        for (int from = 0; from < cartIds.size(); from += MAX_IDS_PER_STATEMENT) {
+            List<Integer> chunk = cartIds.subList(from, Math.min(cartIds.size(), from + MAX_IDS_PER_STATEMENT));
+            List<Object> args = new ArrayList<>(chunk);
+            String sql = "DELETE FROM Cart " +
+                    "OUTPUT deleted.CartId, deleted.AccountId, deleted.ProductId, deleted.Quantity " +
+                    "WHERE CartId IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            if (addedBefore != null) {
+                sql += " AND AddedAt <= ?";
+                args.add(Timestamp.valueOf(addedBefore));
+            }
+            jdbcTemplate.query(sql, rs -> {
+                released.add(new ReleasedHold(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4)));
+            }, args.toArray());
+        }
+        return released;
+    }
+}
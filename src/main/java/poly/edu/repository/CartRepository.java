@@ -8,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,10 +21,17 @@ public interface CartRepository extends JpaRepository<Cart, Integer> {
     // Find cart item by account and product
     Optional<Cart> findByAccountIdAndProductId(Integer accountId, Integer productId);
 
-    // Delete cart items by account ID
+    // Delete cart items by account ID (một câu DELETE thay vì load rồi xóa từng dòng)
     @Transactional
     @Modifying
-    void deleteByAccountId(Integer accountId);
+    @Query("DELETE FROM Cart c WHERE c.accountId = :accountId")
+    int deleteByAccountId(@Param("accountId") Integer accountId);
+
+    // Xóa đúng các dòng đã đọc (checkout); số dòng trả về ít hơn nghĩa là có hold vừa bị sweeper trả
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Cart c WHERE c.cartId IN :cartIds")
+    int deleteByCartIdIn(@Param("cartIds") Collection<Integer> cartIds);
 
     // Delete specific cart item by account and product
     @Transactional
@@ -48,4 +56,13 @@ public interface CartRepository extends JpaRepository<Cart, Integer> {
     // Get total quantity in cart for account
     @Query("SELECT COALESCE(SUM(c.quantity), 0) FROM Cart c WHERE c.accountId = :accountId")
     Integer getTotalQuantityByAccountId(@Param("accountId") Integer accountId);
-}
\ No newline at end of file
+
+    // Tóm tắt giỏ hàng: [productId, quantity] của từng dòng, không join Product / Promotion
+    // (tạm tính lấy giá từ PricingEngine)
+    @Query("SELECT c.productId, c.quantity FROM Cart c WHERE c.accountId = :accountId")
+    List<Object[]> findQuantitiesByAccountId(@Param("accountId") Integer accountId);
+
+    // [cartId, addedAt] của mọi dòng giỏ hàng, chỉ đọc một lần khi khởi động để dựng hàng đợi hết hạn
+    @Query("SELECT c.cartId, c.addedAt FROM Cart c")
+    List<Object[]> findAllHoldTimes();
+}
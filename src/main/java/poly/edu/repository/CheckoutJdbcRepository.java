@@ -0,0 +1,38 @@
+package poly.edu.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import poly.edu.model.OrderDetail;
+
+import java.util.List;
+
+/**
+ * Các câu lệnh set-based cho checkout mà Spring Data không biểu diễn được.
+ * Chạy trên cùng connection / transaction với JPA (JpaTransactionManager).
+ * <p>
+ * Checkout không trừ tồn kho: số lượng đã được trừ một lần lúc thêm vào giỏ (hold của CartService),
+ * checkout chỉ chuyển các dòng giỏ hàng thành OrderDetail.
+ */
+@Repository
+public class CheckoutJdbcRepository {
+
+    private static final String INSERT_ORDER_DETAIL =
+            "INSERT INTO OrderDetail (OrderId, ProductId, Quantity, UnitPrice) VALUES (?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Insert các OrderDetail bằng JDBC batch (IDENTITY làm Hibernate không batch insert được)
+     */
+    public void insertOrderDetails(List<OrderDetail> details) {
+        if (details.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_ORDER_DETAIL, details, details.size(), (ps, detail) -> {
+            ps.setInt(1, detail.getOrderId());
+            ps.setInt(2, detail.getProductId());
+            ps.setInt(3, detail.getQuantity());
+            ps.setDouble(4, detail.getUnitPrice());
+        });
+    }
+}
@@ -0,0 +1,96 @@
+package poly.edu.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQL tồn kho set-based: đọc tồn kho, cộng delta theo batch (InventoryLedger flush, trả hàng
+ * hàng loạt) và checkpoint của journal InventoryLedger
+ */
+@Repository
+public class InventoryJdbcRepository {
+
+    private static final int CHECKPOINT_ID = 1;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Tồn kho hiện tại trong database của các product
+     */
+    public Map<Integer, Integer> loadQuantities(Collection<Integer> productIds) {
+        Map<Integer, Integer> quantities = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(productIds);
+        // Giới hạn 2100 tham số của SQL Server
+        for (int from = 0; from < ids.size(); from += 2000) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + 2000));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("SELECT ProductId, Quantity FROM Product WHERE ProductId IN (" + placeholders + ")",
+                    rs -> {
+                        quantities.put(rs.getInt(1), rs.getInt(2));
+                    }, chunk.toArray());
+        }
+        return quantities;
+    }
+
+    /**
+     * Tồn kho của các product, đọc bằng UPDATE tăng Version (giữ lock dòng tới hết transaction):
+     * lần ghi đang chạy thì phải commit trước, lần ghi đã đọc version cũ sẽ bị conflict và đọc lại
+     */
+    public Map<Integer, Integer> lockQuantities(Collection<Integer> productIds) {
+        Map<Integer, Integer> quantities = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(productIds);
+        for (int from = 0; from < ids.size(); from += 2000) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + 2000));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("UPDATE Product SET Version = Version + 1 OUTPUT inserted.ProductId, inserted.Quantity " +
+                            "WHERE ProductId IN (" + placeholders + ")",
+                    rs -> {
+                        quantities.put(rs.getInt(1), rs.getInt(2));
+                    }, chunk.toArray());
+        }
+        return quantities;
+    }
+
+    /**
+     * Cộng delta (có thể âm) vào Product.Quantity bằng một JDBC batch
+     */
+    public void applyDeltas(Map<Integer, Integer> deltas) {
+        if (deltas.isEmpty()) return;
+        jdbcTemplate.batchUpdate("UPDATE Product SET Quantity = Quantity + ?, Version = Version + 1 WHERE ProductId = ?",
+                deltas.entrySet(), deltas.size(), (ps, delta) -> {
+                    ps.setInt(1, delta.getValue());
+                    ps.setInt(2, delta.getKey());
+                });
+    }
+
+    /**
+     * Sequence đã áp dụng, tạo dòng checkpoint nếu chưa có
+     */
+    public long readCheckpoint() {
+        jdbcTemplate.update("IF NOT EXISTS (SELECT 1 FROM InventoryCheckpoint WHERE Id = ?) " +
+                "INSERT INTO InventoryCheckpoint (Id, LastSeq, UpdatedAt) VALUES (?, 0, SYSDATETIME())",
+                CHECKPOINT_ID, CHECKPOINT_ID);
+        Long lastSeq = jdbcTemplate.queryForObject(
+                "SELECT LastSeq FROM InventoryCheckpoint WHERE Id = ?", Long.class, CHECKPOINT_ID);
+        return lastSeq != null ? lastSeq : 0L;
+    }
+
+    /**
+     * Đẩy checkpoint lên sequence mới.
+     *
+     * @return false nếu checkpoint đã >= sequence (batch này đã được áp dụng ở lần thử trước)
+     */
+    public boolean advanceCheckpoint(long sequence) {
+        return jdbcTemplate.update("UPDATE InventoryCheckpoint SET LastSeq = ?, UpdatedAt = SYSDATETIME() " +
+                "WHERE Id = ? AND LastSeq < ?", sequence, CHECKPOINT_ID, sequence) > 0;
+    }
+}
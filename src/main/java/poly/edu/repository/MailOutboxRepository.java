@@ -0,0 +1,33 @@
+package poly.edu.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import poly.edu.model.MailOutbox;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface MailOutboxRepository extends JpaRepository<MailOutbox, Long> {
+
+    // Mail đến hạn gửi, cũ nhất trước
+    @Query("SELECT m FROM MailOutbox m WHERE m.status = " + MailOutbox.PENDING + " AND m.nextAttemptAt <= :now ORDER BY m.nextAttemptAt, m.mailId")
+    List<MailOutbox> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Thời điểm đến hạn sớm nhất của các mail còn chờ (null nếu outbox trống)
+    @Query("SELECT MIN(m.nextAttemptAt) FROM MailOutbox m WHERE m.status = " + MailOutbox.PENDING)
+    LocalDateTime findNextAttemptAt();
+
+    long countByStatus(Integer status);
+
+    // Dọn mail đã gửi (một câu DELETE)
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM MailOutbox m WHERE m.status = " + MailOutbox.SENT + " AND m.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+}
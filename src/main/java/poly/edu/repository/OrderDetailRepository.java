@@ -16,11 +16,26 @@ public interface OrderDetailRepository extends JpaRepository<OrderDetail, Intege
      */
     List<OrderDetail> findByOrderId(Integer orderId);
 
+    /**
+     * Order details kèm product (và category của product) trong một query, cho trang chi tiết đơn hàng
+     */
+    @Query("SELECT od FROM OrderDetail od LEFT JOIN FETCH od.product p LEFT JOIN FETCH p.category " +
+           "WHERE od.orderId = :orderId ORDER BY od.orderDetailId")
+    List<OrderDetail> findWithProductByOrderId(@Param("orderId") Integer orderId);
+
     /**
      * Find order details by product ID
      */
     List<OrderDetail> findByProductId(Integer productId);
 
+    /**
+     * Các dòng của đơn [productId, categoryId, quantity, unitPrice] để cộng vào SalesRollup
+     * (categoryId null nếu product đã bị xóa)
+     */
+    @Query("SELECT od.productId, p.categoryId, od.quantity, od.unitPrice FROM OrderDetail od " +
+           "LEFT JOIN od.product p WHERE od.orderId = :orderId")
+    List<Object[]> findRollupRowsByOrderId(@Param("orderId") Integer orderId);
+
     /**
      * Count total items in an order
      */
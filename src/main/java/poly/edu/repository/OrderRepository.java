@@ -1,27 +1,68 @@
 package poly.edu.repository;
 
 import poly.edu.model.Order;
+import poly.edu.model.OrderSummary;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Integer> {
     
+    // Các danh sách Order dạng entity: account và orderStatus lấy cùng query (entity graph), không load từng đơn
+    
     // Find orders by account ID (for users)
+    @EntityGraph(attributePaths = {"account", "orderStatus"})
     List<Order> findByAccountIdOrderByOrderDateDesc(Integer accountId);
     
     // Find all orders ordered by date (for admin)
+    @EntityGraph(attributePaths = {"account", "orderStatus"})
     List<Order> findAllByOrderByOrderDateDesc();
+
+    // Các đơn mới nhất, tối đa limit dòng (ProjectionReport)
+    @EntityGraph(attributePaths = {"account", "orderStatus"})
+    @Query("SELECT o FROM Order o ORDER BY o.orderDate DESC")
+    List<Order> findLatest(Limit limit);
     
     // Find orders by StatusId
+    @EntityGraph(attributePaths = {"account", "orderStatus"})
     List<Order> findByStatusIdOrderByOrderDateDesc(Integer statusId);
     
     // Find orders by account and StatusId
+    @EntityGraph(attributePaths = {"account", "orderStatus"})
     List<Order> findByAccountIdAndStatusIdOrderByOrderDateDesc(Integer accountId, Integer statusId);
+
+    // Một đơn cho trang chi tiết / theo dõi, kèm account và orderStatus
+    @EntityGraph(attributePaths = {"account", "orderStatus"})
+    Optional<Order> findWithAccountByOrderId(Integer orderId);
+    
+    // ===== Danh sách đơn hàng dạng projection (OrderSummary), một query cho cả danh sách =====
+
+    @Query("SELECT new poly.edu.model.OrderSummary(o.orderId, o.accountId, a.fullName, o.orderDate, o.statusId, " +
+           "o.total, o.shippingAddress, o.phone, o.note) " +
+           "FROM Order o LEFT JOIN o.account a WHERE o.accountId = :accountId ORDER BY o.orderDate DESC")
+    List<OrderSummary> findSummariesByAccountId(@Param("accountId") Integer accountId);
+
+    @Query("SELECT new poly.edu.model.OrderSummary(o.orderId, o.accountId, a.fullName, o.orderDate, o.statusId, " +
+           "o.total, o.shippingAddress, o.phone, o.note) " +
+           "FROM Order o LEFT JOIN o.account a ORDER BY o.orderDate DESC")
+    List<OrderSummary> findAllSummaries();
+
+    @Query("SELECT new poly.edu.model.OrderSummary(o.orderId, o.accountId, a.fullName, o.orderDate, o.statusId, " +
+           "o.total, o.shippingAddress, o.phone, o.note) " +
+           "FROM Order o LEFT JOIN o.account a ORDER BY o.orderDate DESC")
+    List<OrderSummary> findLatestSummaries(Limit limit);
+
+    @Query("SELECT new poly.edu.model.OrderSummary(o.orderId, o.accountId, a.fullName, o.orderDate, o.statusId, " +
+           "o.total, o.shippingAddress, o.phone, o.note) " +
+           "FROM Order o LEFT JOIN o.account a WHERE o.statusId = :statusId ORDER BY o.orderDate DESC")
+    List<OrderSummary> findSummariesByStatusId(@Param("statusId") Integer statusId);
     
     // Count orders by account
     @Query("SELECT COUNT(o) FROM Order o WHERE o.accountId = :accountId")
@@ -36,10 +77,15 @@ public interface OrderRepository extends JpaRepository<Order, Integer> {
     long countByStatusId(@Param("statusId") Integer statusId);
     
     // Get total revenue
-    @Query("SELECT COALESCE(SUM(o.total), 0) FROM Order o WHERE o.statusId = 4")
+    @Query("SELECT COALESCE(SUM(o.total), 0) FROM Order o WHERE o.statusId = " + Order.DELIVERED)
     Double getTotalRevenue();
+
+    // Số đơn theo từng trạng thái [statusId, count] (DashboardMetrics đối soát)
+    @Query("SELECT o.statusId, COUNT(o) FROM Order o GROUP BY o.statusId")
+    List<Object[]> countGroupByStatusId();
     
     // Get orders in date range
+    @EntityGraph(attributePaths = {"account", "orderStatus"})
     @Query("SELECT o FROM Order o WHERE o.orderDate BETWEEN :startDate AND :endDate ORDER BY o.orderDate DESC")
     List<Order> findOrdersByDateRange(@Param("startDate") java.time.LocalDateTime startDate, 
                                       @Param("endDate") java.time.LocalDateTime endDate);
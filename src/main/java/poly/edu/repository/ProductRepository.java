@@ -1,11 +1,16 @@
 package poly.edu.repository;
 
 import poly.edu.model.Product;
+import poly.edu.model.ProductCard;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.Collection;
 import java.util.List;
 
 public interface ProductRepository extends JpaRepository<Product, Integer> {
@@ -51,13 +56,140 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
     @Query("SELECT p FROM Product p WHERE p.promotionId IS NOT NULL")
     Page<Product> findProductsWithPromotion(Pageable pageable);
     
-    // Tìm sản phẩm có promotion và promotion đang active
-    @Query("SELECT p FROM Product p JOIN p.promotion pr " +
-           "WHERE p.promotionId IS NOT NULL AND pr.status = true " +
-           "AND pr.startDate <= CURRENT_DATE AND pr.endDate >= CURRENT_DATE")
+    // Tìm sản phẩm có promotion và promotion đang active (cờ OnSale do PromotionScheduler cập nhật)
+    @Query("SELECT p FROM Product p WHERE p.onSale = true")
     Page<Product> findProductsWithActivePromotion(Pageable pageable);
     
-    // Đếm sản phẩm có promotion
-    @Query("SELECT COUNT(p) FROM Product p WHERE p.promotionId IS NOT NULL")
+    // Đếm sản phẩm đang giảm giá
+    @Query("SELECT COUNT(p) FROM Product p WHERE p.onSale = true")
     long countProductsWithPromotion();
+
+    // ===== Keyset pagination (seek theo productId, không OFFSET / COUNT) =====
+    // Chỉ lấy productId; dữ liệu hiển thị đọc riêng qua findCardsByIdIn (và cache theo id)
+    
+    @Query("SELECT p.productId FROM Product p WHERE p.productId > :productId ORDER BY p.productId ASC")
+    List<Integer> findIdsAfter(@Param("productId") Integer productId, Limit limit);
+    
+    @Query("SELECT p.productId FROM Product p WHERE p.productId < :productId ORDER BY p.productId DESC")
+    List<Integer> findIdsBefore(@Param("productId") Integer productId, Limit limit);
+    
+    @Query("SELECT p.productId FROM Product p WHERE p.categoryId = :categoryId AND p.productId > :productId ORDER BY p.productId ASC")
+    List<Integer> findCategoryIdsAfter(@Param("categoryId") Integer categoryId, @Param("productId") Integer productId, Limit limit);
+    
+    @Query("SELECT p.productId FROM Product p WHERE p.categoryId = :categoryId AND p.productId < :productId ORDER BY p.productId DESC")
+    List<Integer> findCategoryIdsBefore(@Param("categoryId") Integer categoryId, @Param("productId") Integer productId, Limit limit);
+    
+    long countByCategoryId(Integer categoryId);
+    
+    @Query("SELECT p.productId FROM Product p WHERE p.onSale = true AND p.productId > :productId ORDER BY p.productId ASC")
+    List<Integer> findPromotionIdsAfter(@Param("productId") Integer productId, Limit limit);
+    
+    @Query("SELECT p.productId FROM Product p WHERE p.onSale = true AND p.productId < :productId ORDER BY p.productId DESC")
+    List<Integer> findPromotionIdsBefore(@Param("productId") Integer productId, Limit limit);
+
+    // Thẻ sản phẩm (projection) cho listing / search / bảng admin, một query cho cả trang
+    // Giá bán / mức giảm không nằm trong thẻ: PricingEngine gắn vào lúc đọc
+    @Query("SELECT new poly.edu.model.ProductCard(p.productId, p.name, p.description, p.imageUrl, p.price, " +
+           "p.rating, p.quantity, p.categoryId, c.name) " +
+           "FROM Product p LEFT JOIN p.category c " +
+           "WHERE p.productId IN :ids")
+    List<ProductCard> findCardsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // [productId, price, promotionId] của mọi product, để PricingEngine dựng bảng giá
+    @Query("SELECT p.productId, p.price, p.promotionId FROM Product p")
+    List<Object[]> findAllPriceRows();
+
+    @Query("SELECT p.productId, p.price, p.promotionId FROM Product p WHERE p.productId = :productId")
+    List<Object[]> findPriceRow(@Param("productId") Integer productId);
+
+    // [productId, rating, promotionId] của các product có gắn promotion (dựng PromotedProductIndex)
+    @Query("SELECT p.productId, p.rating, p.promotionId FROM Product p WHERE p.promotionId IS NOT NULL")
+    List<Object[]> findPromotedRows();
+
+    @Query("SELECT p.productId, p.rating, p.promotionId FROM Product p WHERE p.promotionId IN :promotionIds")
+    List<Object[]> findPromotedRowsByPromotionIdIn(@Param("promotionIds") Collection<Integer> promotionIds);
+
+    // Id các product đang có promotion hiệu lực (SKU nóng cho InventoryLedger)
+    @Query("SELECT p.productId FROM Product p WHERE p.onSale = true")
+    List<Integer> findIdsWithActivePromotion();
+
+    // Id các product thuộc các promotion (bỏ track SKU khi promotion kết thúc)
+    @Query("SELECT p.productId FROM Product p WHERE p.promotionId IN :promotionIds")
+    List<Integer> findIdsByPromotionIdIn(@Param("promotionIds") Collection<Integer> promotionIds);
+
+    // ===== Cờ OnSale (chỉ PromotionScheduler ghi). Không tăng Version để không làm hỏng compare-and-set tồn kho =====
+
+    // Bật / tắt cờ cho mọi product của các promotion vừa qua ranh giới, một câu cho cả batch
+    @Modifying
+    @Query("UPDATE Product p SET p.onSale = :onSale WHERE p.promotionId IN :promotionIds AND p.onSale <> :onSale")
+    int updateOnSaleByPromotionIdIn(@Param("promotionIds") Collection<Integer> promotionIds, @Param("onSale") boolean onSale);
+
+    // Đối soát: tắt cờ của product không thuộc promotion nào đang hiệu lực
+    @Modifying
+    @Query("UPDATE Product p SET p.onSale = false WHERE p.onSale = true " +
+           "AND (p.promotionId IS NULL OR p.promotionId NOT IN :promotionIds)")
+    int clearOnSaleExcept(@Param("promotionIds") Collection<Integer> promotionIds);
+
+    @Modifying
+    @Query("UPDATE Product p SET p.onSale = false WHERE p.onSale = true")
+    int clearOnSale();
+
+    // Product vừa được lưu (promotion có thể đã đổi)
+    @Modifying
+    @Query("UPDATE Product p SET p.onSale = :onSale WHERE p.productId = :productId AND p.onSale <> :onSale")
+    int updateOnSale(@Param("productId") Integer productId, @Param("onSale") boolean onSale);
+
+    // Tồn kho + version hiện tại, đọc thẳng từ database (không qua persistence context)
+    @Query("SELECT p.quantity, p.version FROM Product p WHERE p.productId = :productId")
+    List<Object[]> findStockState(@Param("productId") Integer productId);
+
+    // Compare-and-set theo version: 0 dòng nghĩa là có người vừa ghi trước (hoặc không còn đủ hàng)
+    @Modifying
+    @Query("UPDATE Product p SET p.quantity = p.quantity + :delta, p.version = p.version + 1 " +
+           "WHERE p.productId = :productId AND p.version = :version AND p.quantity + :delta >= 0")
+    int updateQuantityIfVersion(@Param("productId") Integer productId,
+                                @Param("delta") int delta,
+                                @Param("version") long version);
+
+    // Cộng một review vào tổng hợp rating: O(1), không đọc lại các review cũ.
+    // Trong SET, SQL Server dùng giá trị cũ của các cột nên Rating tính trên tổng mới.
+    // Không tăng Version để review không làm hỏng compare-and-set tồn kho đang chạy
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE Product SET " +
+           "RatingCount = RatingCount + 1, " +
+           "RatingSum = RatingSum + :rating, " +
+           "Rating1 = Rating1 + CASE WHEN :rating = 1 THEN 1 ELSE 0 END, " +
+           "Rating2 = Rating2 + CASE WHEN :rating = 2 THEN 1 ELSE 0 END, " +
+           "Rating3 = Rating3 + CASE WHEN :rating = 3 THEN 1 ELSE 0 END, " +
+           "Rating4 = Rating4 + CASE WHEN :rating = 4 THEN 1 ELSE 0 END, " +
+           "Rating5 = Rating5 + CASE WHEN :rating = 5 THEN 1 ELSE 0 END, " +
+           "Rating = ROUND(CAST(RatingSum + :rating AS FLOAT) / (RatingCount + 1), 1) " +
+           "WHERE ProductId = :productId", nativeQuery = true)
+    int addRatingToAggregates(@Param("productId") Integer productId, @Param("rating") int rating);
+
+    // Tính lại tổng hợp rating của mọi product bằng một câu GROUP BY trên Review.
+    // Product chưa có review giữ nguyên Rating (giá trị admin nhập)
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE p SET " +
+           "p.RatingCount = ISNULL(a.Cnt, 0), " +
+           "p.RatingSum = ISNULL(a.Total, 0), " +
+           "p.Rating1 = ISNULL(a.R1, 0), p.Rating2 = ISNULL(a.R2, 0), p.Rating3 = ISNULL(a.R3, 0), " +
+           "p.Rating4 = ISNULL(a.R4, 0), p.Rating5 = ISNULL(a.R5, 0), " +
+           "p.Rating = CASE WHEN a.Cnt > 0 THEN ROUND(CAST(a.Total AS FLOAT) / a.Cnt, 1) ELSE p.Rating END " +
+           "FROM Product p LEFT JOIN (" +
+           "  SELECT ProductId, COUNT(*) AS Cnt, SUM(CAST(Rating AS BIGINT)) AS Total, " +
+           "  SUM(CASE WHEN Rating = 1 THEN 1 ELSE 0 END) AS R1, " +
+           "  SUM(CASE WHEN Rating = 2 THEN 1 ELSE 0 END) AS R2, " +
+           "  SUM(CASE WHEN Rating = 3 THEN 1 ELSE 0 END) AS R3, " +
+           "  SUM(CASE WHEN Rating = 4 THEN 1 ELSE 0 END) AS R4, " +
+           "  SUM(CASE WHEN Rating = 5 THEN 1 ELSE 0 END) AS R5 " +
+           "  FROM Review WHERE Rating BETWEEN 1 AND 5 GROUP BY ProductId" +
+           ") a ON a.ProductId = p.ProductId", nativeQuery = true)
+    int rebuildRatingAggregates();
+
+    // Khác 0 nghĩa là tổng hợp rating lệch với bảng Review (vd. lần đầu thêm các cột, hoặc review bị xóa tay)
+    @Query(value = "SELECT (SELECT COUNT_BIG(*) FROM Review WHERE Rating BETWEEN 1 AND 5) - " +
+           "(SELECT ISNULL(SUM(CAST(RatingCount AS BIGINT)), 0) FROM Product)", nativeQuery = true)
+    long countUnaggregatedReviews();
 }
@@ -1,12 +1,36 @@
 package poly.edu.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import poly.edu.model.Review;
+import poly.edu.model.ReviewView;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface ReviewRepository extends JpaRepository<Review, Integer> {
     // Lấy danh sách review của 1 sản phẩm, mới nhất lên đầu
     List<Review> findByProductIdOrderByReviewDateDesc(Integer productId);
-}
\ No newline at end of file
+
+    // ===== Review feed: keyset pagination theo (ReviewDate DESC, ReviewId DESC) =====
+
+    @Query("SELECT new poly.edu.model.ReviewView(r.reviewId, r.productId, r.accountId, a.fullName, r.rating, r.content, r.reviewDate) " +
+           "FROM Review r LEFT JOIN r.account a " +
+           "WHERE r.productId = :productId " +
+           "ORDER BY r.reviewDate DESC, r.reviewId DESC")
+    List<ReviewView> findFeed(@Param("productId") Integer productId, Limit limit);
+
+    @Query("SELECT new poly.edu.model.ReviewView(r.reviewId, r.productId, r.accountId, a.fullName, r.rating, r.content, r.reviewDate) " +
+           "FROM Review r LEFT JOIN r.account a " +
+           "WHERE r.productId = :productId " +
+           "AND (r.reviewDate < :reviewDate OR (r.reviewDate = :reviewDate AND r.reviewId < :reviewId)) " +
+           "ORDER BY r.reviewDate DESC, r.reviewId DESC")
+    List<ReviewView> findFeedAfter(@Param("productId") Integer productId,
+                                   @Param("reviewDate") LocalDateTime reviewDate,
+                                   @Param("reviewId") Integer reviewId,
+                                   Limit limit);
+}
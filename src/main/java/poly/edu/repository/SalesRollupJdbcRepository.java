@@ -0,0 +1,128 @@
+package poly.edu.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import poly.edu.model.Order;
+import poly.edu.model.SalesRollup.Dimension;
+import poly.edu.model.SalesRollup.Grain;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * SQL ghi bảng SalesRollup: cộng delta theo batch (chuyển trạng thái đơn) và dựng lại
+ * một khoảng thời gian từ lịch sử đơn hàng bằng INSERT ... SELECT GROUP BY (backfill).
+ * Chạy trên cùng connection / transaction với JPA (JpaTransactionManager).
+ */
+@Repository
+public class SalesRollupJdbcRepository {
+
+    // HOLDLOCK: hai transaction cùng tạo một dòng chưa có thì một bên chờ rồi cộng vào, không trùng key
+    private static final String MERGE_DELTA =
+            "MERGE SalesRollup WITH (HOLDLOCK) AS r " +
+            "USING (SELECT ? AS Grain, ? AS Dimension, ? AS DimensionId, ? AS PeriodStart) AS k " +
+            "ON r.Grain = k.Grain AND r.Dimension = k.Dimension AND r.DimensionId = k.DimensionId AND r.PeriodStart = k.PeriodStart " +
+            "WHEN MATCHED THEN UPDATE SET OrderCount = r.OrderCount + ?, Revenue = r.Revenue + ?, UnitsSold = r.UnitsSold + ? " +
+            "WHEN NOT MATCHED THEN INSERT (Grain, Dimension, DimensionId, PeriodStart, OrderCount, Revenue, UnitsSold) " +
+            "VALUES (k.Grain, k.Dimension, k.DimensionId, k.PeriodStart, ?, ?, ?);";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Phần cộng thêm (có thể âm) vào một dòng rollup
+     */
+    public record Delta(Grain grain, Dimension dimension, int dimensionId, LocalDateTime periodStart,
+                        long orderCount, double revenue, long unitsSold) {
+    }
+
+    /**
+     * Cộng các delta bằng một JDBC batch MERGE
+     */
+    public void applyDeltas(List<Delta> deltas) {
+        if (deltas.isEmpty()) return;
+        jdbcTemplate.batchUpdate(MERGE_DELTA, deltas, deltas.size(), (ps, delta) -> {
+            ps.setString(1, delta.grain().name());
+            ps.setString(2, delta.dimension().name());
+            ps.setInt(3, delta.dimensionId());
+            ps.setTimestamp(4, Timestamp.valueOf(delta.periodStart()));
+            ps.setLong(5, delta.orderCount());
+            ps.setDouble(6, delta.revenue());
+            ps.setLong(7, delta.unitsSold());
+            ps.setLong(8, delta.orderCount());
+            ps.setDouble(9, delta.revenue());
+            ps.setLong(10, delta.unitsSold());
+        });
+    }
+
+    public boolean isEmpty() {
+        return jdbcTemplate.queryForList("SELECT TOP 1 Id FROM SalesRollup", Long.class).isEmpty();
+    }
+
+    /**
+     * OrderDate nhỏ nhất / lớn nhất của các đơn Delivered, null nếu chưa có đơn nào
+     */
+    public LocalDateTime[] findDeliveredRange() {
+        return jdbcTemplate.queryForObject("SELECT MIN(OrderDate), MAX(OrderDate) FROM [Order] WHERE StatusId = ?",
+                (rs, rowNum) -> {
+                    Timestamp min = rs.getTimestamp(1);
+                    Timestamp max = rs.getTimestamp(2);
+                    return min == null ? null : new LocalDateTime[]{min.toLocalDateTime(), max.toLocalDateTime()};
+                }, Order.DELIVERED);
+    }
+
+    /**
+     * Dựng lại mọi dòng rollup có PeriodStart trong [from, to) từ OrderDetail của các đơn Delivered.
+     * from / to phải là đầu tháng để kỳ giờ / ngày / tháng đều nằm trọn trong khoảng.
+     *
+     * @return số dòng rollup đã ghi
+     */
+    public int rebuild(LocalDateTime from, LocalDateTime to) {
+        Timestamp fromTs = Timestamp.valueOf(from);
+        Timestamp toTs = Timestamp.valueOf(to);
+        jdbcTemplate.update("DELETE FROM SalesRollup WHERE PeriodStart >= ? AND PeriodStart < ?", fromTs, toTs);
+        int rows = 0;
+        for (Grain grain : Grain.values()) {
+            for (Dimension dimension : Dimension.values()) {
+                rows += jdbcTemplate.update(rebuildSql(grain, dimension), Order.DELIVERED, fromTs, toTs);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Xóa rollup nằm ngoài [from, to) (kỳ không còn đơn Delivered nào sau khi backfill)
+     */
+    public int deleteOutside(LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.update("DELETE FROM SalesRollup WHERE PeriodStart < ? OR PeriodStart >= ?",
+                Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    public int deleteAll() {
+        return jdbcTemplate.update("DELETE FROM SalesRollup");
+    }
+
+    private static String rebuildSql(Grain grain, Dimension dimension) {
+        String period = switch (grain) {
+            case HOUR -> "DATEADD(HOUR, DATEDIFF(HOUR, 0, o.OrderDate), 0)";
+            case DAY -> "DATEADD(DAY, DATEDIFF(DAY, 0, o.OrderDate), 0)";
+            case MONTH -> "DATEADD(MONTH, DATEDIFF(MONTH, 0, o.OrderDate), 0)";
+        };
+        String dimensionId = switch (dimension) {
+            case ALL -> "0";
+            case CATEGORY -> "p.CategoryId";
+            case PRODUCT -> "d.ProductId";
+        };
+        // Product đã bị xóa: vẫn tính vào ALL / PRODUCT, bỏ qua ở CATEGORY (giống đường cộng delta)
+        String join = dimension == Dimension.CATEGORY ? "JOIN Product p ON p.ProductId = d.ProductId " : "";
+        String groupBy = dimension == Dimension.ALL ? period : dimensionId + ", " + period;
+        return "INSERT INTO SalesRollup (Grain, Dimension, DimensionId, PeriodStart, OrderCount, Revenue, UnitsSold) " +
+               "SELECT '" + grain.name() + "', '" + dimension.name() + "', " + dimensionId + ", " + period + ", " +
+               "COUNT(DISTINCT d.OrderId), SUM(d.Quantity * d.UnitPrice), SUM(CAST(d.Quantity AS BIGINT)) " +
+               "FROM [Order] o JOIN OrderDetail d ON d.OrderId = o.OrderId " + join +
+               "WHERE o.StatusId = ? AND o.OrderDate >= ? AND o.OrderDate < ? " +
+               "GROUP BY " + groupBy;
+    }
+}
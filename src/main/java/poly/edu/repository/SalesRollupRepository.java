@@ -0,0 +1,31 @@
+package poly.edu.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import poly.edu.model.SalesRollup;
+import poly.edu.model.SalesTotal;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface SalesRollupRepository extends JpaRepository<SalesRollup, Long> {
+
+    // Các kỳ của một dimension trong [from, to), dùng unique index (Grain, Dimension, DimensionId, PeriodStart)
+    @Query("SELECT r FROM SalesRollup r WHERE r.grain = :grain AND r.dimension = :dimension " +
+           "AND r.dimensionId = :dimensionId AND r.periodStart >= :from AND r.periodStart < :to ORDER BY r.periodStart")
+    List<SalesRollup> findSeries(@Param("grain") String grain, @Param("dimension") String dimension,
+                                 @Param("dimensionId") Integer dimensionId,
+                                 @Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    // Tổng theo từng category / product trong [from, to), doanh thu cao trước
+    @Query("SELECT new poly.edu.model.SalesTotal(r.dimensionId, SUM(r.orderCount), SUM(r.revenue), SUM(r.unitsSold)) " +
+           "FROM SalesRollup r WHERE r.grain = :grain AND r.dimension = :dimension " +
+           "AND r.periodStart >= :from AND r.periodStart < :to " +
+           "GROUP BY r.dimensionId ORDER BY SUM(r.revenue) DESC, r.dimensionId")
+    List<SalesTotal> findTotals(@Param("grain") String grain, @Param("dimension") String dimension,
+                                @Param("from") LocalDateTime from, @Param("to") LocalDateTime to, Pageable pageable);
+}
@@ -1,6 +1,10 @@
 package poly.edu.service;
 
+import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +14,8 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import poly.edu.dao.AccountDAO;
 import poly.edu.model.Account;
@@ -19,6 +25,23 @@ public class AuthService {
     
     @Autowired
     private AccountDAO accountDAO;
+
+    private static final String CURRENT_ACCOUNT_ATTRIBUTE = AuthService.class.getName() + ".currentAccount";
+    private static final String ACCOUNT_ENTITY_ATTRIBUTE = AuthService.class.getName() + ".account";
+
+    // username -> version, tăng khi thông tin account thay đổi để các session đang cache tự load lại
+    private final Map<String, Long> accountVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Thông tin gọn của user đăng nhập, đủ cho các trang thường (navbar, giỏ hàng, review)
+     */
+    public record CurrentAccount(Integer accountId, String username, String fullName, Set<String> roles)
+            implements Serializable {
+    }
+
+    // Bản lưu trong session kèm version lúc load
+    private record SessionEntry(CurrentAccount account, long version) implements Serializable {
+    }
     
     /**
      * Lấy đối tượng xác thực
@@ -42,19 +65,84 @@ public class AuthService {
     }
     
     /**
-     * Lấy Account entity của user đăng nhập
+     * Lấy Account entity của user đăng nhập (query tối đa một lần mỗi request).
+     * Chỉ dùng khi cần đủ entity (trang tài khoản, checkout); còn lại dùng getCurrentAccount()
      */
     public Account getAccount() {
         String username = this.getUsername();
-        return accountDAO.findByUsername(username).orElse(null);
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null
+                && request.getAttribute(ACCOUNT_ENTITY_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof Account cached
+                && cached.getUsername().equals(username)) {
+            return cached;
+        }
+        Account account = accountDAO.findByUsername(username).orElse(null);
+        if (request != null && account != null) {
+            request.setAttribute(ACCOUNT_ENTITY_ATTRIBUTE, account, RequestAttributes.SCOPE_REQUEST);
+        }
+        return account;
     }
     
     /**
-     * Lấy AccountId của user đăng nhập
+     * Lấy AccountId của user đăng nhập (không query khi session đã có CurrentAccount)
      */
     public Integer getAccountId() {
+        CurrentAccount account = this.getCurrentAccount();
+        return account != null ? account.accountId() : null;
+    }
+
+    /**
+     * Lấy thông tin user đăng nhập: request -> session (còn đúng version) -> database.
+     * Trả về null nếu chưa đăng nhập hoặc account không tồn tại
+     */
+    public CurrentAccount getCurrentAccount() {
+        if (!this.isAuthenticated()) return null;
+        String username = this.getUsername();
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request == null) {
+            return load(username);
+        }
+
+        if (request.getAttribute(CURRENT_ACCOUNT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof CurrentAccount cached
+                && cached.username().equals(username)) {
+            return cached;
+        }
+
+        long version = accountVersions.getOrDefault(username, 0L);
+        CurrentAccount account = null;
+        if (request.getAttribute(CURRENT_ACCOUNT_ATTRIBUTE, RequestAttributes.SCOPE_SESSION) instanceof SessionEntry entry
+                && entry.account().username().equals(username)
+                && entry.version() == version) {
+            account = entry.account();
+        }
+        if (account == null) {
+            account = load(username);
+            if (account == null) return null;
+            request.setAttribute(CURRENT_ACCOUNT_ATTRIBUTE, new SessionEntry(account, version), RequestAttributes.SCOPE_SESSION);
+        }
+        request.setAttribute(CURRENT_ACCOUNT_ATTRIBUTE, account, RequestAttributes.SCOPE_REQUEST);
+        return account;
+    }
+
+    /**
+     * Thông tin account đã đổi (cập nhật hồ sơ, admin sửa account / role):
+     * mọi session của username này sẽ load lại ở request kế tiếp
+     */
+    public void invalidateAccount(String username) {
+        if (username == null) return;
+        accountVersions.merge(username, 1L, Long::sum);
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            request.removeAttribute(CURRENT_ACCOUNT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            request.removeAttribute(ACCOUNT_ENTITY_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    // Roles lấy từ Authentication (đã có sẵn trong security context), chỉ query để lấy id và họ tên
+    private CurrentAccount load(String username) {
         Account account = this.getAccount();
-        return account != null ? account.getAccountId() : null;
+        if (account == null) return null;
+        return new CurrentAccount(account.getAccountId(), username, account.getFullName(), Set.copyOf(this.getRoles()));
     }
     
     /**
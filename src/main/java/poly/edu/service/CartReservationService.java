@@ -0,0 +1,149 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import poly.edu.repository.CartHoldJdbcRepository;
+import poly.edu.repository.CartRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Giữ hàng có thời hạn cho giỏ hàng: mỗi dòng Cart giữ tồn kho tới AddedAt + TTL
+ * (AddedAt được làm mới mỗi lần thêm / sửa số lượng).
+ * <p>
+ * Thời điểm hết hạn nằm trong một DelayQueue (dựng từ bảng Cart một lần khi khởi động, sau đó
+ * CartService báo mỗi lần giữ hàng), sweeper chỉ lấy các phần tử đã tới hạn ra xử lý theo batch
+ * thay vì quét bảng Cart. Phần tử cũ (dòng đã được làm mới / đã xóa) không cần gỡ khỏi queue:
+ * câu DELETE có điều kiện AddedAt <= mốc hết hạn sẽ không xóa gì.
+ */
+@Service
+public class CartReservationService {
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartHoldJdbcRepository cartHoldJdbcRepository;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private CartSummaryCache cartSummaryCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${cart.reservation.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    @Value("${cart.reservation.sweep-batch-size:500}")
+    private int batchSize;
+
+    private final DelayQueue<Hold> expiries = new DelayQueue<>();
+
+    private record Hold(Integer cartId, long expiresAtMillis) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiresAtMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiresAtMillis, ((Hold) other).expiresAtMillis);
+        }
+    }
+
+    /**
+     * Dựng hàng đợi hết hạn từ các dòng giỏ hàng hiện có
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadHolds() {
+        try {
+            List<Object[]> rows = cartRepository.findAllHoldTimes();
+            for (Object[] row : rows) {
+                schedule((Integer) row[0], (LocalDateTime) row[1]);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR loading cart reservations: " + e.getMessage());
+        }
+    }
+
+    public long getTtlMinutes() {
+        return ttlMinutes;
+    }
+
+    /**
+     * Hold của một dòng giỏ hàng được tạo / làm mới lúc addedAt
+     */
+    public void schedule(Integer cartId, LocalDateTime addedAt) {
+        if (cartId == null || addedAt == null) return;
+        long addedAtMillis = addedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        expiries.add(new Hold(cartId, addedAtMillis + Duration.ofMinutes(ttlMinutes).toMillis()));
+    }
+
+    /**
+     * Trả các hold đã hết hạn, mỗi batch một transaction
+     */
+    @Scheduled(fixedDelayString = "${cart.reservation.sweep-interval-ms:30000}")
+    public void sweep() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        while (true) {
+            List<Hold> due = new ArrayList<>();
+            expiries.drainTo(due, batchSize);
+            if (due.isEmpty()) return;
+
+            List<Integer> cartIds = due.stream().map(Hold::cartId).toList();
+            try {
+                transaction.execute(status -> release(cartIds, LocalDateTime.now().minusMinutes(ttlMinutes)));
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.err.println("ERROR releasing expired cart holds, will retry: " + e.getMessage());
+                // Trả lại queue, lần sweep sau thử tiếp
+                expiries.addAll(due);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Xóa các dòng giỏ hàng và trả tồn kho của chúng hàng loạt (chạy trong transaction hiện tại).
+     * Chỉ những dòng thực sự bị xóa bởi lần gọi này mới được trả hàng.
+     *
+     * @param addedBefore khác null thì chỉ xóa các dòng có AddedAt <= mốc này
+     */
+    public List<CartHoldJdbcRepository.ReleasedHold> release(List<Integer> cartIds, LocalDateTime addedBefore) {
+        if (cartIds.isEmpty()) return List.of();
+        List<CartHoldJdbcRepository.ReleasedHold> released = cartHoldJdbcRepository.deleteHolds(cartIds, addedBefore);
+        if (released.isEmpty()) return released;
+
+        Map<Integer, Integer> quantities = new HashMap<>();
+        Set<Integer> accountIds = new HashSet<>();
+        for (CartHoldJdbcRepository.ReleasedHold hold : released) {
+            quantities.merge(hold.productId(), hold.quantity(), Integer::sum);
+            accountIds.add(hold.accountId());
+        }
+        productService.restoreStock(quantities);
+        accountIds.forEach(cartSummaryCache::invalidate);
+        return released;
+    }
+}
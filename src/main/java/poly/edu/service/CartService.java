@@ -2,7 +2,10 @@ package poly.edu.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import poly.edu.model.Cart;
 import poly.edu.repository.CartRepository;
 
@@ -14,22 +17,43 @@ import java.util.Optional;
 @Transactional
 public class CartService {
 
+    private static final String BUSY = "busy";
+
     @Autowired
     private CartRepository cartRepository;
 
     @Autowired
     private ProductService productService;
 
-    // Add product to cart
+    @Autowired
+    private CartSummaryCache cartSummaryCache;
+
+    @Autowired
+    private CartReservationService cartReservationService;
+
+    @Autowired
+    private PricingEngine pricingEngine;
+
+    @Autowired
+    private StockRetryPolicy stockRetryPolicy;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Add product to cart. Giữ hàng bị conflict thì chạy lại cả transaction (backoff giữa hai transaction)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public String addToCart(Integer accountId, Integer productId, Integer quantity) {
-        // Check if product is in stock
-        if (!productService.isInStock(productId, quantity)) {
-            Integer availableQuantity = productService.getAvailableQuantity(productId);
-            if (availableQuantity == 0) {
-                return "out_of_stock";
-            } else {
-                return "insufficient_stock:" + availableQuantity;
-            }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        return stockRetryPolicy.run(productId,
+                () -> transaction.execute(status -> addToCartOnce(accountId, productId, quantity)),
+                BUSY::equals);
+    }
+
+    private String addToCartOnce(Integer accountId, Integer productId, Integer quantity) {
+        // Giữ hàng trước (compare-and-set trên version), chỉ ghi giỏ khi giữ được
+        StockRetryPolicy.Outcome reserved = productService.adjustStock(productId, -quantity);
+        if (reserved != StockRetryPolicy.Outcome.APPLIED) {
+            return stockFailure(productId, reserved);
         }
 
         // Check if item already exists in cart
@@ -40,17 +64,11 @@ public class CartService {
             Cart cartItem = existingCartItem.get();
             Integer newQuantity = cartItem.getQuantity() + quantity;
             
-            // Check if total quantity exceeds available stock
-            if (!productService.isInStock(productId, newQuantity)) {
-                Integer availableQuantity = productService.getAvailableQuantity(productId);
-                return "insufficient_stock:" + availableQuantity;
-            }
-            
             cartItem.setQuantity(newQuantity);
+            cartItem.setAddedAt(LocalDateTime.now()); // Làm mới thời hạn giữ hàng
             cartRepository.save(cartItem);
-            
-            // Reduce product quantity
-            productService.reduceProductQuantity(productId, quantity);
+            cartReservationService.schedule(cartItem.getCartId(), cartItem.getAddedAt());
+            cartSummaryCache.applyDelta(accountId, 0, quantity, quantity * unitPrice(productId));
             
             return "updated:" + newQuantity;
         } else {
@@ -63,9 +81,8 @@ public class CartService {
                     .build();
             
             cartRepository.save(cartItem);
-            
-            // Reduce product quantity
-            productService.reduceProductQuantity(productId, quantity);
+            cartReservationService.schedule(cartItem.getCartId(), cartItem.getAddedAt());
+            cartSummaryCache.applyDelta(accountId, 1, quantity, quantity * unitPrice(productId));
             
             return "added:" + quantity;
         }
@@ -76,8 +93,16 @@ public class CartService {
         return cartRepository.findByAccountId(accountId);
     }
 
-    // Update cart item quantity
+    // Update cart item quantity (giữ thêm hàng bị conflict thì chạy lại cả transaction như addToCart)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public String updateCartItemQuantity(Integer accountId, Integer productId, Integer newQuantity) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        return stockRetryPolicy.run(productId,
+                () -> transaction.execute(status -> updateCartItemQuantityOnce(accountId, productId, newQuantity)),
+                BUSY::equals);
+    }
+
+    private String updateCartItemQuantityOnce(Integer accountId, Integer productId, Integer newQuantity) {
         Optional<Cart> cartItemOpt = cartRepository.findByAccountIdAndProductId(accountId, productId);
         
         if (cartItemOpt.isPresent()) {
@@ -90,24 +115,21 @@ public class CartService {
                 return "removed";
             }
             
-            // Check if new quantity is available
+            // Adjust product quantity trước (giữ thêm / trả bớt), không đủ hàng thì không sửa giỏ
             Integer quantityDifference = newQuantity - oldQuantity;
-            Integer availableQuantity = productService.getAvailableQuantity(productId);
-            
-            if (quantityDifference > availableQuantity) {
-                return "insufficient_stock:" + availableQuantity;
+            if (quantityDifference != 0) {
+                StockRetryPolicy.Outcome adjusted = productService.adjustStock(productId, -quantityDifference);
+                if (adjusted != StockRetryPolicy.Outcome.APPLIED) {
+                    return stockFailure(productId, adjusted);
+                }
             }
             
             // Update cart item
             cartItem.setQuantity(newQuantity);
+            cartItem.setAddedAt(LocalDateTime.now()); // Làm mới thời hạn giữ hàng
             cartRepository.save(cartItem);
-            
-            // Adjust product quantity
-            if (quantityDifference > 0) {
-                productService.reduceProductQuantity(productId, quantityDifference);
-            } else if (quantityDifference < 0) {
-                productService.restoreProductQuantity(productId, Math.abs(quantityDifference));
-            }
+            cartReservationService.schedule(cartItem.getCartId(), cartItem.getAddedAt());
+            cartSummaryCache.applyDelta(accountId, 0, quantityDifference, quantityDifference * unitPrice(productId));
             
             return "updated:" + newQuantity;
         }
@@ -120,13 +142,8 @@ public class CartService {
         Optional<Cart> cartItemOpt = cartRepository.findByAccountIdAndProductId(accountId, productId);
         
         if (cartItemOpt.isPresent()) {
-            Cart cartItem = cartItemOpt.get();
-            
-            // Restore product quantity
-            productService.restoreProductQuantity(productId, cartItem.getQuantity());
-            
-            // Remove from cart
-            cartRepository.delete(cartItem);
+            // Xóa dòng và trả hàng (chỉ trả nếu dòng chưa bị sweeper trả trước đó)
+            cartReservationService.release(List.of(cartItemOpt.get().getCartId()), null);
             return true;
         }
         
@@ -135,26 +152,29 @@ public class CartService {
 
     // Clear entire cart
     public boolean clearCart(Integer accountId) {
-        List<Cart> cartItems = cartRepository.findByAccountId(accountId);
+        List<Integer> cartIds = cartRepository.findByAccountId(accountId).stream()
+                .map(Cart::getCartId)
+                .toList();
         
-        // Restore all product quantities
-        for (Cart cartItem : cartItems) {
-            productService.restoreProductQuantity(cartItem.getProductId(), cartItem.getQuantity());
-        }
-        
-        // Clear cart
-        cartRepository.deleteByAccountId(accountId);
+        // Xóa cart và trả tồn kho của tất cả dòng hàng loạt
+        cartReservationService.release(cartIds, null);
+        cartSummaryCache.markEmpty(accountId);
         return true;
     }
 
+    // Get cart summary (item count, total quantity, subtotal) for the navbar badge
+    public CartSummaryCache.CartSummary getCartSummary(Integer accountId) {
+        return cartSummaryCache.get(accountId);
+    }
+
     // Get cart item count
     public long getCartItemCount(Integer accountId) {
-        return cartRepository.countByAccountId(accountId);
+        return cartSummaryCache.get(accountId).itemCount();
     }
 
     // Get total quantity in cart
     public Integer getTotalQuantity(Integer accountId) {
-        return cartRepository.getTotalQuantityByAccountId(accountId);
+        return cartSummaryCache.get(accountId).totalQuantity();
     }
 
     // Check if product is in cart
@@ -166,4 +186,18 @@ public class CartService {
     public Optional<Cart> getCartItem(Integer accountId, Integer productId) {
         return cartRepository.findByAccountIdAndProductId(accountId, productId);
     }
-}
\ No newline at end of file
+
+    // Kết quả khi không giữ được hàng: "busy" nếu version vừa đổi (StockRetryPolicy chạy lại transaction)
+    private String stockFailure(Integer productId, StockRetryPolicy.Outcome outcome) {
+        if (outcome == StockRetryPolicy.Outcome.CONFLICT) {
+            return BUSY;
+        }
+        Integer availableQuantity = productService.getAvailableQuantity(productId);
+        return availableQuantity == 0 ? "out_of_stock" : "insufficient_stock:" + availableQuantity;
+    }
+
+    // Giá bán hiện tại của product (snapshot của PricingEngine) để tính delta tạm tính
+    private double unitPrice(Integer productId) {
+        return pricingEngine.unitPrice(productId);
+    }
+}
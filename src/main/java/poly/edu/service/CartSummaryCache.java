@@ -0,0 +1,143 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import poly.edu.repository.CartRepository;
+import poly.edu.util.TransactionHooks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Tóm tắt giỏ hàng theo account (số dòng, tổng số lượng, tạm tính) cho badge navbar.
+ * CartService cập nhật bằng delta sau khi transaction commit; khi chưa có trong cache thì
+ * tính từ các dòng giỏ hàng và giá của PricingEngine. Mỗi account có version tăng ở mọi lần ghi (ngay khi
+ * ghi và lần nữa khi commit) cùng số lần ghi chưa kết thúc; giá trị vừa query xong chỉ được lưu nếu không có
+ * lần ghi nào chen vào giữa và không còn lần ghi nào đang chờ commit (query có thể đã thấy dòng vừa commit
+ * trong khi delta chưa được cộng -> cộng hai lần).
+ * Snapshot giá đổi (kể cả khi qua ngày bắt đầu / kết thúc promotion) thì xóa toàn bộ.
+ */
+@Component
+public class CartSummaryCache {
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private PricingEngine pricingEngine;
+
+    private final Map<Integer, CartSummary> summaries = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> versions = new ConcurrentHashMap<>();
+    // accountId -> số lần ghi đã gọi nhưng transaction chưa kết thúc
+    private final Map<Integer, Integer> pendingWrites = new ConcurrentHashMap<>();
+    // Tăng khi xóa toàn bộ cache (giá / promotion thay đổi)
+    private final AtomicLong epoch = new AtomicLong();
+    // Version snapshot giá của các tạm tính đang giữ
+    private final AtomicLong pricingVersion = new AtomicLong(-1);
+
+    /**
+     * @param itemCount     số dòng trong giỏ (số hiển thị trên badge)
+     * @param totalQuantity tổng số lượng sản phẩm
+     * @param subtotal      tạm tính theo giá đã giảm
+     */
+    public record CartSummary(int itemCount, int totalQuantity, double subtotal) {
+
+        public static final CartSummary EMPTY = new CartSummary(0, 0, 0.0);
+
+        CartSummary plus(int items, int quantity, double amount) {
+            int count = Math.max(0, itemCount + items);
+            if (count == 0) return EMPTY;
+            return new CartSummary(count, Math.max(0, totalQuantity + quantity), Math.max(0.0, subtotal + amount));
+        }
+    }
+
+    /**
+     * Đọc tóm tắt giỏ hàng, O(1) khi đã có trong cache
+     */
+    public CartSummary get(Integer accountId) {
+        if (accountId == null) return CartSummary.EMPTY;
+        long seenPricing = pricingVersion.get();
+        long currentPricing = pricingEngine.getVersion();
+        if (seenPricing != currentPricing && pricingVersion.compareAndSet(seenPricing, currentPricing)) {
+            invalidateAll();
+        }
+        CartSummary summary = summaries.get(accountId);
+        if (summary != null) return summary;
+
+        long version = versions.getOrDefault(accountId, 0L);
+        long currentEpoch = epoch.get();
+        CartSummary loaded = load(accountId);
+        // Chỉ lưu nếu không có CartService ghi (hoặc invalidateAll) trong lúc query và không còn ghi đang chờ
+        summaries.compute(accountId, (id, current) -> {
+            if (current != null) return current;
+            boolean unchanged = versions.getOrDefault(id, 0L) == version && epoch.get() == currentEpoch
+                    && !pendingWrites.containsKey(id);
+            return unchanged ? loaded : null;
+        });
+        return loaded;
+    }
+
+    /**
+     * Cộng delta vào tóm tắt sau khi transaction hiện tại commit
+     */
+    public void applyDelta(Integer accountId, int items, int quantity, double amount) {
+        write(accountId, current -> current != null ? current.plus(items, quantity, amount) : null);
+    }
+
+    /**
+     * Giỏ hàng vừa được xóa hết (clear cart, đặt hàng)
+     */
+    public void markEmpty(Integer accountId) {
+        write(accountId, current -> CartSummary.EMPTY);
+    }
+
+    /**
+     * Giỏ hàng bị sửa ngoài CartService (hold hết hạn bị sweeper trả): tính lại ở lần đọc sau
+     */
+    public void invalidate(Integer accountId) {
+        write(accountId, current -> null);
+    }
+
+    /**
+     * Giá hoặc promotion đổi: tạm tính của mọi giỏ không còn đúng
+     */
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        summaries.clear();
+    }
+
+    // Tăng version ngay (query đang chạy không được lưu), đổi tóm tắt khi commit, rollback thì chỉ bỏ đánh dấu
+    private void write(Integer accountId, UnaryOperator<CartSummary> update) {
+        versions.merge(accountId, 1L, Long::sum);
+        pendingWrites.merge(accountId, 1, Integer::sum);
+        TransactionHooks.afterCommit(() -> {
+            summaries.compute(accountId, (id, current) -> {
+                versions.merge(id, 1L, Long::sum);
+                return update.apply(current);
+            });
+            endWrite(accountId);
+        });
+        TransactionHooks.afterRollback(() -> endWrite(accountId));
+    }
+
+    private void endWrite(Integer accountId) {
+        pendingWrites.computeIfPresent(accountId, (id, count) -> count > 1 ? count - 1 : null);
+    }
+
+    // Fallback: đọc [productId, quantity] các dòng giỏ hàng, giá lấy từ snapshot
+    private CartSummary load(Integer accountId) {
+        List<Object[]> rows = cartRepository.findQuantitiesByAccountId(accountId);
+        if (rows.isEmpty()) return CartSummary.EMPTY;
+        int totalQuantity = 0;
+        double subtotal = 0.0;
+        for (Object[] row : rows) {
+            int quantity = row[1] != null ? ((Number) row[1]).intValue() : 0;
+            totalQuantity += quantity;
+            subtotal += quantity * pricingEngine.unitPrice((Integer) row[0]);
+        }
+        return new CartSummary(rows.size(), totalQuantity, subtotal);
+    }
+}
@@ -0,0 +1,95 @@
+package poly.edu.service;
+
+import org.springframework.stereotype.Component;
+import poly.edu.model.Category;
+import poly.edu.model.Product;
+import poly.edu.model.ProductCard;
+import poly.edu.util.TinyLfuCache;
+import poly.edu.util.TransactionHooks;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Read-through cache cho catalog phía storefront (product theo id, thẻ sản phẩm theo id,
+ * các trang listing, category theo tên). Catalog chỉ đổi khi admin sửa product / category / promotion
+ * hoặc khi tồn kho thay đổi, nên các đường ghi đó gọi invalidate tương ứng ở đây. Invalidate chạy sau khi
+ * transaction của đường ghi commit (trước đó request khác vẫn đọc được bản cũ từ database và nạp lại);
+ * lần load nào chồng lên một lần invalidate thì không được lưu (generation của TinyLfuCache).
+ * <p>
+ * Object trong cache dùng chung giữa các request: chỉ đọc, không được sửa rồi save.
+ */
+@Component
+public class CatalogCache {
+
+    private final TinyLfuCache<Integer, Product> products = new TinyLfuCache<>("products", 2_000);
+    // productId -> thẻ sản phẩm (projection) cho listing / search / bảng admin
+    private final TinyLfuCache<Integer, ProductCard> cards = new TinyLfuCache<>("productCards", 5_000);
+    // key "<listing>:<size>:<cursor>" -> trang listing (content chỉ dùng để lấy productId)
+    private final TinyLfuCache<String, ProductService.ProductSlice> listings = new TinyLfuCache<>("listings", 500);
+    private final TinyLfuCache<String, Category> categoriesByName = new TinyLfuCache<>("categoriesByName", 256);
+
+    public Product getProduct(Integer productId, Function<Integer, Product> loader) {
+        return products.get(productId, loader);
+    }
+
+    /**
+     * Thẻ sản phẩm theo id: id chưa có trong cache được load chung bằng một lần gọi loader
+     */
+    public Map<Integer, ProductCard> getCards(Collection<Integer> productIds,
+                                              Function<List<Integer>, List<ProductCard>> loader) {
+        return cards.getAll(productIds, missing -> loader.apply(missing).stream()
+                .collect(Collectors.toMap(ProductCard::productId, Function.identity(), (a, b) -> a)));
+    }
+
+    public ProductService.ProductSlice getListing(String key, Supplier<ProductService.ProductSlice> loader) {
+        return listings.get(key, k -> loader.get());
+    }
+
+    public Category getCategoryByName(String name, Function<String, Category> loader) {
+        return categoriesByName.get(name, loader);
+    }
+
+    /**
+     * Product được thêm / sửa / xóa: bỏ entry của product và các trang listing
+     */
+    public void invalidateProduct(Integer productId) {
+        TransactionHooks.afterCommit(() -> {
+            if (productId != null) {
+                products.invalidate(productId);
+                cards.invalidate(productId);
+            }
+            listings.invalidateAll();
+        });
+    }
+
+    /**
+     * Tồn kho đổi: chỉ bỏ entry của product (listing đọc product qua id nên không cần xóa)
+     */
+    public void evictProduct(Integer productId) {
+        TransactionHooks.afterCommit(() -> {
+            products.invalidate(productId);
+            cards.invalidate(productId);
+        });
+    }
+
+    /**
+     * Category hoặc promotion thay đổi: product nhúng cả hai nên xóa toàn bộ
+     */
+    public void invalidateAll() {
+        TransactionHooks.afterCommit(() -> {
+            products.invalidateAll();
+            cards.invalidateAll();
+            listings.invalidateAll();
+            categoriesByName.invalidateAll();
+        });
+    }
+
+    public List<TinyLfuCache.Stats> stats() {
+        return List.of(products.stats(), cards.stats(), listings.stats(), categoriesByName.stats());
+    }
+}
@@ -0,0 +1,378 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import poly.edu.model.Product;
+import poly.edu.repository.ProductRepository;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Facet index cho catalog: mỗi giá trị facet (category, khoảng giá, khoảng rating,
+ * tình trạng kho, có khuyến mãi) giữ một BitSet trên số thứ tự (ordinal) của product.
+ * Mọi tổ hợp filter được trả lời bằng phép AND giữa các BitSet, và số đếm của từng facet
+ * được tính với các filter còn lại (multi-select faceting) mà không cần truy vấn database.
+ */
+@Component
+public class CatalogFacetIndex {
+
+    public static final String CATEGORY = "category";
+    public static final String PRICE = "price";
+    public static final String RATING = "rating";
+    public static final String STOCK = "stock";
+    public static final String PROMOTION = "promotion";
+
+    // Ngưỡng tồn kho giống trang admin: >= 10 còn nhiều, 1-9 sắp hết, 0 hết hàng
+    public static final int LOW_STOCK_THRESHOLD = 10;
+
+    // key -> nhãn hiển thị, theo đúng thứ tự trên sidebar
+    public static final Map<String, String> PRICE_BUCKETS = new LinkedHashMap<>();
+    public static final Map<String, String> RATING_BUCKETS = new LinkedHashMap<>();
+    public static final Map<String, String> STOCK_BANDS = new LinkedHashMap<>();
+    public static final Map<String, String> PROMOTION_OPTIONS = new LinkedHashMap<>();
+
+    static {
+        PRICE_BUCKETS.put("under-100k", "Dưới 100.000₫");
+        PRICE_BUCKETS.put("100k-300k", "100.000₫ - 300.000₫");
+        PRICE_BUCKETS.put("300k-500k", "300.000₫ - 500.000₫");
+        PRICE_BUCKETS.put("500k-1m", "500.000₫ - 1.000.000₫");
+        PRICE_BUCKETS.put("over-1m", "Trên 1.000.000₫");
+
+        RATING_BUCKETS.put("4-5", "Từ 4 sao");
+        RATING_BUCKETS.put("3-4", "3 - 4 sao");
+        RATING_BUCKETS.put("0-3", "Dưới 3 sao");
+
+        STOCK_BANDS.put("in", "Còn hàng");
+        STOCK_BANDS.put("low", "Sắp hết (< 10)");
+        STOCK_BANDS.put("out", "Hết hàng");
+
+        PROMOTION_OPTIONS.put("yes", "Đang khuyến mãi");
+        PROMOTION_OPTIONS.put("no", "Không khuyến mãi");
+    }
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PromotionScheduler promotionScheduler;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // productId <-> ordinal (ordinal dày đặc để BitSet nhỏ gọn; ordinal của product đã xóa được tái sử dụng)
+    private final Map<Integer, Integer> ordinalByProductId = new HashMap<>();
+    private final List<Integer> productIdByOrdinal = new ArrayList<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private final BitSet live = new BitSet();
+
+    // facet -> giá trị -> tập ordinal
+    private final Map<String, Map<String, BitSet>> facets = new HashMap<>();
+
+    // promotionId -> tập ordinal; facet "promotion" lấy các promotion đang hiệu lực từ PromotionScheduler lúc query
+    private final Map<Integer, BitSet> productsByPromotion = new HashMap<>();
+
+    // ordinal -> giá trị facet hiện tại của product (để gỡ bit cũ khi cập nhật)
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    private volatile boolean ready = false;
+
+    /**
+     * Bộ lọc facet; giá trị null nghĩa là không lọc theo facet đó
+     */
+    public record FacetFilter(Integer categoryId, String price, String rating, String stock, String promotion) {
+
+        // Tham số rỗng từ query string ("price=") coi như không lọc
+        public FacetFilter {
+            price = blankToNull(price);
+            rating = blankToNull(rating);
+            stock = blankToNull(stock);
+            promotion = blankToNull(promotion);
+        }
+
+        private static String blankToNull(String value) {
+            return (value == null || value.isBlank()) ? null : value;
+        }
+
+        public static FacetFilter none() {
+            return new FacetFilter(null, null, null, null, null);
+        }
+    }
+
+    /**
+     * Kết quả lọc: productId khớp (giữ thứ tự đầu vào) và số đếm theo từng facet
+     */
+    public record FacetResult(List<Integer> productIds, Map<String, Map<String, Integer>> counts) {
+    }
+
+    /**
+     * Build lại toàn bộ facet index từ database (chạy khi ứng dụng khởi động)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            List<Product> products = productRepository.findAll();
+            lock.writeLock().lock();
+            try {
+                ordinalByProductId.clear();
+                productIdByOrdinal.clear();
+                freeOrdinals.clear();
+                live.clear();
+                facets.clear();
+                productsByPromotion.clear();
+                entries.clear();
+                for (Product product : products) {
+                    add(product);
+                }
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR building catalog facet index: " + e.getMessage());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Thêm mới hoặc cập nhật product
+     */
+    public void index(Product product) {
+        if (product == null || product.getProductId() == null) return;
+        lock.writeLock().lock();
+        try {
+            removeProduct(product.getProductId());
+            add(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Xóa product khỏi index
+     */
+    public void remove(Integer productId) {
+        if (productId == null) return;
+        lock.writeLock().lock();
+        try {
+            removeProduct(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cập nhật tình trạng kho khi số lượng thay đổi (thêm vào giỏ, đặt hàng, hủy đơn)
+     */
+    public void updateStock(Integer productId, Integer quantity) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinalByProductId.get(productId);
+            if (ordinal == null) return;
+            Entry entry = entries.get(ordinal);
+            String band = stockBand(quantity);
+            if (band.equals(entry.stock)) return;
+            bits(STOCK, entry.stock).clear(ordinal);
+            bits(STOCK, band).set(ordinal);
+            entries.put(ordinal, new Entry(entry.category, entry.price, entry.rating, band, entry.promotionId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Lọc catalog theo filter và đếm số product cho từng giá trị facet.
+     *
+     * @param filter các facet đang chọn
+     * @param candidates danh sách productId đã sắp xếp (ví dụ kết quả search), null = toàn bộ catalog
+     */
+    public FacetResult query(FacetFilter filter, List<Integer> candidates) {
+        lock.readLock().lock();
+        try {
+            Map<String, BitSet> selected = new LinkedHashMap<>();
+            BitSet promotionYes = activePromotionBits();
+
+            BitSet base = (BitSet) live.clone();
+            if (candidates != null) {
+                BitSet candidateBits = new BitSet();
+                for (Integer productId : candidates) {
+                    Integer ordinal = ordinalByProductId.get(productId);
+                    if (ordinal != null) candidateBits.set(ordinal);
+                }
+                base.and(candidateBits);
+            }
+
+            if (filter.categoryId() != null) selected.put(CATEGORY, bitsOrEmpty(CATEGORY, String.valueOf(filter.categoryId())));
+            if (filter.price() != null) selected.put(PRICE, bitsOrEmpty(PRICE, filter.price()));
+            if (filter.rating() != null) selected.put(RATING, bitsOrEmpty(RATING, filter.rating()));
+            if (filter.stock() != null) selected.put(STOCK, bitsOrEmpty(STOCK, filter.stock()));
+            if (filter.promotion() != null) selected.put(PROMOTION, promotionBits(filter.promotion(), promotionYes));
+
+            // Số đếm của một facet = base AND các filter của facet KHÁC
+            Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+            counts.put(CATEGORY, countValues(CATEGORY, facetValues(CATEGORY), base, selected, promotionYes));
+            counts.put(PRICE, countValues(PRICE, PRICE_BUCKETS.keySet(), base, selected, promotionYes));
+            counts.put(RATING, countValues(RATING, RATING_BUCKETS.keySet(), base, selected, promotionYes));
+            counts.put(STOCK, countValues(STOCK, STOCK_BANDS.keySet(), base, selected, promotionYes));
+            counts.put(PROMOTION, countValues(PROMOTION, PROMOTION_OPTIONS.keySet(), base, selected, promotionYes));
+
+            BitSet matched = (BitSet) base.clone();
+            for (BitSet bits : selected.values()) {
+                matched.and(bits);
+            }
+
+            List<Integer> productIds = new ArrayList<>(matched.cardinality());
+            if (candidates != null) {
+                for (Integer productId : candidates) {
+                    Integer ordinal = ordinalByProductId.get(productId);
+                    if (ordinal != null && matched.get(ordinal)) productIds.add(productId);
+                }
+            } else {
+                for (int ordinal = matched.nextSetBit(0); ordinal >= 0; ordinal = matched.nextSetBit(ordinal + 1)) {
+                    productIds.add(productIdByOrdinal.get(ordinal));
+                }
+                productIds.sort(null);
+            }
+            return new FacetResult(productIds, counts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ===== Phân loại giá trị facet =====
+
+    public static String priceBucket(Double price) {
+        double value = price != null ? price : 0;
+        if (value < 100_000) return "under-100k";
+        if (value < 300_000) return "100k-300k";
+        if (value < 500_000) return "300k-500k";
+        if (value < 1_000_000) return "500k-1m";
+        return "over-1m";
+    }
+
+    public static String ratingBucket(Double rating) {
+        double value = rating != null ? rating : 0;
+        if (value >= 4) return "4-5";
+        if (value >= 3) return "3-4";
+        return "0-3";
+    }
+
+    public static String stockBand(Integer quantity) {
+        int value = quantity != null ? quantity : 0;
+        if (value <= 0) return "out";
+        if (value < LOW_STOCK_THRESHOLD) return "low";
+        return "in";
+    }
+
+    // ===== Nội bộ (gọi khi đang giữ lock) =====
+
+    private void add(Product product) {
+        int ordinal = freeOrdinals.isEmpty() ? productIdByOrdinal.size() : freeOrdinals.pop();
+        if (ordinal == productIdByOrdinal.size()) {
+            productIdByOrdinal.add(product.getProductId());
+        } else {
+            productIdByOrdinal.set(ordinal, product.getProductId());
+        }
+        ordinalByProductId.put(product.getProductId(), ordinal);
+        live.set(ordinal);
+
+        Entry entry = new Entry(
+                product.getCategoryId() != null ? String.valueOf(product.getCategoryId()) : null,
+                priceBucket(product.getPrice()),
+                ratingBucket(product.getRating()),
+                stockBand(product.getQuantity()),
+                product.getPromotionId());
+        entries.put(ordinal, entry);
+
+        if (entry.category != null) bits(CATEGORY, entry.category).set(ordinal);
+        bits(PRICE, entry.price).set(ordinal);
+        bits(RATING, entry.rating).set(ordinal);
+        bits(STOCK, entry.stock).set(ordinal);
+        if (entry.promotionId != null) {
+            productsByPromotion.computeIfAbsent(entry.promotionId, id -> new BitSet()).set(ordinal);
+        }
+    }
+
+    private void removeProduct(Integer productId) {
+        Integer ordinal = ordinalByProductId.remove(productId);
+        if (ordinal == null) return;
+        Entry entry = entries.remove(ordinal);
+        if (entry.category != null) bits(CATEGORY, entry.category).clear(ordinal);
+        bits(PRICE, entry.price).clear(ordinal);
+        bits(RATING, entry.rating).clear(ordinal);
+        bits(STOCK, entry.stock).clear(ordinal);
+        if (entry.promotionId != null) {
+            BitSet promotionBits = productsByPromotion.get(entry.promotionId);
+            if (promotionBits != null) promotionBits.clear(ordinal);
+        }
+        live.clear(ordinal);
+        productIdByOrdinal.set(ordinal, null);
+        freeOrdinals.push(ordinal);
+    }
+
+    private BitSet bits(String facet, String value) {
+        return facets.computeIfAbsent(facet, f -> new HashMap<>()).computeIfAbsent(value, v -> new BitSet());
+    }
+
+    private BitSet bitsOrEmpty(String facet, String value) {
+        BitSet bits = facets.getOrDefault(facet, Map.of()).get(value);
+        return bits != null ? bits : new BitSet();
+    }
+
+    private List<String> facetValues(String facet) {
+        List<String> values = new ArrayList<>(facets.getOrDefault(facet, Map.of()).keySet());
+        values.sort(null);
+        return values;
+    }
+
+    // Product có promotion đang hiệu lực
+    private BitSet activePromotionBits() {
+        BitSet result = new BitSet();
+        for (Map.Entry<Integer, BitSet> entry : productsByPromotion.entrySet()) {
+            if (promotionScheduler.isActive(entry.getKey())) {
+                result.or(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private BitSet promotionBits(String value, BitSet promotionYes) {
+        if ("yes".equals(value)) return promotionYes;
+        BitSet no = (BitSet) live.clone();
+        no.andNot(promotionYes);
+        return no;
+    }
+
+    private Map<String, Integer> countValues(String facet, Iterable<String> values, BitSet base,
+                                             Map<String, BitSet> selected, BitSet promotionYes) {
+        BitSet others = (BitSet) base.clone();
+        for (Map.Entry<String, BitSet> entry : selected.entrySet()) {
+            if (!entry.getKey().equals(facet)) others.and(entry.getValue());
+        }
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String value : values) {
+            BitSet bits = PROMOTION.equals(facet) ? promotionBits(value, promotionYes) : bitsOrEmpty(facet, value);
+            BitSet intersection = (BitSet) others.clone();
+            intersection.and(bits);
+            counts.put(value, intersection.cardinality());
+        }
+        return counts;
+    }
+
+    // Giá trị facet hiện tại của một product
+    private record Entry(String category, String price, String rating, String stock, Integer promotionId) {
+    }
+}
@@ -14,14 +14,26 @@ public class CategoryService {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private CatalogCache catalogCache;
+
+    @Autowired
+    private CategoryStockView categoryStockView;
+
+    @Autowired
+    private SuggestionTrie suggestionTrie;
+
     // Get all categories
     public List<Category> getAllCategories() {
         return categoryRepository.findAllByOrderByNameAsc();
     }
 
-    // Get categories with available products
+    // Get categories with available products (in-memory view, query chỉ dùng khi view chưa build xong)
     public List<Category> getCategoriesWithProducts() {
-        return categoryRepository.findCategoriesWithAvailableProducts();
+        if (!categoryStockView.isReady()) {
+            return categoryRepository.findCategoriesWithAvailableProducts();
+        }
+        return categoryStockView.getCategoriesWithStock();
     }
 
     // Get category by ID
@@ -29,19 +41,35 @@ public class CategoryService {
         return categoryRepository.findById(categoryId);
     }
 
-    // Get category by name
+    // Get category by name (read-through catalog cache)
     public Optional<Category> getCategoryByName(String name) {
-        return categoryRepository.findByName(name);
+        return Optional.ofNullable(catalogCache.getCategoryByName(name, n -> categoryRepository.findByName(n).orElse(null)));
     }
 
-    // Save category
+    // Save category (cache / view / gợi ý tìm kiếm chỉ cập nhật ở đây, controller không gọi lại)
     public Category saveCategory(Category category) {
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        suggestionTrie.addCategory(saved);
+        categoryStockView.onCategorySaved(saved);
+        catalogCache.invalidateAll();
+        return saved;
     }
 
     // Delete category
     public void deleteCategory(Integer categoryId) {
         categoryRepository.deleteById(categoryId);
+        onCategoryDeleted(categoryId.longValue());
+    }
+
+    public void deleteCategory(Category category) {
+        categoryRepository.delete(category);
+        onCategoryDeleted(category.getCategoryId());
+    }
+
+    private void onCategoryDeleted(Long categoryId) {
+        suggestionTrie.removeCategory(categoryId);
+        categoryStockView.onCategoryDeleted(categoryId);
+        catalogCache.invalidateAll();
     }
 }
 
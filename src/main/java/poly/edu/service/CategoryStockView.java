@@ -0,0 +1,159 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import poly.edu.model.Category;
+import poly.edu.model.Product;
+import poly.edu.repository.CategoryRepository;
+import poly.edu.repository.ProductRepository;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Danh sách "category còn hàng" cho navbar, giữ sẵn trong bộ nhớ thay vì JOIN cả bảng Product
+ * ở mỗi lần render. Với mỗi category đếm số product có quantity > 0; danh sách chỉ đổi khi một
+ * bộ đếm đi qua 0. Writer đồng bộ với nhau và publish một List bất biến qua field volatile,
+ * nên reader chỉ đọc một reference, không lock.
+ */
+@Component
+public class CategoryStockView {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private final Map<Long, Category> categories = new HashMap<>();
+    // categoryId -> số product còn hàng
+    private final Map<Long, Integer> inStockCounts = new HashMap<>();
+    // productId -> trạng thái đã tính vào bộ đếm (để trừ đúng khi product đổi category / bị xóa)
+    private final Map<Integer, StockState> products = new HashMap<>();
+
+    private volatile List<Category> snapshot = List.of();
+    private volatile boolean ready = false;
+
+    private record StockState(Long categoryId, boolean inStock) {
+    }
+
+    /**
+     * Build lại toàn bộ từ database (chạy khi ứng dụng khởi động)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            List<Category> allCategories = categoryRepository.findAll();
+            List<Product> allProducts = productRepository.findAll();
+            synchronized (this) {
+                categories.clear();
+                inStockCounts.clear();
+                products.clear();
+                for (Category category : allCategories) {
+                    categories.put(category.getCategoryId(), category);
+                }
+                for (Product product : allProducts) {
+                    apply(product.getProductId(), stateOf(product));
+                }
+                publish();
+                ready = true;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR building category stock view: " + e.getMessage());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Các category có ít nhất một product còn hàng (đọc lock-free)
+     */
+    public List<Category> getCategoriesWithStock() {
+        return snapshot;
+    }
+
+    /**
+     * Tồn kho của product thay đổi (giỏ hàng, đặt hàng, hủy đơn)
+     */
+    public synchronized void onStockChanged(Integer productId, Integer quantity) {
+        StockState current = products.get(productId);
+        if (current == null) return;
+        apply(productId, new StockState(current.categoryId(), quantity != null && quantity > 0));
+    }
+
+    /**
+     * Product được thêm / sửa (có thể đổi category hoặc số lượng)
+     */
+    public synchronized void onProductSaved(Product product) {
+        if (product == null || product.getProductId() == null) return;
+        apply(product.getProductId(), stateOf(product));
+    }
+
+    public synchronized void onProductDeleted(Integer productId) {
+        apply(productId, null);
+    }
+
+    /**
+     * Category được thêm / sửa tên
+     */
+    public synchronized void onCategorySaved(Category category) {
+        if (category == null || category.getCategoryId() == null) return;
+        categories.put(category.getCategoryId(), category);
+        publish();
+    }
+
+    public synchronized void onCategoryDeleted(Long categoryId) {
+        categories.remove(categoryId);
+        inStockCounts.remove(categoryId);
+        publish();
+    }
+
+    // ===== Nội bộ (gọi trong synchronized) =====
+
+    private static StockState stateOf(Product product) {
+        Long categoryId = product.getCategoryId() != null ? product.getCategoryId().longValue() : null;
+        return new StockState(categoryId, product.getQuantity() != null && product.getQuantity() > 0);
+    }
+
+    // Thay trạng thái cũ của product bằng trạng thái mới, publish lại nếu có bộ đếm qua mốc 0
+    private void apply(Integer productId, StockState next) {
+        StockState previous = next != null ? products.put(productId, next) : products.remove(productId);
+        boolean changed = false;
+        if (previous != null && previous.inStock() && previous.categoryId() != null) {
+            changed |= adjust(previous.categoryId(), -1);
+        }
+        if (next != null && next.inStock() && next.categoryId() != null) {
+            changed |= adjust(next.categoryId(), 1);
+        }
+        if (changed && ready) {
+            publish();
+        }
+    }
+
+    // Trả về true nếu category vừa vào hoặc ra khỏi danh sách
+    private boolean adjust(Long categoryId, int delta) {
+        int before = inStockCounts.getOrDefault(categoryId, 0);
+        int after = Math.max(0, before + delta);
+        if (after == 0) {
+            inStockCounts.remove(categoryId);
+        } else {
+            inStockCounts.put(categoryId, after);
+        }
+        return (before > 0) != (after > 0);
+    }
+
+    private void publish() {
+        snapshot = inStockCounts.keySet().stream()
+                .map(categories::get)
+                .filter(category -> category != null)
+                .sorted(Comparator.comparing(Category::getCategoryId))
+                .toList();
+    }
+}
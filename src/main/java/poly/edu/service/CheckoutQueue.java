@@ -0,0 +1,517 @@
+package poly.edu.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Hàng đợi checkout bất đồng bộ: request chỉ ghi lệnh đặt hàng vào log append-only trên đĩa
+ * (fsync) rồi trả ticket ngay, không giữ connection / transaction database.
+ * <p>
+ * Một pool worker lấy lệnh theo micro-batch và đặt cả batch trong một transaction
+ * (OrderService.createOrdersFromCarts), sau đó ghi kết quả vào log. Khi khởi động, các lệnh
+ * chưa có kết quả được đưa lại vào hàng đợi và kết quả còn trong result-ttl-minutes được giữ lại
+ * cho trang theo dõi. Lệnh ghi kèm các dòng giỏ (cartId + số lượng) lúc bấm đặt hàng và chỉ các dòng đó
+ * được chuyển thành đơn, dòng thêm vào giỏ trong lúc chờ không bị đặt theo. Lệnh chạy lại sau crash không
+ * tạo đơn trùng vì các dòng đã chuyển không còn trong giỏ (trả về reservation_expired).
+ * <p>
+ * Segment log vượt segment-bytes thì được xoay: lệnh chưa xong và kết quả còn hạn được chép
+ * sang segment mới rồi xóa segment cũ, nên log không lớn dần dưới tải liên tục.
+ * <p>
+ * Hàng đợi có giới hạn: đầy thì enqueue trả về null để controller báo thử lại sau.
+ */
+@Component
+public class CheckoutQueue {
+
+    public static final String TICKET_PREFIX = "Q";
+
+    private static final byte ENQUEUED = 1;
+    private static final byte COMPLETED = 2;
+    private static final String SEGMENT_PREFIX = "checkout-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Value("${checkout.async.enabled:false}")
+    private boolean enabled;
+
+    @Value("${checkout.queue.dir:data/checkout-queue}")
+    private String queueDir;
+
+    @Value("${checkout.queue.capacity:1000}")
+    private int capacity;
+
+    @Value("${checkout.queue.workers:2}")
+    private int workerCount;
+
+    @Value("${checkout.queue.batch-size:20}")
+    private int batchSize;
+
+    @Value("${checkout.queue.segment-bytes:4194304}")
+    private long segmentBytes;
+
+    @Value("${checkout.queue.retry-after-seconds:5}")
+    private int retryAfterSeconds;
+
+    @Value("${checkout.queue.result-ttl-minutes:60}")
+    private long resultTtlMinutes;
+
+    public enum State {
+        QUEUED,
+        DONE
+    }
+
+    /**
+     * @param result kết quả của OrderService (success:&lt;orderId&gt;, reservation_expired, ...), null khi chưa xử lý
+     */
+    public record Ticket(long id, Integer accountId, State state, String result, long updatedAtMillis) {
+
+        public String getCode() {
+            return TICKET_PREFIX + id;
+        }
+    }
+
+    private record Command(long ticketId, OrderService.CheckoutRequest request) {
+    }
+
+    private final Map<Long, Ticket> tickets = new ConcurrentHashMap<>();
+    private final BlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+
+    // Ghi log và cấp ticket id đi qua lock này (ReentrantLock: giữ lock khi fsync, không pin virtual thread)
+    private final ReentrantLock logLock = new ReentrantLock();
+    // Lệnh đã nhận nhưng chưa có kết quả (đang chờ + đang xử lý) theo thứ tự ticket, đọc / ghi trong logLock.
+    // Dùng cho giới hạn capacity và để chép sang segment mới khi xoay log
+    private final Map<Long, Command> unfinished = new LinkedHashMap<>();
+    private FileChannel log;
+    private Path logPath;
+    private long lastTicketId;
+    // Xoay segment khi log vượt kích thước này (phần chép sang + segment-bytes)
+    private long rotateAtBytes;
+
+    private ExecutorService workers;
+    private volatile boolean ready = false;
+    private volatile boolean stopping = false;
+
+    /**
+     * Đọc lại log của lần chạy trước, đưa các lệnh chưa xong vào hàng đợi rồi khởi động worker
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        if (!enabled) return;
+        try {
+            Path dir = Paths.get(queueDir);
+            Files.createDirectories(dir);
+
+            Map<Long, Command> recovered = new LinkedHashMap<>();
+            Map<Long, Ticket> done = new HashMap<>();
+            List<Path> segments = listSegments(dir);
+            long last = 0;
+            for (Path segment : segments) {
+                last = Math.max(last, firstTicketId(segment) - 1);
+                last = Math.max(last, readSegment(segment, recovered, done));
+            }
+
+            long now = System.currentTimeMillis();
+            long cutoff = resultCutoff();
+            logLock.lock();
+            try {
+                lastTicketId = last;
+                for (Ticket ticket : done.values()) {
+                    if (ticket.updatedAtMillis() >= cutoff) {
+                        tickets.put(ticket.id(), ticket);
+                    }
+                }
+                for (Command command : recovered.values()) {
+                    unfinished.put(command.ticketId(), command);
+                    tickets.put(command.ticketId(), new Ticket(command.ticketId(), command.request().accountId(), State.QUEUED, null, now));
+                }
+                // Chép lệnh chưa xong và kết quả còn hạn sang segment mới rồi mới xóa segment cũ
+                openSegment();
+                writeLiveRecords();
+            } finally {
+                logLock.unlock();
+            }
+            for (Path segment : segments) {
+                Files.deleteIfExists(segment);
+            }
+            queue.addAll(recovered.values());
+
+            workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+                Thread thread = new Thread(runnable, "checkout-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < workerCount; i++) {
+                workers.submit(this::work);
+            }
+            ready = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR starting checkout queue, checkout stays synchronous: " + e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return ready && !stopping;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Ghi lệnh đặt hàng xuống đĩa rồi đưa vào hàng đợi
+     *
+     * @return ticket, hoặc null nếu hàng đợi đã đầy
+     */
+    public Ticket enqueue(OrderService.CheckoutRequest request) {
+        logLock.lock();
+        try {
+            if (unfinished.size() >= capacity) {
+                return null;
+            }
+            Command command = new Command(lastTicketId + 1, request);
+            try {
+                append(encodeEnqueued(command), true);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot write checkout queue", e);
+            }
+            lastTicketId = command.ticketId();
+            unfinished.put(command.ticketId(), command);
+
+            Ticket ticket = new Ticket(command.ticketId(), request.accountId(), State.QUEUED, null, System.currentTimeMillis());
+            tickets.put(ticket.id(), ticket);
+            queue.add(command);
+            return ticket;
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    /**
+     * Ticket theo mã "Q&lt;id&gt;" (null nếu không có hoặc đã hết hạn lưu kết quả)
+     */
+    public Ticket getTicket(String code) {
+        if (code == null || !code.startsWith(TICKET_PREFIX)) return null;
+        try {
+            return tickets.get(Long.parseLong(code.substring(TICKET_PREFIX.length())));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Bỏ kết quả của các ticket đã xong quá lâu
+     */
+    @Scheduled(fixedDelayString = "${checkout.queue.prune-interval-ms:60000}")
+    public void pruneResults() {
+        long cutoff = resultCutoff();
+        tickets.values().removeIf(ticket -> ticket.state() == State.DONE && ticket.updatedAtMillis() < cutoff);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        if (workers != null) {
+            // Worker xử lý nốt batch hiện tại, lệnh còn trong hàng đợi được chạy lại ở lần khởi động sau
+            workers.shutdown();
+            try {
+                workers.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        logLock.lock();
+        try {
+            try {
+                if (log != null) log.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    // ===== Worker =====
+
+    private void work() {
+        while (!stopping) {
+            try {
+                Command first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                List<Command> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.err.println("ERROR in checkout worker: " + e.getMessage());
+            }
+        }
+    }
+
+    private void process(List<Command> batch) {
+        List<String> results;
+        try {
+            results = orderService.createOrdersFromCarts(batch.stream().map(Command::request).toList());
+        } catch (Exception e) {
+            e.printStackTrace();
+            results = Collections.nCopies(batch.size(), "error");
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            complete(batch.get(i), results.get(i));
+        }
+    }
+
+    private void complete(Command command, String result) {
+        logLock.lock();
+        try {
+            Ticket ticket = new Ticket(command.ticketId(), command.request().accountId(),
+                    State.DONE, result, System.currentTimeMillis());
+            try {
+                // Không cần fsync: mất bản ghi này thì lệnh chạy lại và giỏ đã chuyển thành đơn
+                append(encodeCompleted(ticket), false);
+            } catch (IOException e) {
+                System.err.println("ERROR writing checkout result for ticket " + command.ticketId() + ": " + e.getMessage());
+            }
+            tickets.put(ticket.id(), ticket);
+            unfinished.remove(command.ticketId());
+            rotateIfLarge();
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    // ===== Log =====
+
+    // Segment vượt kích thước: chép lệnh chưa xong + kết quả còn hạn sang segment mới, xóa segment cũ (gọi trong logLock)
+    private void rotateIfLarge() {
+        Path old = logPath;
+        FileChannel oldLog = log;
+        try {
+            if (log.size() < rotateAtBytes) return;
+            openSegment();
+            writeLiveRecords();
+        } catch (IOException e) {
+            // Giữ segment cũ: lần khởi động sau đọc cả hai segment
+            System.err.println("ERROR rotating checkout queue log: " + e.getMessage());
+            rotateAtBytes += segmentBytes;
+            return;
+        }
+        try {
+            oldLog.close();
+            Files.deleteIfExists(old);
+        } catch (IOException e) {
+            System.err.println("ERROR deleting checkout queue segment " + old + ": " + e.getMessage());
+        }
+    }
+
+    // Ghi lệnh chưa xong và kết quả còn hạn vào segment hiện tại (gọi trong logLock)
+    private void writeLiveRecords() throws IOException {
+        for (Command command : unfinished.values()) {
+            append(encodeEnqueued(command), false);
+        }
+        long cutoff = resultCutoff();
+        for (Ticket ticket : tickets.values()) {
+            if (ticket.state() == State.DONE && ticket.updatedAtMillis() >= cutoff) {
+                append(encodeCompleted(ticket), false);
+            }
+        }
+        log.force(false);
+        rotateAtBytes = log.size() + segmentBytes;
+    }
+
+    private long resultCutoff() {
+        return System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(resultTtlMinutes);
+    }
+
+    // Tên segment mang ticket id đầu tiên của nó để id không bị cấp lại sau khi xóa segment cũ,
+    // thêm thời điểm tạo để segment xoay khi chưa có lệnh mới không trùng tên segment cũ
+    private void openSegment() throws IOException {
+        Path dir = Paths.get(queueDir);
+        long createdAt = System.currentTimeMillis();
+        Path path;
+        do {
+            path = dir.resolve(String.format("%s%020d-%013d%s", SEGMENT_PREFIX, lastTicketId + 1, createdAt++, SEGMENT_SUFFIX));
+        } while (Files.exists(path));
+        logPath = path;
+        log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Khung bản ghi: độ dài (int) + CRC32 (int) + nội dung
+    private void append(byte[] body, boolean force) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + body.length);
+        buffer.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        if (force) {
+            log.force(false);
+        }
+    }
+
+    private static byte[] encodeEnqueued(Command command) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(ENQUEUED);
+        out.writeLong(command.ticketId());
+        out.writeInt(command.request().accountId());
+        writeString(out, command.request().shippingAddress());
+        writeString(out, command.request().phone());
+        writeString(out, command.request().note());
+        // -1: không có các dòng giỏ (lệnh khôi phục từ bản ghi cũ)
+        Map<Integer, Integer> cartLines = command.request().cartLines();
+        out.writeInt(cartLines != null ? cartLines.size() : -1);
+        if (cartLines != null) {
+            for (Map.Entry<Integer, Integer> line : cartLines.entrySet()) {
+                out.writeInt(line.getKey());
+                out.writeInt(line.getValue());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    // Kèm thời điểm xong và account để khôi phục ticket DONE khi khởi động lại
+    private static byte[] encodeCompleted(Ticket ticket) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(COMPLETED);
+        out.writeLong(ticket.id());
+        writeString(out, ticket.result());
+        out.writeLong(ticket.updatedAtMillis());
+        out.writeInt(ticket.accountId());
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static List<Path> listSegments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return new ArrayList<>(files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList());
+        }
+    }
+
+    private static long firstTicketId(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), SEGMENT_PREFIX.length() + 20));
+    }
+
+    // Thêm lệnh ENQUEUED vào unfinished, lệnh đã COMPLETED chuyển sang done (không phụ thuộc thứ tự segment);
+    // trả về ticket id lớn nhất đọc được
+    private static long readSegment(Path segment, Map<Long, Command> unfinished, Map<Long, Ticket> done) throws IOException {
+        long last = 0;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(segment))) {
+            while (true) {
+                byte[] body;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_BYTES) break;
+                    body = new byte[length];
+                    in.readFully(body);
+                    CRC32 crc = new CRC32();
+                    crc.update(body);
+                    if ((int) crc.getValue() != checksum) break;
+                } catch (EOFException e) {
+                    // Hết file hoặc bản ghi cuối bị ghi dở khi crash
+                    break;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+                byte type = record.readByte();
+                long ticketId = record.readLong();
+                last = Math.max(last, ticketId);
+                if (type == ENQUEUED) {
+                    Integer accountId = record.readInt();
+                    String shippingAddress = readString(record);
+                    String phone = readString(record);
+                    String note = readString(record);
+                    // Bản ghi cũ không có các dòng giỏ: đặt cả giỏ như trước
+                    Map<Integer, Integer> cartLines = null;
+                    int count = record.available() > 0 ? record.readInt() : -1;
+                    if (count >= 0) {
+                        cartLines = new LinkedHashMap<>();
+                        for (int i = 0; i < count; i++) {
+                            cartLines.put(record.readInt(), record.readInt());
+                        }
+                    }
+                    OrderService.CheckoutRequest request = new OrderService.CheckoutRequest(
+                            accountId, shippingAddress, phone, note, cartLines);
+                    if (!done.containsKey(ticketId)) {
+                        unfinished.put(ticketId, new Command(ticketId, request));
+                    }
+                } else if (type == COMPLETED) {
+                    String result = readString(record);
+                    Command command = unfinished.remove(ticketId);
+                    // Bản ghi cũ không có thời điểm / account: coi như đã hết hạn
+                    long completedAt = record.available() >= 12 ? record.readLong() : 0;
+                    Integer accountId = completedAt > 0 ? Integer.valueOf(record.readInt())
+                            : command != null ? command.request().accountId() : null;
+                    done.put(ticketId, new Ticket(ticketId, accountId, State.DONE, result, completedAt));
+                }
+            }
+        }
+        return last;
+    }
+}
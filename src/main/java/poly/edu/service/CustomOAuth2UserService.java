@@ -30,10 +30,16 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
 
     @Autowired
     private RoleDAO roleDAO;
+
+    @Autowired
+    private AuthService authService;
     
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private DashboardMetrics dashboardMetrics;
+
     @Override
     public OAuth2User loadUser(OAuth2UserRequest userRequest) throws OAuth2AuthenticationException {
         OAuth2User oAuth2User = super.loadUser(userRequest);
@@ -65,6 +71,7 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
             }
             
             accountDAO.save(account);
+            dashboardMetrics.onAccountCreated(account);
         } else {
             // Tài khoản đã tồn tại -> Cập nhật thông tin nếu cần
             account = accountOptional.get();
@@ -73,6 +80,7 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
             }
             account.setFullName(name);
             accountDAO.save(account);
+            authService.invalidateAccount(account.getUsername());
         }
 
         // Chuyển đổi Role của Account thành GrantedAuthority
@@ -0,0 +1,239 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import poly.edu.dao.AccountDAO;
+import poly.edu.model.Account;
+import poly.edu.model.Order;
+import poly.edu.model.Role;
+import poly.edu.repository.OrderRepository;
+import poly.edu.util.TransactionHooks;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bộ đếm cho dashboard admin / employee: số đơn theo trạng thái, doanh thu (đơn Delivered),
+ * số tài khoản theo role. Đọc là O(1) trên các counter trong bộ nhớ, không quét Order / Account.
+ * <p>
+ * OrderService và các đường tạo tài khoản báo thay đổi, counter chỉ đổi sau khi transaction commit.
+ * Job định kỳ đối soát lại với database bằng vài câu GROUP BY; lệch (ví dụ sửa dữ liệu ngoài app,
+ * hoặc một commit rơi vào đúng lúc đang đối soát) được ghi log và sửa ở lần đó.
+ */
+@Component
+public class DashboardMetrics {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private AccountDAO accountDAO;
+
+    /**
+     * Số liệu dashboard tại một thời điểm
+     *
+     * @param reconciledAt lần đối soát với database gần nhất
+     */
+    public record Stats(long totalOrders, Map<Integer, Long> ordersByStatus, double totalRevenue,
+                        long totalAccounts, Map<String, Long> accountsByRole, LocalDateTime reconciledAt) {
+
+        public long orders(int statusId) {
+            return ordersByStatus.getOrDefault(statusId, 0L);
+        }
+
+        public long accounts(String roleName) {
+            return accountsByRole.getOrDefault(roleName.toUpperCase(Locale.ROOT), 0L);
+        }
+    }
+
+    private final Map<Integer, AtomicLong> ordersByStatus = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> accountsByRole = new ConcurrentHashMap<>();
+    private final AtomicLong totalOrders = new AtomicLong();
+    private final AtomicLong totalAccounts = new AtomicLong();
+    private final DoubleAdder revenue = new DoubleAdder();
+
+    private volatile LocalDateTime reconciledAt;
+
+    // Chỉ bao phần thay counter trong bộ nhớ, query chạy trước khi lấy lock
+    private final ReentrantLock swapLock = new ReentrantLock();
+    // Lượt đối soát bắt đầu sau cùng đã áp kết quả, đọc / ghi trong swapLock (lượt cũ hơn xong muộn thì bỏ)
+    private final AtomicLong reconcileStarts = new AtomicLong();
+    private long appliedReconcile;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR loading dashboard metrics: " + e.getMessage());
+        }
+    }
+
+    // ===== Cập nhật (sau commit) =====
+
+    /**
+     * Đơn mới được tạo
+     */
+    public void onOrderCreated(Integer statusId, Double total) {
+        double amount = total != null ? total : 0.0;
+        TransactionHooks.afterCommit(() -> {
+            totalOrders.incrementAndGet();
+            counter(ordersByStatus, statusId).incrementAndGet();
+            if (statusId != null && statusId == Order.DELIVERED) revenue.add(amount);
+        });
+    }
+
+    /**
+     * Đơn đổi trạng thái from -> to; vào / ra khỏi Delivered thì cộng / trừ doanh thu
+     */
+    public void onOrderStatusChanged(Integer from, Integer to, Double total) {
+        if (from != null && from.equals(to)) return;
+        double amount = total != null ? total : 0.0;
+        TransactionHooks.afterCommit(() -> {
+            counter(ordersByStatus, from).decrementAndGet();
+            counter(ordersByStatus, to).incrementAndGet();
+            if (from != null && from == Order.DELIVERED) revenue.add(-amount);
+            if (to != null && to == Order.DELIVERED) revenue.add(amount);
+        });
+    }
+
+    /**
+     * Tài khoản mới (đã gán role) được lưu
+     */
+    public void onAccountCreated(Account account) {
+        Set<String> roles = roleNames(account);
+        TransactionHooks.afterCommit(() -> {
+            totalAccounts.incrementAndGet();
+            for (String role : roles) {
+                counter(accountsByRole, role).incrementAndGet();
+            }
+        });
+    }
+
+    // ===== Đối soát =====
+
+    /**
+     * Đọc lại số liệu từ database (GROUP BY theo trạng thái / role), thay counter và log nếu lệch
+     */
+    @Scheduled(fixedDelayString = "${dashboard.metrics.reconcile-ms:600000}")
+    public void reconcile() {
+        try {
+            long ticket = reconcileStarts.incrementAndGet();
+            Map<Integer, Long> statusCounts = new HashMap<>();
+            long orderCount = 0;
+            for (Object[] row : orderRepository.countGroupByStatusId()) {
+                long count = ((Number) row[1]).longValue();
+                statusCounts.put((Integer) row[0], count);
+                orderCount += count;
+            }
+            Double totalRevenue = orderRepository.getTotalRevenue();
+            Map<String, Long> roleCounts = new HashMap<>();
+            for (Object[] row : accountDAO.countGroupByRoleName()) {
+                roleCounts.merge(normalize((String) row[0]), ((Number) row[1]).longValue(), Long::sum);
+            }
+            long accountCount = accountDAO.count();
+
+            boolean first;
+            Stats before;
+            Stats after;
+            swapLock.lock();
+            try {
+                if (ticket < appliedReconcile) return;
+                appliedReconcile = ticket;
+                first = reconciledAt == null;
+                before = read();
+                setAll(ordersByStatus, statusCounts);
+                setAll(accountsByRole, roleCounts);
+                totalOrders.set(orderCount);
+                totalAccounts.set(accountCount);
+                revenue.reset();
+                revenue.add(totalRevenue != null ? totalRevenue : 0.0);
+                reconciledAt = LocalDateTime.now();
+                after = read();
+            } finally {
+                swapLock.unlock();
+            }
+            if (!first && drifted(before, after)) {
+                System.err.println("Dashboard metrics drift corrected: " + before + " -> " + after);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR reconciling dashboard metrics: " + e.getMessage());
+        }
+    }
+
+    // ===== Đọc =====
+
+    public Stats stats() {
+        if (reconciledAt == null) {
+            // Chưa đối soát lần nào (gọi trước ApplicationReadyEvent)
+            reconcile();
+        }
+        return read();
+    }
+
+    private Stats read() {
+        return new Stats(totalOrders.get(), values(ordersByStatus), revenue.sum(),
+                totalAccounts.get(), values(accountsByRole), reconciledAt);
+    }
+
+    // ===== Tiện ích =====
+
+    // Key null (đơn chưa có trạng thái) không đếm riêng, trả counter tạm
+    private static <K> AtomicLong counter(Map<K, AtomicLong> counters, K key) {
+        if (key == null) return new AtomicLong();
+        return counters.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    private static <K> void setAll(Map<K, AtomicLong> counters, Map<K, Long> values) {
+        for (Map.Entry<K, AtomicLong> entry : counters.entrySet()) {
+            entry.getValue().set(values.getOrDefault(entry.getKey(), 0L));
+        }
+        for (Map.Entry<K, Long> entry : values.entrySet()) {
+            counter(counters, entry.getKey()).set(entry.getValue());
+        }
+    }
+
+    private static <K> Map<K, Long> values(Map<K, AtomicLong> counters) {
+        Map<K, Long> values = new HashMap<>();
+        for (Map.Entry<K, AtomicLong> entry : counters.entrySet()) {
+            long value = entry.getValue().get();
+            if (value != 0) values.put(entry.getKey(), value);
+        }
+        return Map.copyOf(values);
+    }
+
+    private static boolean drifted(Stats before, Stats after) {
+        return before.totalOrders() != after.totalOrders()
+                || before.totalAccounts() != after.totalAccounts()
+                || !before.ordersByStatus().equals(after.ordersByStatus())
+                || !before.accountsByRole().equals(after.accountsByRole())
+                || Math.abs(before.totalRevenue() - after.totalRevenue()) > 0.005;
+    }
+
+    private static Set<String> roleNames(Account account) {
+        Set<String> names = new HashSet<>();
+        if (account.getRoles() != null) {
+            for (Role role : account.getRoles()) {
+                if (role.getRoleName() != null) names.add(normalize(role.getRoleName()));
+            }
+        }
+        return names;
+    }
+
+    private static String normalize(String roleName) {
+        return roleName.toUpperCase(Locale.ROOT);
+    }
+}
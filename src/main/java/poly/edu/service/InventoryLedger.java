@@ -0,0 +1,457 @@
+package poly.edu.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import poly.edu.repository.InventoryJdbcRepository;
+import poly.edu.repository.ProductRepository;
+import poly.edu.util.TransactionHooks;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Sổ tồn kho trong bộ nhớ cho các SKU "nóng" (đang có promotion hiệu lực).
+ * <p>
+ * Với SKU đã được track, ledger là nơi quyết định giữ / trả hàng: số lượng còn lại là một
+ * AtomicInteger giảm bằng CAS nên không có lost update và không khóa dòng Product.
+ * Mỗi thay đổi đã commit được ghi vào journal (file append-only) rồi dồn thành delta; job flush định kỳ
+ * cộng các delta vào Product.Quantity bằng một batch UPDATE cùng transaction với checkpoint
+ * (sequence cuối của journal). Khi khởi động, các bản ghi journal sau checkpoint được replay
+ * đúng một lần, sau đó ledger load lại số lượng từ database.
+ * <p>
+ * Promotion kết thúc thì SKU được bỏ track: delta còn lại được flush ngay, các lượt giữ / trả sau đó
+ * đi theo đường database.
+ * <p>
+ * Chỉ đúng khi có một instance ứng dụng ghi vào bảng Product.
+ */
+@Component
+public class InventoryLedger {
+
+    // sequence (long) + productId (int) + delta (int)
+    private static final int RECORD_SIZE = 16;
+    private static final String SEGMENT_PREFIX = "ledger-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    @Autowired
+    private InventoryJdbcRepository inventoryJdbcRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${inventory.ledger.enabled:true}")
+    private boolean enabled;
+
+    @Value("${inventory.ledger.journal-dir:data/inventory-ledger}")
+    private String journalDir;
+
+    private final Map<Integer, Cell> cells = new ConcurrentHashMap<>();
+    // Cell đã bỏ track nhưng còn lượt giữ / trả chưa kết thúc hoặc delta chưa flush (chỉ drain dùng)
+    private final Map<Integer, Cell> retiring = new ConcurrentHashMap<>();
+
+    // Ghi journal và cộng unflushed phải cùng thứ tự với sequence nên đi qua lock này.
+    // Dùng ReentrantLock thay vì synchronized vì giữ lock trong lúc ghi file (không pin virtual thread)
+    private final ReentrantLock journalLock = new ReentrantLock();
+    // Chỉ một lần flush chạy tại một thời điểm (giữ lock qua cả transaction database)
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_SIZE);
+    private long sequence;
+    private FileChannel journal;
+    private Path journalPath;
+
+    // Batch đã drain nhưng chưa commit được (thử lại ở lần flush sau, cùng sequence)
+    private PendingFlush pending;
+
+    private volatile boolean ready = false;
+
+    private static final class Cell {
+        // Số lượng còn có thể giữ
+        final AtomicInteger available;
+        // Tổng delta chưa flush xuống database
+        final AtomicInteger unflushed = new AtomicInteger();
+        // Product.Quantity trong database sau lần flush gần nhất (đọc / ghi trong journalLock)
+        int persisted;
+        // Lượt giữ / trả đã đổi available nhưng transaction chưa kết thúc (chưa ghi journal)
+        final AtomicInteger inFlight = new AtomicInteger();
+        // Đã bỏ track: lượt giữ / trả mới đi theo đường database
+        volatile boolean retired;
+
+        Cell(int quantity) {
+            this.available = new AtomicInteger(quantity);
+            this.persisted = quantity;
+        }
+    }
+
+    private record PendingFlush(long sequence, Map<Integer, Integer> deltas, Path segment) {
+    }
+
+    /**
+     * Replay journal còn dở của lần chạy trước rồi track các SKU đang có promotion
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        if (!enabled) return;
+        try {
+            Path dir = Paths.get(journalDir);
+            Files.createDirectories(dir);
+            long checkpoint = inventoryJdbcRepository.readCheckpoint();
+
+            Map<Integer, Integer> deltas = new HashMap<>();
+            long last = checkpoint;
+            List<Path> segments = listSegments(dir);
+            for (Path segment : segments) {
+                last = Math.max(last, readSegment(segment, checkpoint, deltas));
+            }
+            if (last > checkpoint) {
+                long replayTo = last;
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    if (inventoryJdbcRepository.advanceCheckpoint(replayTo)) {
+                        inventoryJdbcRepository.applyDeltas(deltas);
+                    }
+                });
+            }
+            for (Path segment : segments) {
+                Files.deleteIfExists(segment);
+            }
+
+            journalLock.lock();
+            try {
+                sequence = last;
+                openSegment();
+            } finally {
+                journalLock.unlock();
+            }
+            ready = true;
+            trackActivePromotions();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR recovering inventory ledger, stock stays on the database path: " + e.getMessage());
+        }
+    }
+
+    public boolean isTracked(Integer productId) {
+        return ready && productId != null && cells.containsKey(productId);
+    }
+
+    /**
+     * Số lượng còn lại của SKU đã track (null nếu chưa track)
+     */
+    public Integer getAvailable(Integer productId) {
+        Cell cell = cells.get(productId);
+        return cell != null ? cell.available.get() : null;
+    }
+
+    /**
+     * Track các product đang có promotion hiệu lực (flash sale)
+     */
+    public void trackActivePromotions() {
+        track(productRepository.findIdsWithActivePromotion());
+    }
+
+    /**
+     * Đưa các SKU vào ledger, số lượng ban đầu đọc từ database dưới lock dòng (tăng Version).
+     * Cell được tạo trước khi lock được nhả: lần ghi theo đường database đã đọc version cũ sẽ conflict,
+     * đọc lại thì thấy SKU đã được track và đi qua ledger, nên không có thay đổi nào bị bỏ sót.
+     * SKU vừa bỏ track mà delta cũ chưa flush xong thì để lần track sau.
+     */
+    public void track(Collection<Integer> productIds) {
+        if (!ready || productIds == null) return;
+        List<Integer> missing = productIds.stream()
+                .filter(id -> !cells.containsKey(id) && !retiring.containsKey(id))
+                .distinct().toList();
+        if (missing.isEmpty()) return;
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                inventoryJdbcRepository.lockQuantities(missing).forEach((productId, quantity) -> {
+                    if (cells.putIfAbsent(productId, new Cell(quantity)) == null) {
+                        // Transaction ngoài (saveProduct) rollback thì bỏ track, số vừa đọc không còn đúng
+                        TransactionHooks.afterRollback(() -> cells.remove(productId));
+                    }
+                }));
+    }
+
+    /**
+     * Bỏ track các SKU (promotion vừa kết thúc) rồi flush ngay delta còn lại xuống database.
+     * Lượt giữ hàng đang dở trên cell cũ vẫn được ghi journal khi commit và flush ở lần sau.
+     */
+    public void untrack(Collection<Integer> productIds) {
+        if (!ready || productIds == null) return;
+        boolean removed = false;
+        for (Integer productId : productIds) {
+            Cell cell = cells.get(productId);
+            if (cell == null) continue;
+            cell.retired = true;
+            // Vào retiring trước khi rời cells để drain không bỏ sót delta
+            retiring.put(productId, cell);
+            cells.remove(productId, cell);
+            removed = true;
+        }
+        if (removed) flush();
+    }
+
+    /**
+     * Giữ hàng (lock-free). Ghi journal khi transaction commit; rollback thì tự trả lại.
+     *
+     * @return REJECTED nếu không đủ hàng, CONFLICT nếu SKU vừa bị bỏ track (chạy lại theo đường database)
+     */
+    public StockRetryPolicy.Outcome reserve(Integer productId, int quantity) {
+        Cell cell = enter(productId);
+        if (cell == null) return StockRetryPolicy.Outcome.CONFLICT;
+        while (true) {
+            int current = cell.available.get();
+            if (current < quantity) {
+                cell.inFlight.decrementAndGet();
+                return StockRetryPolicy.Outcome.REJECTED;
+            }
+            if (cell.available.compareAndSet(current, current - quantity)) break;
+        }
+        journalOnCommit(productId, cell, -quantity);
+        return StockRetryPolicy.Outcome.APPLIED;
+    }
+
+    /**
+     * Trả hàng (bỏ khỏi giỏ, hủy đơn). Ghi journal khi transaction commit; rollback thì trừ lại.
+     *
+     * @return false nếu SKU không còn được track (caller trả thẳng vào database)
+     */
+    public boolean release(Integer productId, int quantity) {
+        Cell cell = enter(productId);
+        if (cell == null) return false;
+        cell.available.addAndGet(quantity);
+        journalOnCommit(productId, cell, quantity);
+        return true;
+    }
+
+    /**
+     * Admin vừa ghi số lượng tuyệt đối vào database: các delta chưa flush được tính trên số mới.
+     * Chỉ áp khi transaction lưu product commit (optimistic lock / lỗi sau đó thì ledger giữ nguyên)
+     */
+    public void onProductSaved(Integer productId, Integer quantity) {
+        if (productId == null || quantity == null) return;
+        TransactionHooks.afterCommit(() -> {
+            journalLock.lock();
+            try {
+                Cell cell = cells.get(productId);
+                if (cell == null) return;
+                cell.available.addAndGet(quantity - cell.persisted);
+                cell.persisted = quantity;
+            } finally {
+                journalLock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Cộng các delta chưa flush vào Product.Quantity (một batch UPDATE + checkpoint / transaction)
+     */
+    @Scheduled(fixedDelayString = "${inventory.ledger.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            if (!ready) return;
+            if (pending == null) {
+                pending = drain();
+                if (pending == null) {
+                    pruneRetiring();
+                    return;
+                }
+            }
+            PendingFlush batch = pending;
+            try {
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    // Checkpoint không tăng được nghĩa là batch đã commit ở lần thử trước
+                    if (inventoryJdbcRepository.advanceCheckpoint(batch.sequence())) {
+                        inventoryJdbcRepository.applyDeltas(batch.deltas());
+                    }
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.err.println("ERROR flushing inventory ledger (seq " + batch.sequence() + "), will retry: " + e.getMessage());
+                return;
+            }
+            journalLock.lock();
+            try {
+                batch.deltas().forEach((productId, delta) -> {
+                    Cell cell = cells.get(productId);
+                    if (cell != null) cell.persisted += delta;
+                });
+            } finally {
+                journalLock.unlock();
+            }
+            pending = null;
+            pruneRetiring();
+            try {
+                Files.deleteIfExists(batch.segment());
+            } catch (IOException e) {
+                System.err.println("ERROR deleting inventory journal segment " + batch.segment() + ": " + e.getMessage());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        journalLock.lock();
+        try {
+            try {
+                if (journal != null) journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    // ===== Nội bộ =====
+
+    // Cell đang track, đã được đếm vào inFlight; null nếu SKU không (còn) được track.
+    // untrack đặt retired trước khi pruneRetiring đọc inFlight nên một trong hai bên luôn thấy bên kia
+    private Cell enter(Integer productId) {
+        Cell cell = cells.get(productId);
+        if (cell == null) return null;
+        cell.inFlight.incrementAndGet();
+        if (cell.retired) {
+            cell.inFlight.decrementAndGet();
+            return null;
+        }
+        return cell;
+    }
+
+    // Journal chỉ chứa thay đổi đã commit (replay sau crash không trừ hàng của giỏ chưa từng commit);
+    // transaction rollback thì chỉ trả lại số trong bộ nhớ
+    private void journalOnCommit(Integer productId, Cell cell, int delta) {
+        TransactionHooks.afterCommit(() -> {
+            journal(productId, cell, delta);
+            cell.inFlight.decrementAndGet();
+        });
+        TransactionHooks.afterRollback(() -> {
+            cell.available.addAndGet(-delta);
+            cell.inFlight.decrementAndGet();
+        });
+    }
+
+    // Bỏ hẳn các cell đã bỏ track không còn lượt giữ dở và không còn delta (gọi trong flushLock, không có batch chờ)
+    private void pruneRetiring() {
+        retiring.values().removeIf(cell -> cell.inFlight.get() == 0 && cell.unflushed.get() == 0);
+    }
+
+    private void journal(Integer productId, Cell cell, int delta) {
+        journalLock.lock();
+        try {
+            try {
+                recordBuffer.clear();
+                recordBuffer.putLong(sequence + 1).putInt(productId).putInt(delta).flip();
+                while (recordBuffer.hasRemaining()) {
+                    journal.write(recordBuffer);
+                }
+            } catch (IOException e) {
+                // Transaction đã commit: vẫn giữ thay đổi và flush xuống database, chỉ không replay được nếu crash trước đó
+                e.printStackTrace();
+                System.err.println("ERROR writing inventory journal for product " + productId + ": " + e.getMessage());
+            }
+            sequence++;
+            cell.unflushed.addAndGet(delta);
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    // Lấy toàn bộ delta hiện có và chuyển sang segment journal mới
+    private PendingFlush drain() {
+        journalLock.lock();
+        try {
+            Map<Integer, Integer> deltas = new HashMap<>();
+            Map<Cell, Integer> taken = new HashMap<>();
+            try {
+                for (Map<Integer, Cell> source : List.of(cells, retiring)) {
+                    source.forEach((productId, cell) -> {
+                        int delta = cell.unflushed.getAndSet(0);
+                        if (delta == 0) return;
+                        deltas.merge(productId, delta, Integer::sum);
+                        taken.put(cell, delta);
+                    });
+                }
+                if (deltas.isEmpty() && journal.size() == 0) return null;
+                journal.force(false);
+                journal.close();
+                Path closed = journalPath;
+                openSegment();
+                return new PendingFlush(sequence, deltas, closed);
+            } catch (IOException e) {
+                // Trả delta lại, lần flush sau thử tiếp
+                taken.forEach((cell, delta) -> cell.unflushed.addAndGet(delta));
+                throw new UncheckedIOException("Cannot rotate inventory journal", e);
+            }
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    private void openSegment() throws IOException {
+        journalPath = Paths.get(journalDir).resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence + 1, SEGMENT_SUFFIX));
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static List<Path> listSegments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return new ArrayList<>(files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList());
+        }
+    }
+
+    // Cộng các bản ghi có sequence > checkpoint vào deltas, trả về sequence lớn nhất đọc được
+    private static long readSegment(Path segment, long checkpoint, Map<Integer, Integer> deltas) throws IOException {
+        long last = checkpoint;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(segment))) {
+            while (true) {
+                long seq;
+                int productId;
+                int delta;
+                try {
+                    seq = in.readLong();
+                    productId = in.readInt();
+                    delta = in.readInt();
+                } catch (EOFException e) {
+                    // Hết file hoặc bản ghi cuối bị ghi dở khi crash
+                    break;
+                }
+                if (seq > checkpoint) {
+                    deltas.merge(productId, delta, Integer::sum);
+                    last = Math.max(last, seq);
+                }
+            }
+        }
+        return last;
+    }
+}
@@ -0,0 +1,46 @@
+package poly.edu.service;
+
+import org.springframework.stereotype.Component;
+import poly.edu.util.TransactionHooks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache tổng số sản phẩm của các listing (trang chủ, category, promotion) để
+ * không phải chạy COUNT(*) ở mỗi lần chuyển trang. Giá trị hết hạn sau TTL ngắn
+ * và bị xóa ngay khi product thay đổi qua ProductService.
+ */
+@Component
+public class ListingCountCache {
+
+    // Thời gian sống của một giá trị count
+    private static final long TTL_MILLIS = 60_000;
+
+    private final Map<String, Entry> counts = new ConcurrentHashMap<>();
+
+    private record Entry(long count, long expiresAt) {
+    }
+
+    /**
+     * Lấy count theo key, tính lại bằng loader nếu chưa có hoặc đã hết hạn
+     */
+    public long get(String key, LongSupplier loader) {
+        long now = System.currentTimeMillis();
+        Entry entry = counts.get(key);
+        if (entry != null && entry.expiresAt > now) {
+            return entry.count;
+        }
+        long count = loader.getAsLong();
+        counts.put(key, new Entry(count, now + TTL_MILLIS));
+        return count;
+    }
+
+    /**
+     * Xóa toàn bộ count (gọi khi thêm / sửa / xóa product), sau khi transaction của đường ghi commit
+     */
+    public void invalidateAll() {
+        TransactionHooks.afterCommit(counts::clear);
+    }
+}
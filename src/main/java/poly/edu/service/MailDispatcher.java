@@ -0,0 +1,269 @@
+package poly.edu.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import poly.edu.model.MailOutbox;
+import poly.edu.repository.MailOutboxRepository;
+import poly.edu.util.TransactionHooks;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gửi nền các mail trong MailOutbox.
+ * <p>
+ * Mỗi vòng lấy các mail đến hạn, chia thành chunk và gửi song song trên một pool thread;
+ * mỗi chunk dùng chung một kết nối SMTP (JavaMailSender.send(messages...) mở transport một lần).
+ * Mail lỗi được thử lại với exponential backoff tới mail.outbox.max-attempts rồi đánh dấu FAILED.
+ * Khi outbox trống, vòng poll không truy vấn database cho tới khi có mail mới (wakeUp)
+ * hoặc tới hạn retry kế tiếp.
+ */
+@Component
+public class MailDispatcher {
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    @Autowired
+    private MailOutboxRepository mailOutboxRepository;
+
+    @Value("${mail.outbox.dispatcher-threads:2}")
+    private int dispatcherThreads;
+
+    @Value("${mail.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${mail.outbox.initial-backoff-ms:5000}")
+    private long initialBackoffMs;
+
+    @Value("${mail.outbox.max-backoff-ms:3600000}")
+    private long maxBackoffMs;
+
+    // Kể cả khi không có wakeUp, tối đa bao lâu thì kiểm tra outbox một lần
+    @Value("${mail.outbox.max-idle-ms:60000}")
+    private long maxIdleMs;
+
+    @Value("${mail.outbox.retention-days:7}")
+    private int retentionDays;
+
+    /**
+     * @param queueDepth       số mail đang chờ gửi (kể cả chờ retry)
+     * @param avgSendMillis    thời gian gửi trung bình một mail (trong chunk)
+     * @param connections      số lần mở kết nối SMTP (mỗi chunk một lần)
+     */
+    public record Stats(long queueDepth, long sent, long retried, long failed,
+                        double avgSendMillis, long maxChunkMillis, long connections) {
+    }
+
+    private ExecutorService senders;
+
+    private final AtomicBoolean woken = new AtomicBoolean(true);
+    private volatile long nextCheckAtMillis = 0;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder sendNanos = new LongAdder();
+    private final LongAdder sendCount = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+    private final AtomicLong maxChunkMillis = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        senders = Executors.newFixedThreadPool(dispatcherThreads, runnable -> {
+            Thread thread = new Thread(runnable, "mail-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        senders.shutdown();
+        try {
+            senders.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Có mail mới trong outbox: vòng poll kế tiếp gửi ngay (sau commit nếu đang trong transaction)
+     */
+    public void wakeUp() {
+        TransactionHooks.afterCommit(() -> woken.set(true));
+    }
+
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-interval-ms:500}")
+    public void dispatch() {
+        if (!woken.getAndSet(false) && System.currentTimeMillis() < nextCheckAtMillis) {
+            return;
+        }
+        try {
+            int limit = dispatcherThreads * batchSize;
+            List<MailOutbox> due = mailOutboxRepository.findDue(LocalDateTime.now(), PageRequest.of(0, limit));
+            if (!due.isEmpty()) {
+                List<Future<?>> chunks = new ArrayList<>();
+                for (int from = 0; from < due.size(); from += batchSize) {
+                    List<MailOutbox> chunk = due.subList(from, Math.min(due.size(), from + batchSize));
+                    chunks.add(senders.submit(() -> sendChunk(chunk)));
+                }
+                for (Future<?> chunk : chunks) {
+                    chunk.get();
+                }
+                mailOutboxRepository.saveAll(due);
+            }
+
+            if (due.size() == limit) {
+                // Còn mail đến hạn, vòng sau lấy tiếp
+                woken.set(true);
+            } else {
+                LocalDateTime next = mailOutboxRepository.findNextAttemptAt();
+                long idleUntil = System.currentTimeMillis() + maxIdleMs;
+                nextCheckAtMillis = next == null ? idleUntil : Math.min(idleUntil, toMillis(next));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException e) {
+            e.printStackTrace();
+            System.err.println("ERROR dispatching mail outbox: " + e.getMessage());
+            nextCheckAtMillis = System.currentTimeMillis() + initialBackoffMs;
+        }
+    }
+
+    /**
+     * Xóa mail đã gửi quá retentionDays ngày
+     */
+    @Scheduled(fixedDelayString = "${mail.outbox.purge-interval-ms:3600000}")
+    public void purgeSent() {
+        try {
+            mailOutboxRepository.deleteSentBefore(LocalDateTime.now().minusDays(retentionDays));
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR purging mail outbox: " + e.getMessage());
+        }
+    }
+
+    public Stats stats() {
+        long count = sendCount.sum();
+        return new Stats(mailOutboxRepository.countByStatus(MailOutbox.PENDING),
+                sent.sum(), retried.sum(), failed.sum(),
+                count == 0 ? 0 : sendNanos.sum() / 1_000_000.0 / count,
+                maxChunkMillis.get(), connections.sum());
+    }
+
+    // ===== Gửi =====
+
+    /**
+     * Gửi một chunk trên một kết nối SMTP và cập nhật trạng thái các mail (chưa lưu)
+     */
+    void sendChunk(List<MailOutbox> chunk) {
+        SimpleMailMessage[] messages = new SimpleMailMessage[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            messages[i] = toMessage(chunk.get(i));
+        }
+
+        long started = System.nanoTime();
+        Map<Object, Exception> failures = deliver(messages);
+        long elapsed = System.nanoTime() - started;
+        connections.increment();
+        sendNanos.add(elapsed);
+        sendCount.add(chunk.size());
+        maxChunkMillis.accumulateAndGet(TimeUnit.NANOSECONDS.toMillis(elapsed), Math::max);
+
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < chunk.size(); i++) {
+            Exception failure = failures.get(messages[i]);
+            if (failure == null) {
+                markSent(chunk.get(i), now);
+            } else {
+                markFailed(chunk.get(i), failure, now);
+            }
+        }
+    }
+
+    // Mail nào lỗi -> exception (JavaMailSender vẫn gửi tiếp các mail còn lại trên cùng kết nối)
+    private Map<Object, Exception> deliver(SimpleMailMessage[] messages) {
+        try {
+            mailSender.send(messages);
+            return Map.of();
+        } catch (MailSendException e) {
+            // Không có failedMessages: mọi mail đã gửi, chỉ lỗi lúc đóng kết nối
+            return e.getFailedMessages();
+        } catch (MailException e) {
+            // Không kết nối / xác thực được: cả chunk lỗi
+            Map<Object, Exception> all = new HashMap<>();
+            for (SimpleMailMessage message : messages) {
+                all.put(message, e);
+            }
+            return all;
+        }
+    }
+
+    void markSent(MailOutbox mail, LocalDateTime now) {
+        mail.setAttempts(mail.getAttempts() + 1);
+        mail.setStatus(MailOutbox.SENT);
+        mail.setSentAt(now);
+        mail.setLastError(null);
+        // Nội dung có thể chứa mã đặt lại mật khẩu: không giữ lại sau khi đã gửi (dòng chỉ còn để thống kê)
+        mail.setBody("");
+        sent.increment();
+    }
+
+    void markFailed(MailOutbox mail, Exception failure, LocalDateTime now) {
+        int attempts = mail.getAttempts() + 1;
+        mail.setAttempts(attempts);
+        String error = String.valueOf(failure.getMessage());
+        mail.setLastError(error.length() > 1000 ? error.substring(0, 1000) : error);
+        if (attempts >= maxAttempts) {
+            mail.setStatus(MailOutbox.FAILED);
+            mail.setBody("");
+            failed.increment();
+            System.err.println("Mail " + mail.getMailId() + " to " + mail.getRecipient() + " failed after " + attempts + " attempts: " + error);
+        } else {
+            mail.setNextAttemptAt(now.plusNanos(TimeUnit.MILLISECONDS.toNanos(backoffMs(attempts))));
+            retried.increment();
+        }
+    }
+
+    // initial * 2^(attempts-1), tối đa maxBackoffMs
+    long backoffMs(int attempts) {
+        return Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempts - 1, 30));
+    }
+
+    private static SimpleMailMessage toMessage(MailOutbox mail) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(mail.getRecipient());
+        message.setSubject(mail.getSubject());
+        message.setText(mail.getBody());
+        return message;
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
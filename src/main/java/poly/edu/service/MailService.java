@@ -1,21 +1,36 @@
 package poly.edu.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
+import poly.edu.model.MailOutbox;
+import poly.edu.repository.MailOutboxRepository;
+
+import java.time.LocalDateTime;
 
 @Service
 public class MailService {
 
     @Autowired
-    private JavaMailSender mailSender;
+    private MailOutboxRepository mailOutboxRepository;
+
+    @Autowired
+    private MailDispatcher mailDispatcher;
 
+    /**
+     * Ghi mail vào outbox rồi trả về ngay; MailDispatcher gửi nền (không chờ SMTP)
+     */
     public void sendMail(String to, String subject, String text) {
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(to);
-        message.setSubject(subject);
-        message.setText(text);
-        mailSender.send(message);
+        LocalDateTime now = LocalDateTime.now();
+        MailOutbox mail = MailOutbox.builder()
+                .recipient(to)
+                .subject(subject)
+                .body(text)
+                .status(MailOutbox.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build();
+        mailOutboxRepository.save(mail);
+        mailDispatcher.wakeUp();
     }
 }
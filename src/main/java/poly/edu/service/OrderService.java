@@ -1,21 +1,28 @@
 package poly.edu.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import poly.edu.model.Cart;
 import poly.edu.model.Order;
 import poly.edu.model.OrderDetail;
-import poly.edu.model.Product;
+import poly.edu.model.OrderSummary;
 import poly.edu.repository.CartRepository;
+import poly.edu.repository.CheckoutJdbcRepository;
 import poly.edu.repository.OrderRepository;
 import poly.edu.repository.OrderDetailRepository;
-import poly.edu.repository.ProductRepository;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -31,7 +38,50 @@ public class OrderService {
     private CartRepository cartRepository;
 
     @Autowired
-    private ProductRepository productRepository;
+    private PricingEngine pricingEngine;
+
+    @Autowired
+    private CheckoutJdbcRepository checkoutJdbcRepository;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private CartSummaryCache cartSummaryCache;
+
+    @Autowired
+    private DashboardMetrics dashboardMetrics;
+
+    @Autowired
+    private SalesAnalytics salesAnalytics;
+
+    @Autowired
+    private StockRetryPolicy stockRetryPolicy;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Một yêu cầu đặt hàng (dùng cho checkout bất đồng bộ qua CheckoutQueue)
+     *
+     * @param cartLines các dòng giỏ lúc bấm đặt hàng (cartId -> số lượng), chỉ các dòng này được chuyển thành đơn;
+     *                  null: cả giỏ tại lúc xử lý (checkout đồng bộ, lệnh ghi trước khi log có các dòng)
+     */
+    public record CheckoutRequest(Integer accountId, String shippingAddress, String phone, String note,
+                                  Map<Integer, Integer> cartLines) {
+
+        /**
+         * Chụp các dòng giỏ hiện tại của tài khoản
+         */
+        public static CheckoutRequest of(Integer accountId, String shippingAddress, String phone, String note,
+                                         List<Cart> cartItems) {
+            Map<Integer, Integer> lines = new LinkedHashMap<>();
+            for (Cart cartItem : cartItems) {
+                lines.put(cartItem.getCartId(), cartItem.getQuantity());
+            }
+            return new CheckoutRequest(accountId, shippingAddress, phone, note, Collections.unmodifiableMap(lines));
+        }
+    }
 
     /**
      * Get all orders for a specific account (for customer view)
@@ -43,6 +93,23 @@ public class OrderService {
         return orderRepository.findByAccountIdOrderByOrderDateDesc(accountId);
     }
 
+    /**
+     * Danh sách đơn hàng của một tài khoản dạng OrderSummary (trang "Đơn hàng của tôi")
+     */
+    public List<OrderSummary> getOrderSummariesByAccount(Integer accountId) {
+        return orderRepository.findSummariesByAccountId(accountId);
+    }
+
+    /**
+     * Danh sách đơn hàng cho bảng admin / nhân viên, lọc theo trạng thái nếu statusId > 0
+     */
+    public List<OrderSummary> getOrderSummaries(Integer statusId) {
+        if (statusId != null && statusId > 0) {
+            return orderRepository.findSummariesByStatusId(statusId);
+        }
+        return orderRepository.findAllSummaries();
+    }
+
     /**
      * Get all orders (for admin)
      */
@@ -54,97 +121,170 @@ public class OrderService {
      * Get order by ID
      */
     public Order getOrderById(Integer orderId) {
-        return orderRepository.findById(orderId).orElse(null);
+        return orderRepository.findWithAccountByOrderId(orderId).orElse(null);
     }
 
     /**
      * Get order details
      */
     public List<OrderDetail> getOrderDetails(Integer orderId) {
-        return orderDetailRepository.findByOrderId(orderId);
+        return orderDetailRepository.findWithProductByOrderId(orderId);
     }
 
     /**
      * Create order from cart
      * ✅ FIX: Sử dụng giá đã giảm (discounted price) thay vì giá gốc
+     * Số round trip không phụ thuộc số dòng trong giỏ: load cart, load product (một query),
+     * chuyển hold thành đơn (một DELETE), insert order, insert OrderDetail (JDBC batch).
+     * Tồn kho đã được giữ khi thêm vào giỏ (CartReservationService) nên checkout không trừ kho lần nữa.
+     * Gặp deadlock / lock timeout / optimistic lock thì chạy lại cả transaction (có backoff).
      */
-    @Transactional
     public String createOrderFromCart(Integer accountId, String shippingAddress, String phone, String note) {
+        return createOrder(new CheckoutRequest(accountId, shippingAddress, phone, note, null));
+    }
+
+    /**
+     * Đặt nhiều đơn trong một transaction (micro-batch của CheckoutQueue): một connection,
+     * một commit cho cả batch. Nếu một đơn trong batch phải rollback (hết hạn giữ hàng, lỗi)
+     * thì bỏ kết quả cả batch và đặt lại từng đơn trong transaction riêng.
+     *
+     * @return kết quả theo đúng thứ tự requests, cùng dạng với createOrderFromCart
+     */
+    public List<String> createOrdersFromCarts(List<CheckoutRequest> requests) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        try {
+            List<String> results = stockRetryPolicy.runTransaction(() -> transaction.execute(status -> {
+                List<String> batch = new ArrayList<>(requests.size());
+                for (CheckoutRequest request : requests) {
+                    batch.add(placeOrder(status, request));
+                    if (status.isRollbackOnly()) {
+                        return null;
+                    }
+                }
+                return batch;
+            }));
+            if (results != null) {
+                return results;
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Batch checkout failed, retrying orders one by one: " + e.getMessage());
+        }
+
+        List<String> results = new ArrayList<>(requests.size());
+        for (CheckoutRequest request : requests) {
+            try {
+                results.add(createOrder(request));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                results.add("error");
+            }
+        }
+        return results;
+    }
+
+    private String createOrder(CheckoutRequest request) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        return stockRetryPolicy.runTransaction(() -> transaction.execute(status -> placeOrder(status, request)));
+    }
+
+    private String placeOrder(TransactionStatus status, CheckoutRequest request) {
+        Integer accountId = request.accountId();
         try {
             // 1. Get cart items
-            List<Cart> cartItems = cartRepository.findByAccountId(accountId);
+            List<Cart> allItems = cartRepository.findByAccountId(accountId);
+            List<Cart> cartItems = allItems;
+            Map<Integer, Integer> cartLines = request.cartLines();
+            if (cartLines != null) {
+                // Chỉ các dòng đã chụp lúc đặt hàng; dòng thêm vào giỏ sau đó vẫn ở lại giỏ
+                cartItems = allItems.stream().filter(cartItem -> cartLines.containsKey(cartItem.getCartId())).toList();
+                if (cartItems.size() < cartLines.size()) {
+                    // Dòng đã bị xóa (người dùng bỏ khỏi giỏ, sweeper trả hàng hết hạn)
+                    return "reservation_expired";
+                }
+                for (Cart cartItem : cartItems) {
+                    if (!cartLines.get(cartItem.getCartId()).equals(cartItem.getQuantity())) {
+                        return "cart_changed";
+                    }
+                }
+            }
             
             if (cartItems.isEmpty()) {
                 return "empty_cart";
             }
 
-            // 2. Validate stock and calculate total
+            // Gộp số lượng theo product (phòng trường hợp một product có nhiều dòng)
+            Map<Integer, Integer> quantities = new LinkedHashMap<>();
+            List<Integer> cartIds = new ArrayList<>();
+            for (Cart cartItem : cartItems) {
+                quantities.merge(cartItem.getProductId(), cartItem.getQuantity(), Integer::sum);
+                cartIds.add(cartItem.getCartId());
+            }
+
+            // 2. Calculate total theo giá bán trong snapshot của PricingEngine (cùng giá giỏ hàng hiển thị),
+            // không load Product / Promotion (tồn kho đã được trừ lúc thêm vào giỏ, không kiểm tra lại)
             double totalAmount = 0.0;
             List<OrderDetail> orderDetails = new ArrayList<>();
 
-            for (Cart cartItem : cartItems) {
-                Optional<Product> productOpt = productRepository.findById(cartItem.getProductId());
+            for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+                PricingEngine.Price price = pricingEngine.price(line.getKey());
                 
-                if (productOpt.isEmpty()) {
-                    return "product_not_found:" + cartItem.getProductId();
-                }
-
-                Product product = productOpt.get();
-
-                // Check stock availability
-                if (product.getQuantity() <= 0) {
-                    return "out_of_stock:" + product.getName();
-                }
-
-                if (product.getQuantity() < cartItem.getQuantity()) {
-                    return "insufficient_stock:" + product.getName() + ":" + product.getQuantity();
+                if (price == null) {
+                    return "product_not_found:" + line.getKey();
                 }
 
                 // ✅ FIX: Sử dụng giá đã giảm thay vì giá gốc
-                Double finalPrice = product.getDiscountedPrice(); // Thay vì product.getPrice()
-                double itemTotal = finalPrice * cartItem.getQuantity();
+                Double finalPrice = price.price();
+                double itemTotal = finalPrice * line.getValue();
                 totalAmount += itemTotal;
 
                 OrderDetail detail = OrderDetail.builder()
-                        .productId(product.getProductId())
-                        .quantity(cartItem.getQuantity())
+                        .productId(line.getKey())
+                        .quantity(line.getValue())
                         .unitPrice(finalPrice) // ✅ Lưu giá đã giảm
                         .build();
                 
                 orderDetails.add(detail);
             }
 
-            // 3. Create order with default statusId = 1 (Pending)
+            // 3. Chuyển hold của giỏ hàng thành đơn: xóa đúng các dòng cart vừa đọc.
+            // Nếu sweeper đã trả một dòng (hết hạn giữ hàng) thì số dòng xóa được sẽ thiếu -> hủy đơn
+            int converted = cartRepository.deleteByCartIdIn(cartIds);
+            if (converted < cartIds.size()) {
+                status.setRollbackOnly();
+                return "reservation_expired";
+            }
+
+            // 4. Create order with default statusId = 1 (Pending)
             Order order = Order.builder()
                     .accountId(accountId)
                     .orderDate(LocalDateTime.now())
                     .statusId(1)
                     .total(totalAmount)
-                    .shippingAddress(shippingAddress)
-                    .phone(phone)
-                    .note(note)
+                    .shippingAddress(request.shippingAddress())
+                    .phone(request.phone())
+                    .note(request.note())
                     .build();
 
             order = orderRepository.save(order);
+            dashboardMetrics.onOrderCreated(order.getStatusId(), order.getTotal());
 
-            // 4. Create order details and update product quantities
-            for (int i = 0; i < orderDetails.size(); i++) {
-                OrderDetail detail = orderDetails.get(i);
+            // 5. Insert order details bằng JDBC batch
+            for (OrderDetail detail : orderDetails) {
                 detail.setOrderId(order.getOrderId());
-                orderDetailRepository.save(detail);
-
-                // Update product quantity
-                Cart cartItem = cartItems.get(i);
-                Product product = productRepository.findById(cartItem.getProductId()).get();
-                product.setQuantity(product.getQuantity() - cartItem.getQuantity());
-                productRepository.save(product);
             }
+            checkoutJdbcRepository.insertOrderDetails(orderDetails);
 
-            // 5. Clear cart
-            cartRepository.deleteByAccountId(accountId);
+            if (cartItems.size() == allItems.size()) {
+                cartSummaryCache.markEmpty(accountId);
+            } else {
+                cartSummaryCache.invalidate(accountId);
+            }
 
             return "success:" + order.getOrderId();
 
+        } catch (ConcurrencyFailureException e) {
+            // Để runTransaction chạy lại
+            throw e;
         } catch (Exception e) {
             e.printStackTrace();
             System.err.println("ERROR in createOrderFromCart: " + e.getMessage());
@@ -179,14 +319,11 @@ public class OrderService {
 
             order.setStatusId(5);
             orderRepository.save(order);
+            dashboardMetrics.onOrderStatusChanged(1, 5, order.getTotal());
 
             List<OrderDetail> orderDetails = orderDetailRepository.findByOrderId(orderId);
             for (OrderDetail detail : orderDetails) {
-                Product product = productRepository.findById(detail.getProductId()).orElse(null);
-                if (product != null) {
-                    product.setQuantity(product.getQuantity() + detail.getQuantity());
-                    productRepository.save(product);
-                }
+                productService.restoreProductQuantity(detail.getProductId(), detail.getQuantity());
             }
 
             return true;
@@ -215,16 +352,14 @@ public class OrderService {
             if (statusId == 5 && oldStatus != 5) {
                 List<OrderDetail> orderDetails = orderDetailRepository.findByOrderId(orderId);
                 for (OrderDetail detail : orderDetails) {
-                    Product product = productRepository.findById(detail.getProductId()).orElse(null);
-                    if (product != null) {
-                        product.setQuantity(product.getQuantity() + detail.getQuantity());
-                        productRepository.save(product);
-                    }
+                    productService.restoreProductQuantity(detail.getProductId(), detail.getQuantity());
                 }
             }
             
             order.setStatusId(statusId);
             orderRepository.save(order);
+            dashboardMetrics.onOrderStatusChanged(oldStatus, statusId, order.getTotal());
+            salesAnalytics.onOrderStatusChanged(orderId, order.getOrderDate(), oldStatus, statusId);
 
             return true;
 
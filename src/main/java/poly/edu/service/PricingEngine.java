@@ -0,0 +1,256 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import poly.edu.model.Product;
+import poly.edu.model.ProductCard;
+import poly.edu.model.Promotion;
+import poly.edu.repository.ProductRepository;
+import poly.edu.repository.PromotionRepository;
+import poly.edu.util.TransactionHooks;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bảng giá bán của mọi product (giá sau promotion đang hiệu lực), dựng sẵn thành một snapshot bất biến.
+ * Thẻ sản phẩm, giỏ hàng và checkout cùng đọc một snapshot nên giá hiển thị và giá chốt đơn luôn khớp;
+ * mỗi lần đọc chỉ là một lookup trong map, không chạm tới Promotion (LAZY) hay tạo Date.
+ * <p>
+ * Mọi thay đổi (promotion được sửa, product được lưu / xóa, tới ngày bắt đầu / qua ngày kết thúc của
+ * một promotion) dựng snapshot mới rồi thay bằng compare-and-set (copy-on-write). Query chạy trước,
+ * không giữ lock nào; CAS thất bại thì dựng lại trên snapshot mới nhất.
+ * Mốc bắt đầu / kết thúc promotion do PromotionScheduler theo dõi: qua mốc thì scheduler gọi rollOver(),
+ * snapshot được dựng lại từ dữ liệu gốc đang giữ trong snapshot, không cần query.
+ */
+@Service
+public class PricingEngine {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PromotionRepository promotionRepository;
+
+    /**
+     * Giá của một product trong snapshot
+     *
+     * @param basePrice   giá niêm yết
+     * @param price       giá bán (đã trừ promotion đang hiệu lực)
+     * @param promotionId promotion đang hiệu lực, null nếu không có
+     * @param discount    mức giảm đang áp dụng, null nếu không có
+     */
+    public record Price(Integer productId, double basePrice, double price, Integer promotionId, Double discount) {
+
+        public boolean isDiscounted() {
+            return promotionId != null;
+        }
+    }
+
+    // Dữ liệu gốc của product: giá niêm yết + promotion được gắn
+    private record Listing(double price, Integer promotionId) {
+    }
+
+    /**
+     * @param windowsLoad lượt đọc danh sách promotion đã cho ra windows
+     * @param day         ngày dùng để xác định promotion hiệu lực
+     */
+    private record Snapshot(Map<Integer, Listing> listings, Map<Integer, PromotionWindow> windows, long windowsLoad,
+                            Map<Integer, Price> prices, LocalDate day, long version) {
+    }
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong versions = new AtomicLong();
+    // Tăng trước mỗi lần đọc danh sách promotion: snapshot chỉ nhận danh sách đọc sau danh sách đang có
+    private final AtomicLong windowLoads = new AtomicLong();
+    // Request tới trước khi snapshot đầu tiên dựng xong chờ một lần load thay vì cùng query
+    // (ReentrantLock: không pin virtual thread)
+    private final ReentrantLock initialLoad = new ReentrantLock();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            reload();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR building pricing snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Dựng lại toàn bộ từ database (một query giá / promotion của product + danh sách promotion)
+     */
+    public void reload() {
+        while (true) {
+            Snapshot before = snapshot.get();
+            long load = windowLoads.incrementAndGet();
+            Map<Integer, Listing> listings = new HashMap<>();
+            for (Object[] row : productRepository.findAllPriceRows()) {
+                listings.put((Integer) row[0], new Listing(((Number) row[1]).doubleValue(), (Integer) row[2]));
+            }
+            Map<Integer, PromotionWindow> windows = loadWindows();
+            // Snapshot đổi trong lúc query (product được lưu, promotion được sửa): đọc lại để không ghi đè bằng dữ liệu cũ
+            if (snapshot.compareAndSet(before, build(listings, windows, load, LocalDate.now()))) return;
+        }
+    }
+
+    /**
+     * Promotion được tạo / sửa / xóa: đọc lại danh sách promotion, giữ nguyên dữ liệu product
+     */
+    public void refreshPromotions() {
+        TransactionHooks.afterCommit(() -> {
+            long load = windowLoads.incrementAndGet();
+            Map<Integer, PromotionWindow> windows = loadWindows();
+            // Lần đọc bắt đầu sau đã publish thì bỏ kết quả này
+            update(current -> current.windowsLoad() > load ? current
+                    : build(current.listings(), windows, load, LocalDate.now()));
+        });
+    }
+
+    /**
+     * Product vừa được lưu (giá / promotion có thể đổi): chép snapshot và thay đúng một dòng
+     */
+    public void onProductSaved(Product product) {
+        Integer productId = product.getProductId();
+        Listing listing = new Listing(product.getPrice(), product.getPromotionId());
+        TransactionHooks.afterCommit(() -> put(productId, listing));
+    }
+
+    public void onProductDeleted(Integer productId) {
+        TransactionHooks.afterCommit(() -> put(productId, null));
+    }
+
+    /**
+     * Qua mốc bắt đầu / kết thúc của promotion (PromotionScheduler gọi sau khi đổi cờ OnSale):
+     * tính lại giá theo ngày hiện tại
+     */
+    public void rollOver() {
+        update(current -> build(current.listings(), current.windows(), current.windowsLoad(), LocalDate.now()));
+    }
+
+    // ===== Đọc =====
+
+    /**
+     * Giá của product, null nếu product không tồn tại
+     */
+    public Price price(Integer productId) {
+        if (productId == null) return null;
+        Price price = current().prices().get(productId);
+        return price != null ? price : loadPrice(productId);
+    }
+
+    /**
+     * Giá bán (đã giảm) của product, 0 nếu product không tồn tại
+     */
+    public double unitPrice(Integer productId) {
+        Price price = price(productId);
+        return price != null ? price.price() : 0.0;
+    }
+
+    /**
+     * Thẻ sản phẩm với giá bán / mức giảm lấy từ snapshot (thẻ trong cache chỉ có giá niêm yết)
+     */
+    public ProductCard priced(ProductCard card) {
+        Price price = price(card.productId());
+        return price != null ? card.withPricing(price.price(), price.discount()) : card;
+    }
+
+    /**
+     * Tăng mỗi lần đổi snapshot; cache nào giữ số tiền tính từ giá thì so version để biết phải tính lại
+     */
+    public long getVersion() {
+        return current().version();
+    }
+
+    // ===== Dựng snapshot =====
+
+    private Snapshot current() {
+        Snapshot current = snapshot.get();
+        if (current != null) return current;
+        initialLoad.lock();
+        try {
+            if (snapshot.get() == null) {
+                reload();
+            }
+            return snapshot.get();
+        } finally {
+            initialLoad.unlock();
+        }
+    }
+
+    // Product chưa có trong snapshot (thêm ngoài ProductService): đọc một dòng rồi chép vào snapshot
+    private Price loadPrice(Integer productId) {
+        List<Object[]> rows = productRepository.findPriceRow(productId);
+        if (rows.isEmpty()) return null;
+        Object[] row = rows.get(0);
+        put(productId, new Listing(((Number) row[1]).doubleValue(), (Integer) row[2]));
+        return current().prices().get(productId);
+    }
+
+    // listing == null: xóa product
+    private void put(Integer productId, Listing listing) {
+        update(current -> {
+            Map<Integer, Listing> listings = new HashMap<>(current.listings());
+            Map<Integer, Price> prices = new HashMap<>(current.prices());
+            if (listing == null) {
+                listings.remove(productId);
+                prices.remove(productId);
+            } else {
+                listings.put(productId, listing);
+                prices.put(productId, priceOf(productId, listing, current.windows(), current.day()));
+            }
+            return new Snapshot(Collections.unmodifiableMap(listings), current.windows(), current.windowsLoad(),
+                    Collections.unmodifiableMap(prices), current.day(), versions.incrementAndGet());
+        });
+    }
+
+    // Dựng snapshot mới từ snapshot hiện tại rồi CAS (chỉ tính toán trong bộ nhớ, thua thì dựng lại);
+    // chưa có snapshot thì load toàn bộ (dữ liệu của thay đổi đã commit nên đã có trong database)
+    private void update(UnaryOperator<Snapshot> change) {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current == null) {
+                reload();
+                return;
+            }
+            Snapshot next = change.apply(current);
+            if (next == current || snapshot.compareAndSet(current, next)) return;
+        }
+    }
+
+    private Snapshot build(Map<Integer, Listing> listings, Map<Integer, PromotionWindow> windows, long windowsLoad,
+                           LocalDate day) {
+        Map<Integer, Price> prices = new HashMap<>(listings.size() * 2);
+        for (Map.Entry<Integer, Listing> entry : listings.entrySet()) {
+            prices.put(entry.getKey(), priceOf(entry.getKey(), entry.getValue(), windows, day));
+        }
+        return new Snapshot(Collections.unmodifiableMap(listings), Collections.unmodifiableMap(windows), windowsLoad,
+                Collections.unmodifiableMap(prices), day, versions.incrementAndGet());
+    }
+
+    private Map<Integer, PromotionWindow> loadWindows() {
+        Map<Integer, PromotionWindow> windows = new HashMap<>();
+        for (Promotion promotion : promotionRepository.findAll()) {
+            windows.put(promotion.getId(), PromotionWindow.of(promotion));
+        }
+        return windows;
+    }
+
+    private static Price priceOf(Integer productId, Listing listing, Map<Integer, PromotionWindow> windows, LocalDate day) {
+        PromotionWindow window = listing.promotionId() != null ? windows.get(listing.promotionId()) : null;
+        if (window != null && window.activeOn(day) && window.discount() > 0) {
+            return new Price(productId, listing.price(), listing.price() * (1 - window.discount()),
+                    listing.promotionId(), window.discount());
+        }
+        return new Price(productId, listing.price(), listing.price(), null, null);
+    }
+}
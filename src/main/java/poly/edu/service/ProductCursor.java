@@ -0,0 +1,47 @@
+package poly.edu.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursor cho keyset pagination: vị trí (sort key, productId) của dòng biên trang trước,
+ * hướng đọc (sau / trước vị trí đó) và số trang để hiển thị "Trang x / y".
+ * Client chỉ thấy chuỗi base64 nên có thể đổi format mà không ảnh hưởng link cũ (decode lỗi = trang đầu).
+ *
+ * @param sortKey   giá trị cột sắp xếp của dòng biên (listing hiện tại sắp theo productId nên trùng productId)
+ * @param productId productId của dòng biên (tie-breaker duy nhất)
+ * @param forward   true = lấy các dòng sau vị trí, false = lấy các dòng trước (nút "Trước")
+ * @param page      số thứ tự trang mà cursor dẫn tới (bắt đầu từ 0)
+ */
+public record ProductCursor(long sortKey, int productId, boolean forward, int page) {
+
+    public static ProductCursor after(long sortKey, int productId, int page) {
+        return new ProductCursor(sortKey, productId, true, page);
+    }
+
+    public static ProductCursor before(long sortKey, int productId, int page) {
+        return new ProductCursor(sortKey, productId, false, page);
+    }
+
+    public String encode() {
+        String raw = (forward ? "a" : "b") + ":" + sortKey + ":" + productId + ":" + page;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Giải mã cursor từ query string, trả về null nếu rỗng hoặc không hợp lệ
+     */
+    public static ProductCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length != 4 || !(parts[0].equals("a") || parts[0].equals("b"))) return null;
+            int page = Integer.parseInt(parts[3]);
+            if (page < 0) return null;
+            return new ProductCursor(Long.parseLong(parts[1]), Integer.parseInt(parts[2]), parts[0].equals("a"), page);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
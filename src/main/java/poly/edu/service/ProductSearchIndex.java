@@ -0,0 +1,369 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import poly.edu.model.Product;
+import poly.edu.repository.ProductRepository;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over Product name and description.
+ * Built once at startup and updated incrementally by ProductService on save/delete,
+ * so storefront search never has to run a LIKE scan against the Product table.
+ * Results are ranked with BM25 (name weighted above description) and boosted by rating.
+ */
+@Component
+public class ProductSearchIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Tham số BM25
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double NAME_WEIGHT = 2.0;
+    private static final double DESCRIPTION_WEIGHT = 1.0;
+
+    // Rating 5 sao được cộng thêm tối đa 30% điểm
+    private static final double RATING_BOOST = 0.3;
+
+    // Term khớp prefix hoặc gõ sai được tính điểm thấp hơn term khớp chính xác
+    private static final double PREFIX_PENALTY = 0.8;
+    private static final double TYPO_PENALTY = 0.6;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // term -> productIds chứa term đó (sorted để prefix lookup bằng subMap)
+    private final TreeMap<String, Set<Integer>> postings = new TreeMap<>();
+
+    // productId -> thống kê term của product (dùng để tính điểm và khi update/xóa)
+    private final Map<Integer, Document> documents = new HashMap<>();
+
+    private long totalNameLength = 0;
+    private long totalDescriptionLength = 0;
+
+    private volatile boolean ready = false;
+
+    /**
+     * Kết quả search: productId của top-k đã xếp hạng và tổng số product khớp
+     */
+    public record Hits(List<Integer> productIds, int total) {
+    }
+
+    /**
+     * Build lại toàn bộ index từ database (chạy khi ứng dụng khởi động)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            List<Product> products = productRepository.findAll();
+            lock.writeLock().lock();
+            try {
+                postings.clear();
+                documents.clear();
+                totalNameLength = 0;
+                totalDescriptionLength = 0;
+                for (Product product : products) {
+                    addDocument(product);
+                }
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR building product search index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Index đã sẵn sàng phục vụ search chưa
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Thêm mới hoặc cập nhật một product trong index
+     */
+    public void index(Product product) {
+        if (product == null || product.getProductId() == null) return;
+        lock.writeLock().lock();
+        try {
+            removeDocument(product.getProductId());
+            addDocument(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Xóa product khỏi index
+     */
+    public void remove(Integer productId) {
+        if (productId == null) return;
+        lock.writeLock().lock();
+        try {
+            removeDocument(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tìm product khớp với tất cả các từ trong keyword và trả về top-k theo điểm BM25.
+     * Mỗi từ được match chính xác, theo prefix, hoặc theo từ gần đúng nếu gõ sai.
+     *
+     * @param keyword từ khóa người dùng nhập
+     * @param limit số kết quả tốt nhất cần lấy (offset + page size)
+     */
+    public Hits search(String keyword, int limit) {
+        List<String> tokens = new ArrayList<>(new LinkedHashSet<>(tokenize(keyword)));
+        if (tokens.isEmpty()) return new Hits(Collections.emptyList(), 0);
+
+        lock.readLock().lock();
+        try {
+            // Điểm của từng product cho mỗi token; product phải khớp đủ mọi token
+            Map<Integer, Double> scores = null;
+            for (String token : tokens) {
+                Map<Integer, Double> tokenScores = scoreToken(token);
+                if (tokenScores.isEmpty()) return new Hits(Collections.emptyList(), 0);
+
+                if (scores == null) {
+                    scores = tokenScores;
+                } else {
+                    Map<Integer, Double> merged = new HashMap<>();
+                    for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+                        Double tokenScore = tokenScores.get(entry.getKey());
+                        if (tokenScore != null) {
+                            merged.put(entry.getKey(), entry.getValue() + tokenScore);
+                        }
+                    }
+                    if (merged.isEmpty()) return new Hits(Collections.emptyList(), 0);
+                    scores = merged;
+                }
+            }
+
+            return new Hits(topK(scores, limit), scores.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tách text thành các term đã bỏ dấu và chuyển về chữ thường
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        for (String token : SEPARATORS.split(fold(text))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Bỏ dấu tiếng Việt: "Áo thun Đẹp" -> "ao thun dep"
+     */
+    public static String fold(String text) {
+        String lower = text.toLowerCase(Locale.ROOT).replace('đ', 'd');
+        String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("");
+    }
+
+    // Số lỗi gõ cho phép theo độ dài từ: từ ngắn phải gõ đúng
+    static int allowedTypos(String token) {
+        if (token.length() <= 2) return 0;
+        if (token.length() <= 5) return 1;
+        return 2;
+    }
+
+    /**
+     * Khoảng cách Damerau-Levenshtein (optimal string alignment) giới hạn bởi maxDistance.
+     * Trả về maxDistance + 1 ngay khi chắc chắn vượt ngưỡng.
+     */
+    static int boundedEditDistance(String a, String b, int maxDistance) {
+        if (Math.abs(a.length() - b.length()) > maxDistance) return maxDistance + 1;
+
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > maxDistance) return maxDistance + 1;
+
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()];
+    }
+
+    // Điểm của từng product cho một token (lấy term khớp tốt nhất trong các term mở rộng)
+    private Map<Integer, Double> scoreToken(String token) {
+        Map<String, Double> expansions = expand(token);
+        Map<Integer, Double> tokenScores = new HashMap<>();
+        for (Map.Entry<String, Double> expansion : expansions.entrySet()) {
+            String term = expansion.getKey();
+            Set<Integer> ids = postings.get(term);
+            double idf = idf(ids.size());
+            for (Integer productId : ids) {
+                double score = expansion.getValue() * idf * termWeight(documents.get(productId), term);
+                tokenScores.merge(productId, score, Math::max);
+            }
+        }
+        return tokenScores;
+    }
+
+    // term trong từ điển -> hệ số (1.0 khớp chính xác, thấp hơn cho prefix / gõ sai)
+    private Map<String, Double> expand(String token) {
+        Map<String, Double> expansions = new HashMap<>();
+        for (String term : prefixRange(token).keySet()) {
+            expansions.put(term, term.equals(token) ? 1.0 : PREFIX_PENALTY);
+        }
+        if (!expansions.isEmpty()) return expansions;
+
+        // Không có term nào khớp -> thử từ gần đúng trong từ điển
+        int maxDistance = allowedTypos(token);
+        if (maxDistance == 0) return expansions;
+        for (String term : postings.keySet()) {
+            int distance = boundedEditDistance(token, term, maxDistance);
+            if (distance <= maxDistance) {
+                expansions.put(term, TYPO_PENALTY / distance);
+            }
+        }
+        return expansions;
+    }
+
+    private double idf(int documentFrequency) {
+        int n = documents.size();
+        return Math.log(1 + (n - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    private double termWeight(Document document, String term) {
+        double avgName = documents.isEmpty() ? 1 : Math.max(1.0, (double) totalNameLength / documents.size());
+        double avgDescription = documents.isEmpty() ? 1 : Math.max(1.0, (double) totalDescriptionLength / documents.size());
+        double weight = NAME_WEIGHT * bm25(document.nameTerms.getOrDefault(term, 0), document.nameLength, avgName)
+                + DESCRIPTION_WEIGHT * bm25(document.descriptionTerms.getOrDefault(term, 0), document.descriptionLength, avgDescription);
+        return weight * (1 + RATING_BOOST * document.rating / 5.0);
+    }
+
+    private static double bm25(int tf, int length, double avgLength) {
+        if (tf == 0) return 0;
+        return tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / avgLength));
+    }
+
+    // Lấy k product điểm cao nhất bằng min-heap thay vì sort toàn bộ kết quả
+    private static List<Integer> topK(Map<Integer, Double> scores, int k) {
+        Comparator<Map.Entry<Integer, Double>> byRank = Map.Entry.<Integer, Double>comparingByValue()
+                .thenComparing(Map.Entry.<Integer, Double>comparingByKey().reversed());
+        PriorityQueue<Map.Entry<Integer, Double>> heap = new PriorityQueue<>(byRank);
+        for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+            if (heap.size() < k) {
+                heap.offer(entry);
+            } else if (k > 0 && byRank.compare(entry, heap.peek()) > 0) {
+                heap.poll();
+                heap.offer(entry);
+            }
+        }
+
+        List<Integer> ranked = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            ranked.add(heap.poll().getKey());
+        }
+        Collections.reverse(ranked);
+        return ranked;
+    }
+
+    private NavigableMap<String, Set<Integer>> prefixRange(String prefix) {
+        return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+    }
+
+    private void addDocument(Product product) {
+        Document document = new Document(product);
+        Set<String> terms = new HashSet<>(document.nameTerms.keySet());
+        terms.addAll(document.descriptionTerms.keySet());
+        for (String term : terms) {
+            postings.computeIfAbsent(term, t -> new TreeSet<>()).add(product.getProductId());
+        }
+        documents.put(product.getProductId(), document);
+        totalNameLength += document.nameLength;
+        totalDescriptionLength += document.descriptionLength;
+    }
+
+    private void removeDocument(Integer productId) {
+        Document document = documents.remove(productId);
+        if (document == null) return;
+        Set<String> terms = new HashSet<>(document.nameTerms.keySet());
+        terms.addAll(document.descriptionTerms.keySet());
+        for (String term : terms) {
+            Set<Integer> ids = postings.get(term);
+            if (ids != null) {
+                ids.remove(productId);
+                if (ids.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        totalNameLength -= document.nameLength;
+        totalDescriptionLength -= document.descriptionLength;
+    }
+
+    // Term frequency theo từng field của một product
+    private static class Document {
+        final Map<String, Integer> nameTerms = new HashMap<>();
+        final Map<String, Integer> descriptionTerms = new HashMap<>();
+        final int nameLength;
+        final int descriptionLength;
+        final double rating;
+
+        Document(Product product) {
+            List<String> name = tokenize(product.getName());
+            List<String> description = tokenize(product.getDescription());
+            name.forEach(term -> nameTerms.merge(term, 1, Integer::sum));
+            description.forEach(term -> descriptionTerms.merge(term, 1, Integer::sum));
+            nameLength = name.size();
+            descriptionLength = description.size();
+            rating = product.getRating() != null ? product.getRating() : 0.0;
+        }
+    }
+}
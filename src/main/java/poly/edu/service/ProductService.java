@@ -1,16 +1,31 @@
 package poly.edu.service;
 
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import poly.edu.model.Product;
+import poly.edu.model.ProductCard;
+import poly.edu.repository.InventoryJdbcRepository;
 import poly.edu.repository.ProductRepository;
+import poly.edu.util.TransactionHooks;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 @Service
 @Transactional
@@ -19,12 +34,87 @@ public class ProductService {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private SuggestionTrie suggestionTrie;
+
+    @Autowired
+    private CatalogFacetIndex catalogFacetIndex;
+
+    @Autowired
+    private ListingCountCache listingCountCache;
+
+    @Autowired
+    private CatalogCache catalogCache;
+
+    @Autowired
+    private CategoryStockView categoryStockView;
+
+    @Autowired
+    private CartSummaryCache cartSummaryCache;
+
+    @Autowired
+    private InventoryLedger inventoryLedger;
+
+    @Autowired
+    private InventoryJdbcRepository inventoryJdbcRepository;
+
+    @Autowired
+    private PricingEngine pricingEngine;
+
+    @Autowired
+    private PromotionScheduler promotionScheduler;
+
+    @Autowired
+    private PromotedProductIndex promotedProductIndex;
+
     // Get all products with pagination
     public Page<Product> getAllProducts(int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
         return productRepository.findAll(pageable);
     }
 
+    /**
+     * Một trang của listing dùng keyset pagination
+     *
+     * @param nextCursor cursor cho trang sau (null nếu đã là trang cuối)
+     * @param prevCursor cursor cho trang trước (null nếu đang ở trang đầu)
+     * @param totalElements tổng số dòng lấy từ ListingCountCache (có thể trễ tối đa một TTL)
+     */
+    public record ProductSlice(List<ProductCard> content, int pageNumber, int totalPages, long totalElements,
+                               String nextCursor, String prevCursor) {
+    }
+
+    // Listing trang chủ / api/home theo cursor (seek trên productId thay vì OFFSET)
+    public ProductSlice getProductsByCursor(String cursor, int size) {
+        return cachedListing("all:" + size + ":" + cursor, () -> seek(ProductCursor.decode(cursor), size, "all", productRepository::count,
+                productRepository::findIdsAfter,
+                productRepository::findIdsBefore));
+    }
+
+    // Listing theo category theo cursor
+    public ProductSlice getCategoryProductsByCursor(Integer categoryId, String cursor, int size) {
+        return cachedListing("category:" + categoryId + ":" + size + ":" + cursor, () -> seek(ProductCursor.decode(cursor), size, "category:" + categoryId,
+                () -> productRepository.countByCategoryId(categoryId),
+                (productId, limit) -> productRepository.findCategoryIdsAfter(categoryId, productId, limit),
+                (productId, limit) -> productRepository.findCategoryIdsBefore(categoryId, productId, limit)));
+    }
+
+    // Listing sản phẩm đang giảm giá theo cursor: mức giảm sâu trước rồi rating, đọc từ PromotedProductIndex
+    // (cờ OnSale trong database chỉ dùng khi index chưa dựng xong)
+    public ProductSlice getPromotionProductsByCursor(String cursor, int size) {
+        if (promotedProductIndex.isReady()) {
+            PromotedProductIndex.Slice slice = promotedProductIndex.slice(ProductCursor.decode(cursor), size);
+            return new ProductSlice(loadCards(slice.productIds()), slice.pageNumber(), slice.totalPages(),
+                    slice.totalElements(), slice.nextCursor(), slice.prevCursor());
+        }
+        return cachedListing("promotion:" + size + ":" + cursor, () -> seek(ProductCursor.decode(cursor), size, "promotion", productRepository::countProductsWithPromotion,
+                productRepository::findPromotionIdsAfter,
+                productRepository::findPromotionIdsBefore));
+    }
+
     // Get featured products (high rating and available)
     public Page<Product> getFeaturedProducts(int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
@@ -37,15 +127,104 @@ public class ProductService {
         return productRepository.findAvailableProductsByCategory(categoryId, pageable);
     }
 
-    // Get product by ID
+    // Get product by ID (read-through catalog cache)
     public Optional<Product> getProductById(Integer productId) {
-        return productRepository.findById(productId);
+        return Optional.ofNullable(catalogCache.getProduct(productId,
+                id -> productRepository.findById(id).map(ProductService::prepareForCache).orElse(null)));
     }
 
-    // Search products
-    public Page<Product> searchProducts(String keyword, int page, int size) {
+    // Search products ranked by relevance (answered from the in-memory index, LIKE query only as fallback)
+    public Page<ProductCard> searchProducts(String keyword, int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
-        return productRepository.searchProducts(keyword, pageable);
+        if (!productSearchIndex.isReady()) {
+            return productRepository.searchProducts(keyword, pageable).map(ProductCard::of).map(pricingEngine::priced);
+        }
+        // Chỉ giữ top (offset + size) kết quả đã xếp hạng, rồi cắt ra trang cần hiển thị
+        // (cộng trên long: page lớn từ query string không làm tràn int thành limit âm)
+        int limit = (int) Math.min(Integer.MAX_VALUE, pageable.getOffset() + pageable.getPageSize());
+        ProductSearchIndex.Hits hits = productSearchIndex.search(keyword, limit);
+        List<Integer> rankedIds = hits.productIds();
+        int from = (int) Math.min(pageable.getOffset(), rankedIds.size());
+        return loadPage(rankedIds.subList(from, rankedIds.size()), pageable, hits.total());
+    }
+
+    /**
+     * Một trang catalog đã lọc theo facet kèm số đếm của từng giá trị facet
+     */
+    public record CatalogPage(Page<ProductCard> products, Map<String, Map<String, Integer>> facets) {
+    }
+
+    // Browse catalog theo keyword + facet (admin list và sidebar storefront dùng chung)
+    public CatalogPage browseCatalog(String keyword, CatalogFacetIndex.FacetFilter filter, int page, int size) {
+        Pageable pageable = PageRequest.of(page, size);
+        List<Integer> candidates = null;
+        if (keyword != null && !keyword.isBlank()) {
+            // Giữ thứ tự xếp hạng của search, facet chỉ lọc lại trên tập ứng viên
+            candidates = productSearchIndex.search(keyword, Integer.MAX_VALUE).productIds();
+        }
+        CatalogFacetIndex.FacetResult result = catalogFacetIndex.query(filter, candidates);
+        List<Integer> ids = result.productIds();
+        int from = (int) Math.min(pageable.getOffset(), ids.size());
+        int to = Math.min(from + pageable.getPageSize(), ids.size());
+        return new CatalogPage(loadPage(ids.subList(from, to), pageable, ids.size()), result.counts());
+    }
+
+    // Save product and keep the search index / suggestions / facets in sync
+    public Product saveProduct(Product product) {
+        Product saved = productRepository.save(product);
+        listingCountCache.invalidateAll();
+        catalogCache.invalidateProduct(saved.getProductId());
+        cartSummaryCache.invalidateAll();
+        pricingEngine.onProductSaved(saved);
+        promotionScheduler.onProductSaved(saved);
+        promotedProductIndex.onProductSaved(saved);
+        // Index trong bộ nhớ chỉ đổi khi transaction commit (rollback thì giữ nguyên)
+        TransactionHooks.afterCommit(() -> {
+            productSearchIndex.index(saved);
+            suggestionTrie.addProduct(saved);
+            catalogFacetIndex.index(saved);
+            categoryStockView.onProductSaved(saved);
+        });
+        if (inventoryLedger.isTracked(saved.getProductId())) {
+            // Số lượng admin nhập là tuyệt đối, các lượt giữ hàng chưa flush tính trên số mới
+            inventoryLedger.onProductSaved(saved.getProductId(), saved.getQuantity());
+            onLedgerStockChanged(saved.getProductId());
+        } else if (saved.getPromotionId() != null) {
+            // Vừa gắn promotion: SKU có thể thành SKU nóng
+            inventoryLedger.trackActivePromotions();
+        }
+        return saved;
+    }
+
+    // Rating vừa đổi (review mới / rebuild tổng hợp): cập nhật thứ hạng search, gợi ý, facet rating
+    public void onRatingChanged(Integer productId) {
+        productRepository.findById(productId).ifPresent(product -> {
+            listingCountCache.invalidateAll();
+            catalogCache.invalidateProduct(productId);
+            TransactionHooks.afterCommit(() -> {
+                productSearchIndex.index(product);
+                suggestionTrie.addProduct(product);
+                catalogFacetIndex.index(product);
+            });
+            promotedProductIndex.onRatingChanged(product);
+        });
+    }
+
+    // Delete product and remove it from the search index / suggestions / facets
+    public void deleteProduct(Product product) {
+        productRepository.delete(product);
+        listingCountCache.invalidateAll();
+        catalogCache.invalidateProduct(product.getProductId());
+        cartSummaryCache.invalidateAll();
+        pricingEngine.onProductDeleted(product.getProductId());
+        promotedProductIndex.onProductDeleted(product.getProductId());
+        Integer productId = product.getProductId();
+        TransactionHooks.afterCommit(() -> {
+            productSearchIndex.remove(productId);
+            suggestionTrie.removeProduct(productId);
+            catalogFacetIndex.remove(productId);
+            categoryStockView.onProductDeleted(productId);
+        });
     }
 
     // Get available products only
@@ -56,40 +235,123 @@ public class ProductService {
 
     // Check if product is in stock
     public boolean isInStock(Integer productId, Integer requestedQuantity) {
-        Optional<Product> product = productRepository.findById(productId);
-        return product.isPresent() && product.get().getQuantity() >= requestedQuantity;
+        return getAvailableQuantity(productId) >= requestedQuantity;
     }
 
-    // Get available quantity for a product
+    // Get available quantity for a product (SKU nóng đọc từ InventoryLedger)
     public Integer getAvailableQuantity(Integer productId) {
+        // null: SKU vừa bị bỏ track (promotion kết thúc), đọc database
+        Integer available = inventoryLedger.getAvailable(productId);
+        if (available != null) return available;
         Optional<Product> product = productRepository.findById(productId);
         return product.map(Product::getQuantity).orElse(0);
     }
 
     // Reduce product quantity (for cart operations)
     public boolean reduceProductQuantity(Integer productId, Integer quantity) {
-        Optional<Product> productOpt = productRepository.findById(productId);
-        if (productOpt.isPresent()) {
-            Product product = productOpt.get();
-            if (product.getQuantity() >= quantity) {
-                product.setQuantity(product.getQuantity() - quantity);
-                productRepository.save(product);
-                return true;
-            }
-        }
-        return false;
+        return adjustStock(productId, -quantity) == StockRetryPolicy.Outcome.APPLIED;
     }
 
-    // Restore product quantity (when removing from cart)
+    // Restore product quantity (when removing from cart, cancelling an order)
     public boolean restoreProductQuantity(Integer productId, Integer quantity) {
-        Optional<Product> productOpt = productRepository.findById(productId);
-        if (productOpt.isPresent()) {
-            Product product = productOpt.get();
-            product.setQuantity(product.getQuantity() + quantity);
-            productRepository.save(product);
-            return true;
+        return adjustStock(productId, quantity) == StockRetryPolicy.Outcome.APPLIED;
+    }
+
+    /**
+     * Cộng delta (âm = giữ hàng) vào tồn kho. SKU nóng đi qua InventoryLedger. Trả hàng (delta > 0) cộng thẳng
+     * dưới lock dòng (không thể âm nên không cần so version). Giữ hàng đọc quantity + version rồi UPDATE có
+     * điều kiện version, chỉ thử một lần: CONFLICT thì caller chạy lại cả transaction qua StockRetryPolicy.run
+     * (backoff ngoài transaction, không giữ connection / lock khi chờ).
+     *
+     * @return APPLIED, REJECTED (không đủ hàng / không có product) hoặc CONFLICT (version vừa đổi)
+     */
+    public StockRetryPolicy.Outcome adjustStock(Integer productId, int delta) {
+        if (inventoryLedger.isTracked(productId)) {
+            return adjustTrackedStock(productId, delta);
+        }
+        if (delta >= 0) {
+            restoreStock(Map.of(productId, delta));
+            return StockRetryPolicy.Outcome.APPLIED;
+        }
+        // InventoryLedger.track tăng version của SKU vừa được track: lần đọc version cũ sẽ conflict,
+        // transaction chạy lại thì đi qua ledger
+        List<Object[]> rows = productRepository.findStockState(productId);
+        if (rows.isEmpty()) return StockRetryPolicy.Outcome.REJECTED;
+        int quantity = ((Number) rows.get(0)[0]).intValue();
+        long version = ((Number) rows.get(0)[1]).longValue();
+        if (quantity + delta < 0) return StockRetryPolicy.Outcome.REJECTED;
+        if (productRepository.updateQuantityIfVersion(productId, delta, version) == 0) {
+            return StockRetryPolicy.Outcome.CONFLICT;
         }
-        return false;
+        onStockChanged(productId, quantity + delta);
+        return StockRetryPolicy.Outcome.APPLIED;
+    }
+
+    // SKU bị bỏ track giữa chừng: giữ hàng trả CONFLICT để caller chạy lại theo đường database,
+    // trả hàng thì cộng thẳng vào database
+    private StockRetryPolicy.Outcome adjustTrackedStock(Integer productId, int delta) {
+        if (delta < 0) {
+            StockRetryPolicy.Outcome outcome = inventoryLedger.reserve(productId, -delta);
+            if (outcome != StockRetryPolicy.Outcome.APPLIED) return outcome;
+        }
+        if (delta > 0 && !inventoryLedger.release(productId, delta)) {
+            return adjustStock(productId, delta);
+        }
+        onLedgerStockChanged(productId);
+        return StockRetryPolicy.Outcome.APPLIED;
+    }
+
+    /**
+     * Trả hàng hàng loạt (hold hết hạn, xóa giỏ): SKU nóng trả qua InventoryLedger,
+     * còn lại một JDBC batch UPDATE rồi một query đọc lại số lượng để đồng bộ index / cache
+     */
+    public void restoreStock(Map<Integer, Integer> quantities) {
+        Map<Integer, Integer> databaseLines = new HashMap<>();
+        quantities.forEach((productId, quantity) -> {
+            if (inventoryLedger.isTracked(productId)) {
+                adjustStock(productId, quantity);
+            } else {
+                databaseLines.put(productId, quantity);
+            }
+        });
+        if (databaseLines.isEmpty()) return;
+        // Lock các dòng trước: SKU được track trước đó đã có trong ledger thì trả qua ledger
+        inventoryJdbcRepository.lockQuantities(databaseLines.keySet());
+        Iterator<Map.Entry<Integer, Integer>> lines = databaseLines.entrySet().iterator();
+        while (lines.hasNext()) {
+            Map.Entry<Integer, Integer> line = lines.next();
+            if (inventoryLedger.isTracked(line.getKey())) {
+                adjustTrackedStock(line.getKey(), line.getValue());
+                lines.remove();
+            }
+        }
+        if (databaseLines.isEmpty()) return;
+        inventoryJdbcRepository.applyDeltas(databaseLines);
+        inventoryJdbcRepository.loadQuantities(databaseLines.keySet()).forEach(this::onStockChanged);
+    }
+
+    // Đồng bộ facet index, catalog cache và navbar category sau khi transaction đổi tồn kho commit
+    // (add-to-cart bị rollback thì số in-stock giữ nguyên)
+    public void onStockChanged(Product product) {
+        onStockChanged(product.getProductId(), product.getQuantity());
+    }
+
+    public void onStockChanged(Integer productId, Integer quantity) {
+        TransactionHooks.afterCommit(() -> publishStock(productId, quantity));
+    }
+
+    // SKU nóng: đọc số còn lại của ledger lúc commit (các lượt giữ hàng khác có thể đã chen vào)
+    private void onLedgerStockChanged(Integer productId) {
+        TransactionHooks.afterCommit(() -> {
+            Integer available = inventoryLedger.getAvailable(productId);
+            if (available != null) publishStock(productId, available);
+        });
+    }
+
+    private void publishStock(Integer productId, Integer quantity) {
+        catalogFacetIndex.updateStock(productId, quantity);
+        catalogCache.evictProduct(productId);
+        categoryStockView.onStockChanged(productId, quantity);
     }
 
     // Get out of stock products
@@ -108,7 +370,75 @@ public class ProductService {
         Pageable pageable = PageRequest.of(page, size);
         return productRepository.findByRatingGreaterThanEqual(minRating, pageable);
     }
-}
 
+    // Đọc một trang theo cursor: lấy size + 1 dòng để biết còn trang kế tiếp hay không
+    private ProductSlice seek(ProductCursor cursor, int size, String countKey, LongSupplier counter,
+                              BiFunction<Integer, Limit, List<Integer>> after,
+                              BiFunction<Integer, Limit, List<Integer>> before) {
+        if (cursor == null) {
+            cursor = ProductCursor.after(0, 0, 0);
+        }
+        List<Integer> rows;
+        boolean hasNext;
+        boolean hasPrev;
+        int page = cursor.page();
+        if (cursor.forward()) {
+            rows = new ArrayList<>(after.apply(cursor.productId(), Limit.of(size + 1)));
+            hasNext = rows.size() > size;
+            hasPrev = page > 0;
+        } else {
+            rows = new ArrayList<>(before.apply(cursor.productId(), Limit.of(size + 1)));
+            hasPrev = rows.size() > size;
+            hasNext = true;
+            if (!hasPrev) page = 0; // Đã về tới đầu danh sách
+        }
+        if (rows.size() > size) {
+            rows = new ArrayList<>(rows.subList(0, size));
+        }
+        if (!cursor.forward()) {
+            Collections.reverse(rows);
+        }
+        long total = listingCountCache.get(countKey, counter);
+        int totalPages = (int) ((total + size - 1) / size);
 
+        String nextCursor = null;
+        String prevCursor = null;
+        if (!rows.isEmpty()) {
+            Integer first = rows.get(0);
+            Integer last = rows.get(rows.size() - 1);
+            if (hasNext) nextCursor = ProductCursor.after(last, last, page + 1).encode();
+            if (hasPrev) prevCursor = ProductCursor.before(first, first, page - 1).encode();
+        }
+        return new ProductSlice(loadCards(rows), page, Math.max(totalPages, page + 1), total, nextCursor, prevCursor);
+    }
+
+    // Load only the products of the requested page, keeping the given id order
+    private Page<ProductCard> loadPage(List<Integer> pageIds, Pageable pageable, long total) {
+        return new PageImpl<>(loadCards(pageIds), pageable, total);
+    }
+
+    // Trang listing lấy từ cache; thẻ sản phẩm của trang được đọc lại qua cache theo id để luôn thấy tồn kho mới
+    private ProductSlice cachedListing(String key, Supplier<ProductSlice> loader) {
+        ProductSlice slice = catalogCache.getListing(key, loader);
+        List<Integer> ids = slice.content().stream().map(ProductCard::productId).toList();
+        return new ProductSlice(loadCards(ids), slice.pageNumber(), slice.totalPages(), slice.totalElements(),
+                slice.nextCursor(), slice.prevCursor());
+    }
+
+    // Lấy thẻ sản phẩm theo danh sách id (giữ thứ tự), chỉ query database (một projection query) cho các id chưa có trong cache.
+    // Giá bán gắn từ snapshot của PricingEngine nên thẻ cache không phải xóa khi promotion đổi
+    private List<ProductCard> loadCards(List<Integer> ids) {
+        Map<Integer, ProductCard> cardsById = catalogCache.getCards(ids, productRepository::findCardsByIdIn);
+        return ids.stream()
+                .map(cardsById::get)
+                .filter(Objects::nonNull)
+                .map(pricingEngine::priced)
+                .toList();
+    }
 
+    // Nạp sẵn promotion (LAZY) trước khi product rời session để đưa vào cache
+    private static Product prepareForCache(Product product) {
+        Hibernate.initialize(product.getPromotion());
+        return product;
+    }
+}
@@ -0,0 +1,121 @@
+package poly.edu.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import poly.edu.config.SqlStatementCounter;
+import poly.edu.model.Order;
+import poly.edu.model.Product;
+import poly.edu.model.ProductCard;
+import poly.edu.repository.OrderRepository;
+import poly.edu.repository.ProductRepository;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * So sánh cách render cũ (load entity rồi để template / Jackson đi theo association) với projection
+ * (ProductCard, OrderSummary) trên cùng dữ liệu: số câu SQL, số dòng được dựng thành object,
+ * tổng số cột trong SELECT list và số byte JSON. Không đi qua CatalogCache, mỗi cách chạy trong
+ * một transaction với persistence context rỗng.
+ */
+@Component
+public class ProjectionReport {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * @param rows số object dựng từ kết quả query (entity trong persistence context, hoặc số projection)
+     */
+    public record Measurement(int statements, int rows, int selectColumns, long jsonBytes) {
+    }
+
+    public record Comparison(String page, int items, Measurement entities, Measurement projection) {
+    }
+
+    // Serialize graph entity như khi trả thẳng entity ra JSON, bỏ các back-reference để không lặp vô hạn
+    @JsonIgnoreProperties({"hibernateLazyInitializer", "handler", "products", "orderDetails", "accounts"})
+    private interface EntityGraphMixin {
+    }
+
+    public List<Comparison> compare(int pageSize) {
+        return List.of(compareProductListing(pageSize), compareOrderList(pageSize));
+    }
+
+    // Trang listing sản phẩm: Product (+ Category EAGER, Promotion LAZY mà template đọc) so với ProductCard
+    private Comparison compareProductListing(int pageSize) {
+        List<Integer> ids = productRepository.findIdsAfter(0, Limit.of(pageSize));
+        Measurement entities = measure(() -> {
+            List<Product> products = productRepository.findAllById(ids);
+            products.forEach(product -> Hibernate.initialize(product.getPromotion()));
+            return products;
+        }, true);
+        Measurement projection = measure(() -> productRepository.findCardsByIdIn(ids), false);
+        return new Comparison("product listing", ids.size(), entities, projection);
+    }
+
+    // Bảng đơn hàng admin (pageSize đơn mới nhất): Order + account.fullName từng dòng so với OrderSummary
+    private Comparison compareOrderList(int pageSize) {
+        Measurement entities = measure(() -> {
+            List<Order> orders = orderRepository.findLatest(Limit.of(pageSize));
+            orders.forEach(order -> Hibernate.initialize(order.getAccount()));
+            return orders;
+        }, true);
+        Measurement projection = measure(() -> orderRepository.findLatestSummaries(Limit.of(pageSize)), false);
+        return new Comparison("admin order list", projection.rows(), entities, projection);
+    }
+
+    private Measurement measure(Supplier<List<?>> load, boolean entityGraph) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        return transaction.execute(status -> {
+            status.setRollbackOnly();
+            entityManager.clear();
+            SqlStatementCounter.start();
+            try {
+                List<?> result = load.get();
+                // Jackson có thể kéo thêm association khi serialize, vẫn tính vào số câu SQL
+                long bytes = serializedSize(result, entityGraph);
+                int rows = entityGraph
+                        ? entityManager.unwrap(Session.class).getStatistics().getEntityCount()
+                        : result.size();
+                SqlStatementCounter.Counts counts = SqlStatementCounter.current();
+                return new Measurement(counts.statements(), rows, counts.selectColumns(), bytes);
+            } finally {
+                SqlStatementCounter.stop();
+            }
+        });
+    }
+
+    private long serializedSize(List<?> result, boolean entityGraph) {
+        try {
+            ObjectMapper mapper = entityGraph ? objectMapper.copy().addMixIn(Object.class, EntityGraphMixin.class) : objectMapper;
+            return mapper.writeValueAsBytes(result).length;
+        } catch (JsonProcessingException e) {
+            System.err.println("ERROR serializing projection report sample: " + e.getMessage());
+            return -1;
+        }
+    }
+}
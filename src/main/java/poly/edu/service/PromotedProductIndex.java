@@ -0,0 +1,268 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import poly.edu.model.Product;
+import poly.edu.repository.ProductRepository;
+import poly.edu.util.TransactionHooks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index trong bộ nhớ các product đang giảm giá (promotion hiệu lực theo PricingEngine), sắp theo
+ * mức giảm sâu trước, rồi rating cao trước, rồi productId. Thêm / xóa / đổi vị trí một product là
+ * O(log n) trên TreeSet; trang /promotions và /api/promotions đọc một lát cắt theo cursor (keyset
+ * trên khóa sắp xếp) mà không query database (thẻ sản phẩm vẫn đọc qua catalog cache).
+ * <p>
+ * PromotionScheduler dựng lại index khi promotion được sửa và cập nhật đúng các product của
+ * promotion vừa bắt đầu / kết thúc; ProductService báo khi product được lưu / xóa / đổi rating.
+ */
+@Component
+public class PromotedProductIndex {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PricingEngine pricingEngine;
+
+    /**
+     * Khóa sắp xếp, mức giảm (basis point) và rating (phần nghìn) gộp vào một long
+     * để đi được trong ProductCursor.sortKey
+     */
+    record Key(long sortKey, int productId) {
+
+        static final Comparator<Key> ORDER = Comparator.comparingLong(Key::sortKey).reversed()
+                .thenComparingInt(Key::productId);
+
+        static Key of(int productId, double discount, Double rating) {
+            long discountBasisPoints = Math.max(0, Math.min(10_000, Math.round(discount * 10_000)));
+            long ratingMillis = rating == null ? 0 : Math.max(0, Math.min(9_999, Math.round(rating * 1_000)));
+            return new Key(discountBasisPoints * 10_000 + ratingMillis, productId);
+        }
+    }
+
+    private record Entry(Key key, Integer promotionId) {
+    }
+
+    /**
+     * Một trang của listing khuyến mãi (cùng ý nghĩa với ProductService.ProductSlice)
+     */
+    public record Slice(List<Integer> productIds, int pageNumber, int totalPages, long totalElements,
+                        String nextCursor, String prevCursor) {
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableSet<Key> order = new TreeSet<>(Key.ORDER);
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final Map<Integer, Set<Integer>> productsByPromotion = new HashMap<>();
+
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Dựng lại toàn bộ (khởi động, admin sửa promotion): một query [productId, rating, promotionId]
+     * của các product có gắn promotion, mức giảm lấy từ PricingEngine
+     */
+    public void rebuild() {
+        try {
+            List<Object[]> rows = productRepository.findPromotedRows();
+            List<PricingEngine.Price> prices = pricesOf(rows);
+            lock.writeLock().lock();
+            try {
+                order.clear();
+                entries.clear();
+                productsByPromotion.clear();
+                for (int i = 0; i < rows.size(); i++) {
+                    put((Integer) rows.get(i)[0], (Double) rows.get(i)[1], prices.get(i));
+                }
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR building promoted product index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Các promotion vừa bắt đầu / kết thúc: gỡ product của promotion kết thúc, thêm product của promotion bắt đầu
+     */
+    public void onPromotionsChanged(Collection<Integer> started, Collection<Integer> ended) {
+        if (!ready) return;
+        List<Object[]> rows = started.isEmpty() ? List.of() : productRepository.findPromotedRowsByPromotionIdIn(started);
+        List<PricingEngine.Price> prices = pricesOf(rows);
+        lock.writeLock().lock();
+        try {
+            for (Integer promotionId : ended) {
+                for (Integer productId : new ArrayList<>(productsByPromotion.getOrDefault(promotionId, Set.of()))) {
+                    remove(productId);
+                }
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                put((Integer) rows.get(i)[0], (Double) rows.get(i)[1], prices.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Product vừa được lưu (giá / promotion / rating có thể đổi). Chạy sau commit, sau khi
+     * PricingEngine đã nhận giá mới (đăng ký afterCommit trước)
+     */
+    public void onProductSaved(Product product) {
+        Integer productId = product.getProductId();
+        Double rating = product.getRating();
+        TransactionHooks.afterCommit(() -> update(productId, rating));
+    }
+
+    public void onRatingChanged(Product product) {
+        Integer productId = product.getProductId();
+        Double rating = product.getRating();
+        TransactionHooks.afterCommit(() -> {
+            PricingEngine.Price price = pricingEngine.price(productId);
+            lock.writeLock().lock();
+            try {
+                if (entries.containsKey(productId)) {
+                    put(productId, rating, price);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void onProductDeleted(Integer productId) {
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                remove(productId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Đọc một trang theo cursor, cùng quy ước với ProductService.seek (size + 1 dòng để biết còn trang sau)
+     */
+    public Slice slice(ProductCursor cursor, int size) {
+        lock.readLock().lock();
+        try {
+            boolean forward = cursor == null || cursor.forward();
+            int page = cursor == null ? 0 : cursor.page();
+            NavigableSet<Key> range;
+            if (cursor == null) {
+                range = order;
+            } else {
+                Key from = new Key(cursor.sortKey(), cursor.productId());
+                range = forward ? order.tailSet(from, false) : order.headSet(from, false).descendingSet();
+            }
+            List<Key> rows = new ArrayList<>(size + 1);
+            Iterator<Key> iterator = range.iterator();
+            while (iterator.hasNext() && rows.size() <= size) {
+                rows.add(iterator.next());
+            }
+
+            boolean hasNext;
+            boolean hasPrev;
+            if (forward) {
+                hasNext = rows.size() > size;
+                hasPrev = page > 0;
+            } else {
+                hasPrev = rows.size() > size;
+                hasNext = true;
+                if (!hasPrev) page = 0; // Đã về tới đầu danh sách
+            }
+            if (rows.size() > size) {
+                rows = new ArrayList<>(rows.subList(0, size));
+            }
+            if (!forward) {
+                Collections.reverse(rows);
+            }
+            long total = entries.size();
+            int totalPages = (int) ((total + size - 1) / size);
+
+            String nextCursor = null;
+            String prevCursor = null;
+            if (!rows.isEmpty()) {
+                Key first = rows.get(0);
+                Key last = rows.get(rows.size() - 1);
+                if (hasNext) nextCursor = ProductCursor.after(last.sortKey(), last.productId(), page + 1).encode();
+                if (hasPrev) prevCursor = ProductCursor.before(first.sortKey(), first.productId(), page - 1).encode();
+            }
+            List<Integer> productIds = rows.stream().map(Key::productId).toList();
+            return new Slice(productIds, page, Math.max(totalPages, page + 1), total, nextCursor, prevCursor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ===== Cập nhật (gọi khi đang giữ write lock) =====
+
+    // Giá đọc từ PricingEngine trước khi lấy write lock (có thể phải query nếu product chưa có trong snapshot)
+    private void update(Integer productId, Double rating) {
+        PricingEngine.Price price = pricingEngine.price(productId);
+        lock.writeLock().lock();
+        try {
+            put(productId, rating, price);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<PricingEngine.Price> pricesOf(List<Object[]> rows) {
+        List<PricingEngine.Price> prices = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            prices.add(pricingEngine.price((Integer) row[0]));
+        }
+        return prices;
+    }
+
+    // Thêm / đổi vị trí product nếu đang giảm giá, nếu không thì gỡ khỏi index
+    private void put(Integer productId, Double rating, PricingEngine.Price price) {
+        remove(productId);
+        if (price == null || !price.isDiscounted()) return;
+        Entry entry = new Entry(Key.of(productId, price.discount(), rating), price.promotionId());
+        entries.put(productId, entry);
+        order.add(entry.key());
+        productsByPromotion.computeIfAbsent(entry.promotionId(), id -> new HashSet<>()).add(productId);
+    }
+
+    private void remove(Integer productId) {
+        Entry entry = entries.remove(productId);
+        if (entry == null) return;
+        order.remove(entry.key());
+        Set<Integer> products = productsByPromotion.get(entry.promotionId());
+        if (products != null) {
+            products.remove(productId);
+            if (products.isEmpty()) productsByPromotion.remove(entry.promotionId());
+        }
+    }
+}
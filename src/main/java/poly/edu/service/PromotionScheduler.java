@@ -0,0 +1,243 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import poly.edu.model.Product;
+import poly.edu.model.Promotion;
+import poly.edu.repository.ProductRepository;
+import poly.edu.repository.PromotionRepository;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lịch bật / tắt promotion theo ngày bắt đầu / kết thúc.
+ * <p>
+ * Giữ một min-heap các mốc (đầu ngày bắt đầu, đầu ngày sau ngày kết thúc) của các promotion đang bật.
+ * Job định kỳ chỉ nhìn đỉnh heap: tới mốc thì tính lại đúng các promotion có mốc đó, đổi tập promotion
+ * đang hiệu lực và cập nhật cờ Product.OnSale của các product bị ảnh hưởng bằng một câu UPDATE cho mỗi
+ * chiều (bật / tắt) trong cùng một transaction, rồi cập nhật PromotedProductIndex theo đúng các promotion đó
+ * và cho PricingEngine tính lại giá (đây là đồng hồ duy nhất của các mốc promotion).
+ * SKU nóng, facet "có khuyến mãi" và listing promotion chỉ đọc cờ OnSale (có index), tập id hoặc index
+ * trong bộ nhớ, không so CURRENT_DATE / tạo Date ở mỗi lần gọi.
+ */
+@Component
+public class PromotionScheduler {
+
+    @Autowired
+    private PromotionRepository promotionRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PricingEngine pricingEngine;
+
+    @Autowired
+    private InventoryLedger inventoryLedger;
+
+    @Autowired
+    private CatalogCache catalogCache;
+
+    @Autowired
+    private ListingCountCache listingCountCache;
+
+    @Autowired
+    private PromotedProductIndex promotedProductIndex;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private record Boundary(long atMillis, Integer promotionId) {
+    }
+
+    // Chỉ một lượt tick / reschedule chạy tại một thời điểm và không thread nào chờ lượt đó (kể cả lúc chạy UPDATE):
+    // lượt tới sau chỉ tryLock, tick bỏ qua tới lần sau, reschedule để lại yêu cầu cho lượt đang chạy làm tiếp
+    private final ReentrantLock flipLock = new ReentrantLock();
+    private final AtomicBoolean rescheduleRequested = new AtomicBoolean();
+
+    // Các mốc sắp tới, mốc gần nhất ở đỉnh (chỉ truy cập khi giữ flipLock)
+    private final PriorityQueue<Boundary> boundaries = new PriorityQueue<>(Comparator.comparingLong(Boundary::atMillis));
+    private Map<Integer, PromotionWindow> windows = Map.of();
+
+    private volatile Set<Integer> activePromotionIds = Set.of();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            reschedule();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR starting promotion scheduler: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Đọc lại toàn bộ promotion, dựng lại heap và đối soát cờ OnSale của mọi product
+     * (khi khởi động và sau khi admin thêm / sửa / xóa promotion).
+     * Đang có lượt khác chạy thì trả về ngay, lượt đó dựng lại trước khi nhả lock
+     */
+    public void reschedule() {
+        rescheduleRequested.set(true);
+        while (rescheduleRequested.get() && flipLock.tryLock()) {
+            try {
+                if (rescheduleRequested.getAndSet(false)) {
+                    rebuild();
+                }
+            } finally {
+                flipLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Xử lý các mốc đã tới: chỉ tính lại các promotion có mốc trên đỉnh heap
+     */
+    @Scheduled(fixedDelayString = "${promotion.scheduler.tick-ms:30000}")
+    public void tick() {
+        if (!flipLock.tryLock()) return;
+        try {
+            advance();
+        } finally {
+            flipLock.unlock();
+        }
+        // reschedule gọi trong lúc tick chạy đã trả về ngay
+        if (rescheduleRequested.get()) {
+            reschedule();
+        }
+    }
+
+    private void rebuild() {
+        LocalDate today = LocalDate.now();
+        Map<Integer, PromotionWindow> loaded = new HashMap<>();
+        Set<Integer> active = new HashSet<>();
+        boundaries.clear();
+        for (Promotion promotion : promotionRepository.findAll()) {
+            PromotionWindow window = PromotionWindow.of(promotion);
+            loaded.put(window.promotionId(), window);
+            if (window.activeOn(today)) {
+                active.add(window.promotionId());
+            }
+            push(window, today);
+        }
+        windows = Map.copyOf(loaded);
+
+        Set<Integer> activeIds = Set.copyOf(active);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            if (activeIds.isEmpty()) {
+                productRepository.clearOnSale();
+            } else {
+                productRepository.clearOnSaleExcept(activeIds);
+                productRepository.updateOnSaleByPromotionIdIn(activeIds, true);
+            }
+        });
+        Set<Integer> ended = new HashSet<>(activePromotionIds);
+        ended.removeAll(activeIds);
+        activePromotionIds = activeIds;
+        afterFlip(ended);
+        promotedProductIndex.rebuild();
+    }
+
+    private void advance() {
+        long now = System.currentTimeMillis();
+        if (boundaries.isEmpty() || boundaries.peek().atMillis() > now) return;
+
+        Set<Integer> due = new HashSet<>();
+        while (!boundaries.isEmpty() && boundaries.peek().atMillis() <= now) {
+            due.add(boundaries.poll().promotionId());
+        }
+
+        LocalDate today = LocalDate.now();
+        Set<Integer> active = new HashSet<>(activePromotionIds);
+        Set<Integer> started = new HashSet<>();
+        Set<Integer> ended = new HashSet<>();
+        for (Integer promotionId : due) {
+            PromotionWindow window = windows.get(promotionId);
+            boolean nowActive = window != null && window.activeOn(today);
+            if (nowActive && active.add(promotionId)) {
+                started.add(promotionId);
+            } else if (!nowActive && active.remove(promotionId)) {
+                ended.add(promotionId);
+            }
+        }
+
+        if (!started.isEmpty() || !ended.isEmpty()) {
+            try {
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    if (!ended.isEmpty()) productRepository.updateOnSaleByPromotionIdIn(ended, false);
+                    if (!started.isEmpty()) productRepository.updateOnSaleByPromotionIdIn(started, true);
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.err.println("ERROR flipping promotions " + started + " / " + ended + ", will retry: " + e.getMessage());
+                // Đưa đúng các mốc vừa lấy lại heap (chưa đẩy mốc kế tiếp), lần tick sau thử tiếp
+                for (Integer promotionId : due) {
+                    boundaries.add(new Boundary(now, promotionId));
+                }
+                return;
+            }
+            activePromotionIds = Set.copyOf(active);
+            afterFlip(ended);
+            promotedProductIndex.onPromotionsChanged(started, ended);
+        }
+
+        // Đã đổi xong: đẩy mốc kế tiếp (promotion vừa bắt đầu còn mốc kết thúc)
+        for (Integer promotionId : due) {
+            PromotionWindow window = windows.get(promotionId);
+            if (window != null) {
+                push(window, today);
+            }
+        }
+    }
+
+    /**
+     * Product vừa được lưu: cập nhật cờ OnSale theo promotion đang gắn (chạy trong transaction của ProductService)
+     */
+    public void onProductSaved(Product product) {
+        productRepository.updateOnSale(product.getProductId(), isActive(product.getPromotionId()));
+    }
+
+    public boolean isActive(Integer promotionId) {
+        return promotionId != null && activePromotionIds.contains(promotionId);
+    }
+
+    public Set<Integer> getActivePromotionIds() {
+        return activePromotionIds;
+    }
+
+    // Mốc kế tiếp của promotion tính từ ngày day (bắt đầu nếu chưa tới, nếu không thì kết thúc)
+    private void push(PromotionWindow window, LocalDate day) {
+        LocalDate boundary = window.startBoundaryAfter(day);
+        if (boundary == null) {
+            boundary = window.endBoundaryAfter(day);
+        }
+        if (boundary != null) {
+            boundaries.add(new Boundary(PromotionWindow.toMillis(boundary), window.promotionId()));
+        }
+    }
+
+    // Tập promotion hiệu lực vừa đổi: giá (PricingEngine không tự theo dõi mốc), SKU nóng
+    // (bỏ track SKU của promotion vừa kết thúc), listing / số đếm đã cache
+    private void afterFlip(Set<Integer> ended) {
+        pricingEngine.rollOver();
+        if (!ended.isEmpty()) {
+            inventoryLedger.untrack(productRepository.findIdsByPromotionIdIn(ended));
+        }
+        inventoryLedger.trackActivePromotions();
+        catalogCache.invalidateAll();
+        listingCountCache.invalidateAll();
+    }
+}
@@ -14,6 +14,15 @@ public class PromotionService {
     
     @Autowired
     private PromotionRepository promotionRepository;
+
+    @Autowired
+    private CartSummaryCache cartSummaryCache;
+
+    @Autowired
+    private PromotionScheduler promotionScheduler;
+
+    @Autowired
+    private PricingEngine pricingEngine;
     
     // Lấy tất cả promotion
     public List<Promotion> getAllPromotions() {
@@ -30,9 +39,9 @@ public class PromotionService {
         return promotionRepository.findByStatusTrue();
     }
     
-    // Lấy promotion hợp lệ (active và trong thời gian)
+    // Lấy promotion hợp lệ (active và trong thời gian), theo tập id PromotionScheduler đang giữ
     public List<Promotion> getValidPromotions() {
-        return promotionRepository.findActivePromotions(new Date());
+        return promotionRepository.findAllById(promotionScheduler.getActivePromotionIds());
     }
     
     // Tạo promotion mới
@@ -40,7 +49,11 @@ public class PromotionService {
         if (promotion.getStatus() == null) {
             promotion.setStatus(true);
         }
-        return promotionRepository.save(promotion);
+        Promotion saved = promotionRepository.save(promotion);
+        pricingEngine.refreshPromotions();
+        promotionScheduler.reschedule();
+        cartSummaryCache.invalidateAll();
+        return saved;
     }
     
     // Cập nhật promotion
@@ -54,7 +67,11 @@ public class PromotionService {
             p.setStartDate(promotion.getStartDate());
             p.setEndDate(promotion.getEndDate());
             p.setStatus(promotion.getStatus());
-            return promotionRepository.save(p);
+            Promotion saved = promotionRepository.save(p);
+            pricingEngine.refreshPromotions();
+            promotionScheduler.reschedule();
+            cartSummaryCache.invalidateAll();
+            return saved;
         }
         return null;
     }
@@ -63,6 +80,9 @@ public class PromotionService {
     public boolean deletePromotion(Integer id) {
         if (promotionRepository.existsById(id)) {
             promotionRepository.deleteById(id);
+            pricingEngine.refreshPromotions();
+            promotionScheduler.reschedule();
+            cartSummaryCache.invalidateAll();
             return true;
         }
         return false;
@@ -78,4 +98,4 @@ public class PromotionService {
         
         return true;
     }
-}
\ No newline at end of file
+}
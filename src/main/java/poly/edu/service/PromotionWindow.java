@@ -0,0 +1,42 @@
+package poly.edu.service;
+
+import poly.edu.model.Promotion;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Bản sao bất biến của khoảng hiệu lực một promotion (startDate / endDate tính trọn ngày,
+ * cùng quy tắc Promotion.isActiveOn), dùng chung cho PricingEngine và PromotionScheduler.
+ */
+record PromotionWindow(Integer promotionId, double discount, boolean enabled, LocalDate start, LocalDate end) {
+
+    static PromotionWindow of(Promotion promotion) {
+        return new PromotionWindow(promotion.getId(),
+                promotion.getDiscount() != null ? promotion.getDiscount() : 0.0,
+                Boolean.TRUE.equals(promotion.getStatus()),
+                Promotion.toLocalDate(promotion.getStartDate()),
+                Promotion.toLocalDate(promotion.getEndDate()));
+    }
+
+    boolean activeOn(LocalDate day) {
+        if (!enabled) return false;
+        if (start != null && start.isAfter(day)) return false;
+        if (end != null && end.isBefore(day)) return false;
+        return true;
+    }
+
+    // Đầu ngày bắt đầu, null nếu đã bắt đầu trước / trong ngày day
+    LocalDate startBoundaryAfter(LocalDate day) {
+        return enabled && start != null && start.isAfter(day) ? start : null;
+    }
+
+    // Đầu ngày sau ngày kết thúc, null nếu đã kết thúc trước ngày day
+    LocalDate endBoundaryAfter(LocalDate day) {
+        return enabled && end != null && !end.isBefore(day) ? end.plusDays(1) : null;
+    }
+
+    static long toMillis(LocalDate day) {
+        return day.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
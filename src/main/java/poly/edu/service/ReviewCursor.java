@@ -0,0 +1,34 @@
+package poly.edu.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Cursor cho review feed: (reviewDate, reviewId) của review cuối trang trước.
+ * Client chỉ thấy chuỗi base64, decode lỗi = trang đầu (giống ProductCursor).
+ */
+public record ReviewCursor(LocalDateTime reviewDate, int reviewId) {
+
+    public String encode() {
+        String raw = reviewDate + "|" + reviewId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Giải mã cursor từ query string, trả về null nếu rỗng hoặc không hợp lệ
+     */
+    public static ReviewCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            if (separator < 0) return null;
+            return new ReviewCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    Integer.parseInt(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return null;
+        }
+    }
+}
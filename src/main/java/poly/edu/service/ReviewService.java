@@ -1,12 +1,18 @@
 package poly.edu.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import poly.edu.model.Product;
 import poly.edu.model.Review;
+import poly.edu.model.ReviewView;
 import poly.edu.repository.ProductRepository;
 import poly.edu.repository.ReviewRepository;
+import poly.edu.util.TinyLfuCache;
+import poly.edu.util.TransactionHooks;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -20,12 +26,59 @@ public class ReviewService {
     @Autowired
     private ProductRepository productRepository;
 
-    public List<Review> getReviewsByProduct(Integer productId) {
-        return reviewRepository.findByProductIdOrderByReviewDateDesc(productId);
+    @Autowired
+    private ProductService productService;
+
+    @Value("${review.feed.page-size:10}")
+    private int pageSize;
+
+    // productId -> trang đầu của review feed (trang được xem nhiều nhất, mỗi lần mở chi tiết sản phẩm)
+    private final TinyLfuCache<Integer, ReviewPage> firstPages = new TinyLfuCache<>("reviewFirstPages", 1_000);
+
+    /**
+     * Một trang review feed
+     *
+     * @param nextCursor null nếu đã hết review
+     */
+    public record ReviewPage(List<ReviewView> reviews, String nextCursor) {
+    }
+
+    /**
+     * Review của sản phẩm, mới nhất trước, theo cursor (keyset, không OFFSET).
+     * Trang đầu được cache theo productId tới khi sản phẩm có review mới.
+     */
+    public ReviewPage getReviewFeed(Integer productId, String cursor) {
+        ReviewCursor position = ReviewCursor.decode(cursor);
+        if (position == null) {
+            return firstPages.get(productId, id -> loadPage(id, null));
+        }
+        return loadPage(productId, position);
+    }
+
+    public TinyLfuCache.Stats getFirstPageCacheStats() {
+        return firstPages.stats();
+    }
+
+    // Lấy pageSize + 1 dòng để biết còn trang sau hay không
+    private ReviewPage loadPage(Integer productId, ReviewCursor position) {
+        Limit limit = Limit.of(pageSize + 1);
+        List<ReviewView> rows = position == null
+                ? reviewRepository.findFeed(productId, limit)
+                : reviewRepository.findFeedAfter(productId, position.reviewDate(), position.reviewId(), limit);
+        if (rows.size() <= pageSize) {
+            return new ReviewPage(List.copyOf(rows), null);
+        }
+        List<ReviewView> page = List.copyOf(rows.subList(0, pageSize));
+        ReviewView last = page.get(pageSize - 1);
+        return new ReviewPage(page, new ReviewCursor(last.reviewDate(), last.reviewId()).encode());
     }
 
     @Transactional
     public void addReview(Integer accountId, Integer productId, String content, Integer rating) {
+        if (rating == null || rating < 1 || rating > 5) {
+            throw new IllegalArgumentException("Rating must be between 1 and 5: " + rating);
+        }
+
         // 1. Lưu Review mới
         Review review = new Review();
         review.setAccountId(accountId);
@@ -34,29 +87,42 @@ public class ReviewService {
         review.setRating(rating);
         review.setReviewDate(LocalDateTime.now());
         reviewRepository.save(review);
+        invalidateFirstPageAfterCommit(productId);
 
-        // 2. Tính toán lại Rating trung bình cho Product
-        updateProductAverageRating(productId);
+        // 2. Cộng review vào tổng hợp rating của Product (O(1), Rating trung bình tính trong cùng câu UPDATE)
+        if (productRepository.addRatingToAggregates(productId, rating) > 0) {
+            // Rating mới cập nhật luôn thứ hạng search / gợi ý
+            productService.onRatingChanged(productId);
+        }
     }
 
-    private void updateProductAverageRating(Integer productId) {
-        List<Review> reviews = reviewRepository.findByProductIdOrderByReviewDateDesc(productId);
-        if (reviews.isEmpty()) return;
+    // Bỏ trang đầu sau commit, để request khác không kịp nạp lại bản chưa có review mới
+    private void invalidateFirstPageAfterCommit(Integer productId) {
+        TransactionHooks.afterCommit(() -> firstPages.invalidate(productId));
+    }
 
-        double totalRating = 0;
-        for (Review r : reviews) {
-            totalRating += r.getRating();
-        }
-        
-        double average = totalRating / reviews.size();
-        
-        // Làm tròn 1 chữ số thập phân
-        average = Math.round(average * 10.0) / 10.0;
-
-        Product product = productRepository.findById(productId).orElse(null);
-        if (product != null) {
-            product.setRating(average); 
-            productRepository.save(product);
+    /**
+     * Tính lại tổng hợp rating của mọi product từ bảng Review (một câu GROUP BY)
+     *
+     * @return số product được cập nhật
+     */
+    public int rebuildRatingAggregates() {
+        return productRepository.rebuildRatingAggregates();
+    }
+
+    /**
+     * Chạy rebuild một lần khi tổng hợp lệch với bảng Review (lần đầu sau khi thêm các cột tổng hợp)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildRatingAggregatesIfStale() {
+        try {
+            long missing = productRepository.countUnaggregatedReviews();
+            if (missing != 0) {
+                rebuildRatingAggregates();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR rebuilding rating aggregates: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,158 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import poly.edu.model.Category;
+import poly.edu.model.Order;
+import poly.edu.model.ProductCard;
+import poly.edu.model.SalesPoint;
+import poly.edu.model.SalesRollup;
+import poly.edu.model.SalesRollup.Dimension;
+import poly.edu.model.SalesRollup.Grain;
+import poly.edu.model.SalesTotal;
+import poly.edu.repository.CategoryRepository;
+import poly.edu.repository.OrderDetailRepository;
+import poly.edu.repository.ProductRepository;
+import poly.edu.repository.SalesRollupJdbcRepository;
+import poly.edu.repository.SalesRollupJdbcRepository.Delta;
+import poly.edu.repository.SalesRollupRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Thống kê bán hàng theo giờ / ngày / tháng, tổng và theo category / product.
+ * <p>
+ * Số liệu nằm sẵn trong bảng SalesRollup: mỗi lần đơn vào / ra khỏi trạng thái Delivered
+ * (OrderService.updateOrderStatus) thì cộng / trừ các dòng của đơn vào đúng kỳ theo OrderDate,
+ * trong cùng transaction với việc đổi trạng thái. Biểu đồ chỉ đọc số kỳ nằm trong khoảng được hỏi,
+ * không phụ thuộc số đơn trong lịch sử. SalesRollupBackfill dựng lại bảng từ lịch sử đơn hàng.
+ */
+@Service
+public class SalesAnalytics {
+
+    // Số kỳ tối đa của một biểu đồ
+    public static final int MAX_POINTS = 2000;
+
+    @Autowired
+    private OrderDetailRepository orderDetailRepository;
+
+    @Autowired
+    private SalesRollupRepository salesRollupRepository;
+
+    @Autowired
+    private SalesRollupJdbcRepository salesRollupJdbcRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    // Khóa cộng dồn delta của một đơn: (dimension, dimensionId)
+    private record Key(Dimension dimension, int dimensionId) {
+    }
+
+    private static final class Sums {
+        double revenue;
+        long units;
+    }
+
+    // ===== Cập nhật =====
+
+    /**
+     * Đơn đổi trạng thái from -> to (chạy trong transaction của OrderService): vào Delivered thì cộng,
+     * ra khỏi Delivered thì trừ các dòng của đơn, cho cả ba grain
+     */
+    public void onOrderStatusChanged(Integer orderId, LocalDateTime orderDate, Integer from, Integer to) {
+        int sign = (isDelivered(to) ? 1 : 0) - (isDelivered(from) ? 1 : 0);
+        if (sign == 0 || orderDate == null) return;
+
+        Map<Key, Sums> sums = new HashMap<>();
+        for (Object[] row : orderDetailRepository.findRollupRowsByOrderId(orderId)) {
+            Integer productId = (Integer) row[0];
+            Integer categoryId = (Integer) row[1];
+            int quantity = ((Number) row[2]).intValue();
+            double amount = ((Number) row[3]).doubleValue() * quantity;
+            add(sums, new Key(Dimension.ALL, 0), quantity, amount);
+            add(sums, new Key(Dimension.PRODUCT, productId), quantity, amount);
+            if (categoryId != null) {
+                add(sums, new Key(Dimension.CATEGORY, categoryId), quantity, amount);
+            }
+        }
+        if (sums.isEmpty()) return;
+
+        List<Delta> deltas = new ArrayList<>(sums.size() * Grain.values().length);
+        for (Grain grain : Grain.values()) {
+            LocalDateTime period = grain.truncate(orderDate);
+            for (Map.Entry<Key, Sums> entry : sums.entrySet()) {
+                Key key = entry.getKey();
+                Sums value = entry.getValue();
+                deltas.add(new Delta(grain, key.dimension(), key.dimensionId(), period,
+                        sign, sign * value.revenue, sign * value.units));
+            }
+        }
+        salesRollupJdbcRepository.applyDeltas(deltas);
+    }
+
+    // ===== Đọc =====
+
+    /**
+     * Các kỳ trong [from, to) của một dimension (ALL: dimensionId = 0), kỳ trống có giá trị 0
+     */
+    public List<SalesPoint> series(Grain grain, Dimension dimension, Integer dimensionId,
+                                   LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = grain.truncate(from);
+        Integer id = dimension == Dimension.ALL ? Integer.valueOf(0) : dimensionId;
+        Map<LocalDateTime, SalesRollup> rows = salesRollupRepository
+                .findSeries(grain.name(), dimension.name(), id, start, to).stream()
+                .collect(Collectors.toMap(SalesRollup::getPeriodStart, Function.identity()));
+
+        List<SalesPoint> points = new ArrayList<>();
+        for (LocalDateTime period = start; period.isBefore(to) && points.size() < MAX_POINTS; period = grain.next(period)) {
+            SalesRollup rollup = rows.get(period);
+            points.add(rollup != null ? SalesPoint.of(rollup) : SalesPoint.empty(period));
+        }
+        return points;
+    }
+
+    /**
+     * Category / product bán chạy nhất (theo doanh thu) trong [from, to), cộng từ các dòng rollup của grain
+     */
+    public List<SalesTotal> top(Grain grain, Dimension dimension, LocalDateTime from, LocalDateTime to, int limit) {
+        List<SalesTotal> totals = salesRollupRepository.findTotals(grain.name(), dimension.name(),
+                grain.truncate(from), to, PageRequest.of(0, limit));
+        if (totals.isEmpty() || dimension == Dimension.ALL) return totals;
+
+        Map<Integer, String> names = new HashMap<>();
+        if (dimension == Dimension.CATEGORY) {
+            for (Category category : categoryRepository.findAll()) {
+                names.put(category.getCategoryId().intValue(), category.getName());
+            }
+        } else {
+            List<Integer> ids = totals.stream().map(SalesTotal::dimensionId).toList();
+            for (ProductCard card : productRepository.findCardsByIdIn(ids)) {
+                names.put(card.productId(), card.name());
+            }
+        }
+        return totals.stream().map(total -> total.withName(names.get(total.dimensionId()))).toList();
+    }
+
+    // ===== Tiện ích =====
+
+    private static boolean isDelivered(Integer statusId) {
+        return statusId != null && statusId == Order.DELIVERED;
+    }
+
+    private static void add(Map<Key, Sums> sums, Key key, int quantity, double amount) {
+        Sums value = sums.computeIfAbsent(key, k -> new Sums());
+        value.units += quantity;
+        value.revenue += amount;
+    }
+}
@@ -0,0 +1,149 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import poly.edu.model.SalesRollup.Grain;
+import poly.edu.repository.SalesRollupJdbcRepository;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Dựng bảng SalesRollup từ lịch sử đơn hàng (lần đầu bật analytics, hoặc admin bấm chạy lại).
+ * <p>
+ * Chạy nền, từng tháng một, mỗi tháng một transaction: xóa rollup của tháng rồi INSERT ... SELECT GROUP BY
+ * trên các đơn Delivered của tháng đó. Biểu đồ vẫn đọc được trong lúc chạy (tháng chưa tới lượt giữ số cũ).
+ * Đơn của tháng đang dựng mà đổi trạng thái cùng lúc thì hai bên chờ lock của nhau (delta cộng lên số mới);
+ * nếu thành deadlock thì tháng đó được đếm vào failedMonths và giữ số cũ.
+ * Rollup ngoài khoảng có đơn Delivered được xóa trong transaction của tháng cuối, theo khoảng đọc lại lúc đó.
+ */
+@Component
+public class SalesRollupBackfill {
+
+    @Autowired
+    private SalesRollupJdbcRepository salesRollupJdbcRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${analytics.backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    /**
+     * Tiến độ lần chạy gần nhất
+     */
+    public record Status(boolean running, int monthsDone, int monthsTotal, int failedMonths, long rowsWritten,
+                         LocalDateTime startedAt, LocalDateTime finishedAt) {
+    }
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile Status status = new Status(false, 0, 0, 0, 0, null, null);
+
+    /**
+     * Bảng rollup còn trống (vừa tạo) thì tự dựng từ lịch sử
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (!backfillOnStartup) return;
+        try {
+            if (salesRollupJdbcRepository.isEmpty()) {
+                run();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR checking sales rollups: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Dựng lại toàn bộ (admin), bỏ qua nếu đang chạy
+     */
+    @Async
+    public void start() {
+        run();
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    private void run() {
+        if (!running.compareAndSet(false, true)) return;
+        LocalDateTime startedAt = LocalDateTime.now();
+        int done = 0;
+        int failed = 0;
+        long rows = 0;
+        try {
+            LocalDateTime[] range = salesRollupJdbcRepository.findDeliveredRange();
+            if (range == null) {
+                salesRollupJdbcRepository.deleteAll();
+                status = new Status(false, 0, 0, 0, 0, startedAt, LocalDateTime.now());
+                return;
+            }
+            LocalDateTime first = Grain.MONTH.truncate(range[0]);
+            LocalDateTime end = Grain.MONTH.next(Grain.MONTH.truncate(range[1]));
+            int total = 0;
+            for (LocalDateTime month = first; month.isBefore(end); month = month.plusMonths(1)) {
+                total++;
+            }
+            status = new Status(true, 0, total, 0, 0, startedAt, null);
+
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            for (LocalDateTime month = first; month.isBefore(end); month = month.plusMonths(1)) {
+                LocalDateTime from = month;
+                LocalDateTime to = month.plusMonths(1);
+                boolean last = !to.isBefore(end);
+                try {
+                    Integer written = transaction.execute(s -> {
+                        int monthRows = salesRollupJdbcRepository.rebuild(from, to);
+                        if (last) {
+                            deleteOutsideDelivered(first, end);
+                        }
+                        return monthRows;
+                    });
+                    rows += written != null ? written : 0;
+                } catch (Exception e) {
+                    // Tháng lỗi (deadlock với đơn đang đổi trạng thái...) giữ số cũ, chạy lại backfill để sửa
+                    e.printStackTrace();
+                    System.err.println("ERROR rebuilding sales rollups for " + from.toLocalDate() + ": " + e.getMessage());
+                    failed++;
+                }
+                done++;
+                status = new Status(true, done, total, failed, rows, startedAt, null);
+            }
+            status = new Status(false, done, total, failed, rows, startedAt, LocalDateTime.now());
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR in sales rollup backfill: " + e.getMessage());
+            status = new Status(false, done, status.monthsTotal(), failed, rows, startedAt, LocalDateTime.now());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Đọc lại khoảng ngay trước khi xóa: đơn giao trong lúc backfill chạy (tháng mới, đơn cũ vừa chuyển Delivered)
+    // đã được applyDeltas ghi vào rollup ngoài [first, end) và phải giữ lại
+    private void deleteOutsideDelivered(LocalDateTime first, LocalDateTime end) {
+        LocalDateTime from = first;
+        LocalDateTime to = end;
+        LocalDateTime[] range = salesRollupJdbcRepository.findDeliveredRange();
+        if (range != null) {
+            LocalDateTime rangeFrom = Grain.MONTH.truncate(range[0]);
+            LocalDateTime rangeTo = Grain.MONTH.next(Grain.MONTH.truncate(range[1]));
+            if (rangeFrom.isBefore(from)) from = rangeFrom;
+            if (rangeTo.isAfter(to)) to = rangeTo;
+        }
+        salesRollupJdbcRepository.deleteOutside(from, to);
+    }
+}
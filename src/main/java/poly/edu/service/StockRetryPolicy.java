@@ -0,0 +1,139 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Retry có giới hạn (exponential backoff + jitter) cho các transaction ghi tồn kho bị xung đột
+ * (mỗi lần thử là một transaction mới, không ngủ khi đang giữ connection),
+ * kèm bộ đếm attempt / conflict / retry theo từng SKU để thấy SKU nào đang bị tranh chấp.
+ */
+@Component
+public class StockRetryPolicy {
+
+    public enum Outcome {
+        // Đã ghi
+        APPLIED,
+        // Không đủ hàng / không tìm thấy product, thử lại cũng vô ích
+        REJECTED,
+        // Version đã đổi giữa lúc đọc và lúc ghi
+        CONFLICT
+    }
+
+    /**
+     * Thống kê của một SKU
+     */
+    public record SkuContention(Integer productId, long attempts, long conflicts, long retries, long exhausted) {
+    }
+
+    /**
+     * @param checkoutRetries   số lần chạy lại transaction checkout (deadlock, lock timeout, optimistic lock)
+     * @param checkoutExhausted số lần checkout thất bại sau khi hết lượt thử
+     * @param skus              các SKU có nhiều conflict nhất
+     */
+    public record Stats(long checkoutRetries, long checkoutExhausted, List<SkuContention> skus) {
+    }
+
+    @Value("${stock.retry.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${stock.retry.initial-backoff-ms:5}")
+    private long initialBackoffMs;
+
+    @Value("${stock.retry.max-backoff-ms:200}")
+    private long maxBackoffMs;
+
+    private final Map<Integer, Counters> counters = new ConcurrentHashMap<>();
+    private final LongAdder checkoutRetries = new LongAdder();
+    private final LongAdder checkoutExhausted = new LongAdder();
+
+    private static final class Counters {
+        final LongAdder attempts = new LongAdder();
+        final LongAdder conflicts = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder exhausted = new LongAdder();
+    }
+
+    /**
+     * Chạy lại cả transaction (mỗi lần thử là một transaction mới, ví dụ TransactionTemplate.execute)
+     * cho tới khi lần giữ hàng không còn bị conflict, backoff giữa hai transaction. Hết lượt thử thì trả về
+     * kết quả conflict cuối. Gọi bên trong một transaction khác thì chỉ chạy một lần: ngủ khi đang giữ
+     * connection và lock dòng chỉ làm tranh chấp nặng hơn.
+     *
+     * @param conflicted kết quả nào nghĩa là version đã đổi giữa lúc đọc và lúc ghi
+     */
+    public <T> T run(Integer productId, Supplier<T> transaction, Predicate<T> conflicted) {
+        Counters sku = counters.computeIfAbsent(productId, id -> new Counters());
+        boolean nested = TransactionSynchronizationManager.isActualTransactionActive();
+        for (int n = 1; ; n++) {
+            sku.attempts.increment();
+            T result = transaction.get();
+            if (!conflicted.test(result)) {
+                return result;
+            }
+            sku.conflicts.increment();
+            if (nested || n >= maxAttempts) {
+                sku.exhausted.increment();
+                return result;
+            }
+            sku.retries.increment();
+            backoff(n);
+        }
+    }
+
+    /**
+     * Chạy lại cả transaction (mỗi lần là một transaction mới) khi gặp lỗi tranh chấp:
+     * deadlock, lock timeout hoặc optimistic lock lúc commit
+     */
+    public <T> T runTransaction(Supplier<T> transaction) {
+        for (int n = 1; ; n++) {
+            try {
+                return transaction.get();
+            } catch (ConcurrencyFailureException e) {
+                if (n >= maxAttempts) {
+                    checkoutExhausted.increment();
+                    System.err.println("Checkout conflict, giving up after " + n + " attempts: " + e.getMessage());
+                    throw e;
+                }
+                // Chỉ đếm (xem qua stats), không log từng lần thử lại
+                checkoutRetries.increment();
+                backoff(n);
+            }
+        }
+    }
+
+    public Stats stats(int limit) {
+        List<SkuContention> skus = counters.entrySet().stream()
+                .map(entry -> new SkuContention(entry.getKey(),
+                        entry.getValue().attempts.sum(),
+                        entry.getValue().conflicts.sum(),
+                        entry.getValue().retries.sum(),
+                        entry.getValue().exhausted.sum()))
+                .filter(sku -> sku.conflicts() > 0)
+                .sorted(Comparator.comparingLong(SkuContention::conflicts).reversed())
+                .limit(limit)
+                .toList();
+        return new Stats(checkoutRetries.sum(), checkoutExhausted.sum(), skus);
+    }
+
+    // Full jitter: ngủ ngẫu nhiên trong [0, min(max, initial * 2^(n-1))]
+    private void backoff(int attempt) {
+        long cap = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package poly.edu.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import poly.edu.model.Category;
+import poly.edu.model.Product;
+import poly.edu.repository.CategoryRepository;
+import poly.edu.repository.ProductRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prefix trie phục vụ gợi ý search-as-you-type (không truy vấn database).
+ * Mỗi node giữ sẵn top-k gợi ý của cả nhánh con (xếp theo rating), nên một lần
+ * lookup chỉ tốn O(độ dài prefix). Node con lưu trong mảng đã sort thay vì HashMap
+ * để tiết kiệm bộ nhớ; writer thay mảng mới thay vì sửa tại chỗ nên reader không cần lock.
+ */
+@Component
+public class SuggestionTrie {
+
+    // Số gợi ý tối đa giữ sẵn ở mỗi node
+    public static final int MAX_SUGGESTIONS = 10;
+
+    // Category luôn được ưu tiên trên product cùng prefix
+    private static final double CATEGORY_SCORE = 6.0;
+
+    private static final Comparator<Suggestion> RANKING = Comparator
+            .comparingDouble(Suggestion::score).reversed()
+            .thenComparing(Suggestion::text);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private volatile Node root = new Node();
+
+    // "product:12" / "category:3" -> gợi ý đang có trong trie (để cập nhật / xóa)
+    private final Map<String, Suggestion> entries = new HashMap<>();
+
+    /**
+     * Một gợi ý trả về cho client
+     *
+     * @param type "product" hoặc "category"
+     */
+    public record Suggestion(String text, String type, Number id, double score) {
+    }
+
+    /**
+     * Build lại toàn bộ trie từ Product và Category (chạy khi ứng dụng khởi động)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            List<Product> products = productRepository.findAll();
+            List<Category> categories = categoryRepository.findAll();
+            synchronized (this) {
+                root = new Node();
+                entries.clear();
+                for (Product product : products) {
+                    insert(productEntry(product));
+                }
+                for (Category category : categories) {
+                    insert(categoryEntry(category));
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR building suggestion trie: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lấy tối đa limit gợi ý có từ bắt đầu bằng prefix
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) return Collections.emptyList();
+
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        if (node == null) return Collections.emptyList();
+
+        Suggestion[] top = node.top;
+        return Arrays.asList(Arrays.copyOf(top, Math.min(limit, top.length)));
+    }
+
+    /**
+     * Thêm mới hoặc cập nhật gợi ý của một product
+     */
+    public synchronized void addProduct(Product product) {
+        if (product == null || product.getProductId() == null) return;
+        Suggestion entry = productEntry(product);
+        removeEntry(entryKey(entry));
+        insert(entry);
+    }
+
+    /**
+     * Xóa gợi ý của product
+     */
+    public synchronized void removeProduct(Integer productId) {
+        removeEntry("product:" + productId);
+    }
+
+    /**
+     * Thêm mới hoặc cập nhật gợi ý của một category
+     */
+    public synchronized void addCategory(Category category) {
+        if (category == null || category.getCategoryId() == null) return;
+        Suggestion entry = categoryEntry(category);
+        removeEntry(entryKey(entry));
+        insert(entry);
+    }
+
+    /**
+     * Xóa gợi ý của category
+     */
+    public synchronized void removeCategory(Long categoryId) {
+        removeEntry("category:" + categoryId);
+    }
+
+    // ===== Cập nhật trie (gọi trong synchronized) =====
+
+    private void insert(Suggestion entry) {
+        if (entry.text() == null || entry.text().isBlank()) return;
+        entries.put(entryKey(entry), entry);
+        for (String key : keysOf(entry.text())) {
+            List<Node> path = pathTo(key, true);
+            Node last = path.get(path.size() - 1);
+            last.terminals = append(last.terminals, entry);
+            // Entry mới chỉ có thể làm top-k tốt lên -> chèn vào từng node trên đường đi
+            for (Node node : path) {
+                node.top = offer(node.top, entry);
+            }
+        }
+    }
+
+    private void removeEntry(String entryKey) {
+        Suggestion entry = entries.remove(entryKey);
+        if (entry == null) return;
+        for (String key : keysOf(entry.text())) {
+            List<Node> path = pathTo(key, false);
+            if (path == null) continue;
+            Node last = path.get(path.size() - 1);
+            last.terminals = without(last.terminals, entry);
+
+            // Tính lại top-k từ dưới lên, bỏ các node không còn dữ liệu
+            for (int depth = path.size() - 1; depth >= 0; depth--) {
+                Node node = path.get(depth);
+                if (depth > 0 && node.terminals.length == 0 && node.isLeaf()) {
+                    path.get(depth - 1).removeChild(key.charAt(depth - 1));
+                    continue;
+                }
+                node.top = recompute(node);
+            }
+        }
+    }
+
+    private List<Node> pathTo(String key, boolean create) {
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        Node node = root;
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            Node next = node.child(key.charAt(i));
+            if (next == null) {
+                if (!create) return null;
+                next = node.addChild(key.charAt(i));
+            }
+            node = next;
+            path.add(node);
+        }
+        return path;
+    }
+
+    private static Suggestion[] recompute(Node node) {
+        Suggestion[] top = new Suggestion[0];
+        for (Suggestion entry : node.terminals) {
+            top = offer(top, entry);
+        }
+        for (Node child : node.children()) {
+            for (Suggestion entry : child.top) {
+                top = offer(top, entry);
+            }
+        }
+        return top;
+    }
+
+    // Chèn entry vào mảng top-k đã sort, trả về mảng mới (không sửa mảng cũ)
+    private static Suggestion[] offer(Suggestion[] top, Suggestion entry) {
+        for (Suggestion existing : top) {
+            if (existing.equals(entry)) return top;
+        }
+        int position = 0;
+        while (position < top.length && RANKING.compare(top[position], entry) <= 0) {
+            position++;
+        }
+        if (position >= MAX_SUGGESTIONS) return top;
+
+        int size = Math.min(top.length + 1, MAX_SUGGESTIONS);
+        Suggestion[] result = new Suggestion[size];
+        System.arraycopy(top, 0, result, 0, position);
+        result[position] = entry;
+        System.arraycopy(top, position, result, position + 1, size - position - 1);
+        return result;
+    }
+
+    private static Suggestion[] append(Suggestion[] array, Suggestion entry) {
+        Suggestion[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = entry;
+        return result;
+    }
+
+    private static Suggestion[] without(Suggestion[] array, Suggestion entry) {
+        return Arrays.stream(array).filter(e -> !e.equals(entry)).toArray(Suggestion[]::new);
+    }
+
+    // ===== Helpers =====
+
+    private static Suggestion productEntry(Product product) {
+        double rating = product.getRating() != null ? product.getRating() : 0.0;
+        return new Suggestion(product.getName(), "product", product.getProductId(), rating);
+    }
+
+    private static Suggestion categoryEntry(Category category) {
+        return new Suggestion(category.getName(), "category", category.getCategoryId(), CATEGORY_SCORE);
+    }
+
+    private static String entryKey(Suggestion entry) {
+        return entry.type() + ":" + entry.id();
+    }
+
+    // Mỗi tên được index theo từng vị trí đầu từ: "Áo thun nam" -> "ao thun nam", "thun nam", "nam"
+    private static Set<String> keysOf(String text) {
+        List<String> words = ProductSearchIndex.tokenize(text);
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < words.size(); i++) {
+            keys.add(String.join(" ", words.subList(i, words.size())));
+        }
+        return keys;
+    }
+
+    private static String normalize(String prefix) {
+        if (prefix == null) return "";
+        String key = String.join(" ", ProductSearchIndex.tokenize(prefix));
+        // Giữ dấu cách cuối để "ao " không khớp "aokhoac"
+        if (!key.isEmpty() && Character.isWhitespace(prefix.charAt(prefix.length() - 1))) {
+            key += " ";
+        }
+        return key;
+    }
+
+    private static class Node {
+        volatile Edges edges = Edges.EMPTY;
+        volatile Suggestion[] top = new Suggestion[0];
+        Suggestion[] terminals = new Suggestion[0];
+
+        Node child(char c) {
+            Edges e = edges;
+            int index = Arrays.binarySearch(e.keys, c);
+            return index >= 0 ? e.nodes[index] : null;
+        }
+
+        Node[] children() {
+            return edges.nodes;
+        }
+
+        boolean isLeaf() {
+            return edges.keys.length == 0;
+        }
+
+        Node addChild(char c) {
+            Edges e = edges;
+            int index = -(Arrays.binarySearch(e.keys, c) + 1);
+            char[] keys = new char[e.keys.length + 1];
+            Node[] nodes = new Node[e.nodes.length + 1];
+            System.arraycopy(e.keys, 0, keys, 0, index);
+            System.arraycopy(e.nodes, 0, nodes, 0, index);
+            System.arraycopy(e.keys, index, keys, index + 1, e.keys.length - index);
+            System.arraycopy(e.nodes, index, nodes, index + 1, e.nodes.length - index);
+            Node node = new Node();
+            keys[index] = c;
+            nodes[index] = node;
+            edges = new Edges(keys, nodes);
+            return node;
+        }
+
+        void removeChild(char c) {
+            Edges e = edges;
+            int index = Arrays.binarySearch(e.keys, c);
+            if (index < 0) return;
+            char[] keys = new char[e.keys.length - 1];
+            Node[] nodes = new Node[e.nodes.length - 1];
+            System.arraycopy(e.keys, 0, keys, 0, index);
+            System.arraycopy(e.nodes, 0, nodes, 0, index);
+            System.arraycopy(e.keys, index + 1, keys, index, e.keys.length - index - 1);
+            System.arraycopy(e.nodes, index + 1, nodes, index, e.nodes.length - index - 1);
+            edges = new Edges(keys, nodes);
+        }
+    }
+
+    // Ký tự (đã sort) và node con tương ứng; thay thế nguyên khối để reader luôn thấy cặp nhất quán
+    private static class Edges {
+        static final Edges EMPTY = new Edges(new char[0], new Node[0]);
+
+        final char[] keys;
+        final Node[] nodes;
+
+        Edges(char[] keys, Node[] nodes) {
+            this.keys = keys;
+            this.nodes = nodes;
+        }
+    }
+}
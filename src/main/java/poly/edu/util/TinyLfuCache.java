@@ -0,0 +1,296 @@
+package poly.edu.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Cache giới hạn kích thước theo kiểu W-TinyLFU (giống Caffeine, bản rút gọn):
+ * <ul>
+ *   <li>window LRU nhỏ (~1%) nhận mọi entry mới, chịu được burst truy cập;</li>
+ *   <li>main SLRU (probation 20% / protected 80%) giữ các entry được dùng lại;</li>
+ *   <li>khi main đầy, entry rời window chỉ được nhận nếu tần suất (đếm bằng
+ *       count-min sketch, có aging) cao hơn entry sắp bị loại của main.</li>
+ * </ul>
+ * Mọi thao tác trên cấu trúc được đồng bộ; loader chạy ngoài lock. Mỗi key có generation (bảng
+ * counter chia stripe theo hash + epoch của invalidateAll) tăng ở mỗi lần invalidate: giá trị loader
+ * đọc xong chỉ được lưu nếu generation của key không đổi trong lúc load, để lần load chen giữa một
+ * lần ghi và lần invalidate không đưa bản cũ trở lại cache.
+ */
+public class TinyLfuCache<K, V> {
+
+    private final String name;
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+
+    // accessOrder = true: entry đầu tiên luôn là LRU
+    private final LinkedHashMap<K, V> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+    private static final int GENERATION_STRIPES = 256;
+    private final long[] generations = new long[GENERATION_STRIPES];
+    private long epoch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Thống kê của cache
+     */
+    public record Stats(String name, long hits, long misses, long evictions, int size, int maximumSize, double hitRate) {
+    }
+
+    public TinyLfuCache(String name, int maximumSize) {
+        if (maximumSize < 2) throw new IllegalArgumentException("maximumSize must be >= 2");
+        this.name = name;
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (int) ((maximumSize - windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * Lấy value theo key, gọi loader nếu chưa có (value null thì không cache)
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        long stamp;
+        synchronized (this) {
+            V value = lookup(key);
+            if (value != null) return value;
+            stamp = stamp(key);
+        }
+        V value = loader.apply(key);
+        if (value != null) putIfUnchanged(key, value, stamp);
+        return value;
+    }
+
+    /**
+     * Lấy nhiều key một lần: các key chưa có được load chung bằng một lần gọi loader
+     * (loader trả map key -> value, key không có trong map thì bỏ qua)
+     */
+    public Map<K, V> getAll(Collection<K> keys, Function<List<K>, Map<K, V>> loader) {
+        Map<K, V> result = new HashMap<>();
+        Map<K, Long> stamps = new HashMap<>();
+        synchronized (this) {
+            for (K key : keys) {
+                V value = lookup(key);
+                if (value != null) {
+                    result.put(key, value);
+                } else {
+                    stamps.put(key, stamp(key));
+                }
+            }
+        }
+        if (stamps.isEmpty()) return result;
+        Map<K, V> loaded = loader.apply(new ArrayList<>(stamps.keySet()));
+        synchronized (this) {
+            loaded.forEach((key, value) -> {
+                Long stamp = stamps.get(key);
+                if (value == null || stamp == null) return;
+                result.put(key, value);
+                if (stamp(key) == stamp) put(key, value);
+            });
+        }
+        return result;
+    }
+
+    public synchronized V getIfPresent(K key) {
+        return lookup(key);
+    }
+
+    // Chỉ lưu nếu key không bị invalidate từ lúc lấy stamp
+    private synchronized void putIfUnchanged(K key, V value, long stamp) {
+        if (stamp(key) == stamp) {
+            put(key, value);
+        }
+    }
+
+    private V lookup(K key) {
+        sketch.increment(key);
+        V value = window.get(key);
+        if (value == null) {
+            value = protectedSegment.get(key);
+        }
+        if (value == null) {
+            value = probation.remove(key);
+            if (value != null) {
+                // Được dùng lại khi đang thử việc -> lên protected
+                protectedSegment.put(key, value);
+                demoteProtectedOverflow();
+            }
+        }
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (window.containsKey(key)) {
+            window.put(key, value);
+            return;
+        }
+        if (protectedSegment.containsKey(key)) {
+            protectedSegment.put(key, value);
+            return;
+        }
+        if (probation.containsKey(key)) {
+            probation.put(key, value);
+            return;
+        }
+        window.put(key, value);
+        if (window.size() > windowMaximum) {
+            Map.Entry<K, V> candidate = pollFirst(window);
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        generations[stripe(key)]++;
+        if (window.remove(key) == null && probation.remove(key) == null) {
+            protectedSegment.remove(key);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        epoch++;
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    public Stats stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long requests = hitCount + missCount;
+        double hitRate = requests == 0 ? 0.0 : (double) hitCount / requests;
+        return new Stats(name, hitCount, missCount, evictions.sum(), size(), maximumSize, hitRate);
+    }
+
+    // ===== Nội bộ (gọi khi đang giữ lock) =====
+
+    // Hai counter chỉ tăng nên tổng đổi khi key (hoặc key cùng stripe) bị invalidate hay cả cache bị xóa
+    private long stamp(K key) {
+        return epoch + generations[stripe(key)];
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    // Entry rời window: vào main nếu còn chỗ, nếu không thì đấu tần suất với victim của main
+    private void admit(K candidateKey, V candidateValue) {
+        int mainMaximum = maximumSize - windowMaximum;
+        if (probation.size() + protectedSegment.size() < mainMaximum) {
+            probation.put(candidateKey, candidateValue);
+            return;
+        }
+        LinkedHashMap<K, V> victimSegment = probation.isEmpty() ? protectedSegment : probation;
+        K victimKey = victimSegment.keySet().iterator().next();
+        if (sketch.frequency(candidateKey) > sketch.frequency(victimKey)) {
+            victimSegment.remove(victimKey);
+            probation.put(candidateKey, candidateValue);
+        }
+        evictions.increment();
+    }
+
+    private void demoteProtectedOverflow() {
+        while (protectedSegment.size() > protectedMaximum) {
+            Map.Entry<K, V> demoted = pollFirst(protectedSegment);
+            probation.put(demoted.getKey(), demoted.getValue());
+        }
+    }
+
+    private static <K, V> Map.Entry<K, V> pollFirst(LinkedHashMap<K, V> map) {
+        Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
+        Map.Entry<K, V> first = iterator.next();
+        Map.Entry<K, V> copy = Map.entry(first.getKey(), first.getValue());
+        iterator.remove();
+        return copy;
+    }
+
+    /**
+     * Count-min sketch 4 hàng, bộ đếm tối đa 15; sau mỗi sampleSize lần tăng thì chia đôi
+     * mọi bộ đếm để tần suất cũ giảm dần (aging)
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {0x97cb3127, 0xb7ca3c5d, 0x8b9c0c4d, 0x4d2f9a3b};
+        private static final int MAX_COUNT = 15;
+
+        private final int[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            int width = Integer.highestOneBit(Math.max(16, maximumSize) * 2 - 1);
+            this.table = new int[SEEDS.length][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * Math.max(16, maximumSize);
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < SEEDS.length; row++) {
+                frequency = Math.min(frequency, table[row][index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = index(hash, row);
+                if (table[row][index] < MAX_COUNT) {
+                    table[row][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return h & mask;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 17;
+            hash *= 0xed5ad4bb;
+            hash ^= hash >>> 11;
+            return hash;
+        }
+    }
+}
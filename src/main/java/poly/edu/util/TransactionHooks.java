@@ -0,0 +1,54 @@
+package poly.edu.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Chạy việc sau khi transaction hiện tại kết thúc (cache / index trong bộ nhớ chỉ đổi theo dữ liệu đã commit)
+ */
+public final class TransactionHooks {
+
+    // Đang chạy một hook afterCommit: Spring đã chụp danh sách synchronization nên hook đăng ký thêm
+    // lúc này sẽ không bao giờ chạy -> chạy ngay (transaction đã commit)
+    private static final ThreadLocal<Boolean> RUNNING_AFTER_COMMIT = ThreadLocal.withInitial(() -> false);
+
+    private TransactionHooks() {
+    }
+
+    /**
+     * Chạy action sau khi transaction hiện tại commit; không có transaction (hoặc đang ở trong một hook
+     * afterCommit) thì chạy ngay
+     */
+    public static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive() && !RUNNING_AFTER_COMMIT.get()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    RUNNING_AFTER_COMMIT.set(true);
+                    try {
+                        action.run();
+                    } finally {
+                        RUNNING_AFTER_COMMIT.set(false);
+                    }
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Chạy compensation nếu transaction hiện tại rollback; không có transaction thì bỏ qua
+     */
+    public static void afterRollback(Runnable compensation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    compensation.run();
+                }
+            }
+        });
+    }
+}
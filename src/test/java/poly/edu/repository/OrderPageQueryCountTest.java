@@ -0,0 +1,205 @@
+package poly.edu.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.TestPropertySource;
+import poly.edu.config.SqlStatementCounter;
+import poly.edu.model.Account;
+import poly.edu.model.Category;
+import poly.edu.model.Order;
+import poly.edu.model.OrderDetail;
+import poly.edu.model.OrderStatus;
+import poly.edu.model.OrderSummary;
+import poly.edu.model.Product;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Số câu SQL của các trang đơn hàng không được tăng theo số đơn / số dòng trong đơn (chống N+1).
+ * Mỗi "trang" đọc đúng các field mà template tương ứng hiển thị; đếm bằng SqlStatementCounter
+ * trên H2 (chế độ MSSQLServer).
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-pages;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=poly.edu.config.SqlStatementCounter"
+})
+class OrderPageQueryCountTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderDetailRepository orderDetailRepository;
+
+    private int sequence = 0;
+    private Integer pendingStatusId;
+    private final List<Category> categories = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        pendingStatusId = entityManager.persist(OrderStatus.builder().statusName("Pending").build()).getStatusId();
+        for (int i = 0; i < 5; i++) {
+            categories.add(entityManager.persist(Category.builder()
+                    .name("Category " + next())
+                    .createdAt(LocalDateTime.now())
+                    .build()));
+        }
+    }
+
+    @Test
+    void orderDetailPageDoesNotGrowWithItems() {
+        Account account = newAccount();
+        Order small = newOrder(account, 1);
+        Order large = newOrder(account, 25);
+
+        int smallStatements = statementsFor(() -> renderOrderDetail(small.getOrderId()));
+        int largeStatements = statementsFor(() -> renderOrderDetail(large.getOrderId()));
+
+        assertEquals(smallStatements, largeStatements,
+                "order detail page: " + smallStatements + " statements for 1 item, " + largeStatements + " for 25");
+    }
+
+    @Test
+    void orderHistoryPageDoesNotGrowWithOrders() {
+        Account few = newAccount();
+        newOrder(few, 2);
+        Account many = newAccount();
+        for (int i = 0; i < 30; i++) {
+            newOrder(many, 2);
+        }
+
+        int fewStatements = statementsFor(() -> renderOrderHistory(few.getAccountId()));
+        int manyStatements = statementsFor(() -> renderOrderHistory(many.getAccountId()));
+
+        assertEquals(1, fewStatements);
+        assertEquals(fewStatements, manyStatements);
+    }
+
+    @Test
+    void orderListWithAccountsDoesNotGrowWithOrders() {
+        newOrder(newAccount(), 1);
+        newOrder(newAccount(), 1);
+        int fewStatements = statementsFor(this::renderOrderEntityList);
+
+        for (int i = 0; i < 30; i++) {
+            newOrder(newAccount(), 1);
+        }
+        int manyStatements = statementsFor(this::renderOrderEntityList);
+
+        assertEquals(fewStatements, manyStatements,
+                "order list: " + fewStatements + " statements for 2 orders, " + manyStatements + " for 32");
+    }
+
+    // ===== "Trang" (đọc các field mà template dùng) =====
+
+    // order-detail.html / admin/order-detail.html
+    private void renderOrderDetail(Integer orderId) {
+        Order order = orderRepository.findWithAccountByOrderId(orderId).orElseThrow();
+        assertNotNull(order.getAccount().getFullName());
+        assertNotNull(order.getStatusName());
+        List<OrderDetail> details = orderDetailRepository.findWithProductByOrderId(orderId);
+        for (OrderDetail detail : details) {
+            assertNotNull(detail.getProduct().getName());
+            assertNotNull(detail.getProduct().getImageUrl());
+            assertNotNull(detail.getProduct().getCategory().getName());
+        }
+    }
+
+    // orders.html
+    private void renderOrderHistory(Integer accountId) {
+        for (OrderSummary order : orderRepository.findSummariesByAccountId(accountId)) {
+            assertNotNull(order.customerName());
+        }
+    }
+
+    // Các đường còn dùng entity Order (dashboard, báo cáo): account + trạng thái từng đơn
+    private void renderOrderEntityList() {
+        for (Order order : orderRepository.findAllByOrderByOrderDateDesc()) {
+            assertNotNull(order.getAccount().getFullName());
+            assertNotNull(order.getStatusName());
+            order.getAccount().getRoles().size();
+        }
+    }
+
+    // ===== Dữ liệu =====
+
+    private int statementsFor(Runnable page) {
+        entityManager.flush();
+        entityManager.clear();
+        SqlStatementCounter.start();
+        try {
+            page.run();
+            return SqlStatementCounter.current().statements();
+        } finally {
+            SqlStatementCounter.stop();
+        }
+    }
+
+    private Account newAccount() {
+        int n = next();
+        return entityManager.persist(Account.builder()
+                .username("user" + n)
+                .email("user" + n + "@test.local")
+                .password("secret")
+                .fullName("Customer " + n)
+                .active(true)
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+
+    private Order newOrder(Account account, int items) {
+        Order order = entityManager.persist(Order.builder()
+                .accountId(account.getAccountId())
+                .orderDate(LocalDateTime.now().minusMinutes(next()))
+                .statusId(pendingStatusId)
+                .total(0.0)
+                .shippingAddress("Address")
+                .phone("0900000000")
+                .build());
+        for (int i = 0; i < items; i++) {
+            Product product = newProduct(categories.get(i % categories.size()));
+            entityManager.persist(OrderDetail.builder()
+                    .orderId(order.getOrderId())
+                    .productId(product.getProductId())
+                    .quantity(1)
+                    .unitPrice(product.getPrice())
+                    .build());
+        }
+        return order;
+    }
+
+    private Product newProduct(Category category) {
+        int n = next();
+        return entityManager.persist(Product.builder()
+                .categoryId(category.getCategoryId().intValue())
+                .name("Product " + n)
+                .description("Description " + n)
+                .price(100_000.0)
+                .quantity(10)
+                .imageUrl("/images/" + n + ".jpg")
+                .rating(0.0)
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+
+    private int next() {
+        return ++sequence;
+    }
+}
@@ -0,0 +1,116 @@
+package poly.edu.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SMTP server tối giản chạy trong test (loopback, cổng ngẫu nhiên).
+ * Người nhận có chứa "reject" bị trả 550; mỗi mail nhận được lưu lại để kiểm tra.
+ */
+class FakeSmtpServer {
+
+    record Received(List<String> recipients, String data) {
+    }
+
+    private final List<Received> messages = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+
+    void start() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(this::acceptLoop, "fake-smtp");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    void stop() {
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    List<Received> getMessages() {
+        return messages;
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try (Socket socket = serverSocket.accept()) {
+                connections.incrementAndGet();
+                handle(socket);
+            } catch (IOException e) {
+                // Server đã đóng hoặc client ngắt kết nối
+            }
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        reply(out, "220 localhost ESMTP");
+
+        List<String> recipients = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            String command = line.toUpperCase();
+            if (command.startsWith("EHLO")) {
+                reply(out, "250-localhost\r\n250 OK");
+            } else if (command.startsWith("HELO") || command.startsWith("NOOP")) {
+                reply(out, "250 OK");
+            } else if (command.startsWith("MAIL FROM")) {
+                recipients.clear();
+                reply(out, "250 OK");
+            } else if (command.startsWith("RCPT TO")) {
+                if (line.contains("reject")) {
+                    reply(out, "550 5.1.1 User unknown");
+                } else {
+                    recipients.add(line.substring(line.indexOf(':') + 1).trim());
+                    reply(out, "250 OK");
+                }
+            } else if (command.startsWith("DATA")) {
+                reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                StringBuilder data = new StringBuilder();
+                while ((line = in.readLine()) != null && !line.equals(".")) {
+                    data.append(line).append('\n');
+                }
+                messages.add(new Received(List.copyOf(recipients), data.toString()));
+                recipients.clear();
+                reply(out, "250 OK queued");
+            } else if (command.startsWith("RSET")) {
+                recipients.clear();
+                reply(out, "250 OK");
+            } else if (command.startsWith("QUIT")) {
+                reply(out, "221 Bye");
+                return;
+            } else {
+                reply(out, "502 Command not implemented");
+            }
+        }
+    }
+
+    private static void reply(Writer out, String response) throws IOException {
+        out.write(response + "\r\n");
+        out.flush();
+    }
+}
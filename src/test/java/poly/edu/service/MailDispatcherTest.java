@@ -0,0 +1,129 @@
+package poly.edu.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import poly.edu.model.MailOutbox;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Gửi mail của MailDispatcher qua FakeSmtpServer (không cần database / SMTP thật)
+ */
+class MailDispatcherTest {
+
+    private FakeSmtpServer smtp;
+    private MailDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        smtp = new FakeSmtpServer();
+        smtp.start();
+
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("127.0.0.1");
+        sender.setPort(smtp.getPort());
+        sender.getJavaMailProperties().setProperty("mail.smtp.from", "shop@test.local");
+
+        dispatcher = new MailDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "mailSender", sender);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "initialBackoffMs", 1000L);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMs", 60000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        smtp.stop();
+    }
+
+    @Test
+    void sendsWholeChunkOverOneConnection() {
+        List<MailOutbox> chunk = List.of(
+                mail(1L, "a@test.local"), mail(2L, "b@test.local"), mail(3L, "c@test.local"),
+                mail(4L, "d@test.local"), mail(5L, "e@test.local"));
+
+        dispatcher.sendChunk(chunk);
+
+        assertEquals(1, smtp.getConnections());
+        assertEquals(5, smtp.getMessages().size());
+        for (MailOutbox mail : chunk) {
+            assertEquals(MailOutbox.SENT, mail.getStatus());
+            assertEquals(1, mail.getAttempts());
+            assertNotNull(mail.getSentAt());
+            assertEquals("", mail.getBody());
+        }
+    }
+
+    @Test
+    void rejectedRecipientIsRetriedWithBackoffWhileOthersAreSent() {
+        MailOutbox ok = mail(1L, "ok@test.local");
+        MailOutbox rejected = mail(2L, "reject@test.local");
+        LocalDateTime before = LocalDateTime.now();
+
+        dispatcher.sendChunk(List.of(ok, rejected));
+
+        assertEquals(MailOutbox.SENT, ok.getStatus());
+        assertEquals(MailOutbox.PENDING, rejected.getStatus());
+        assertEquals(1, rejected.getAttempts());
+        assertFalse(rejected.getBody().isEmpty());
+        assertNotNull(rejected.getLastError());
+        assertFalse(rejected.getNextAttemptAt().isBefore(before.plusSeconds(1)));
+        assertEquals(1, smtp.getMessages().size());
+        assertEquals(1, smtp.getConnections());
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        MailOutbox rejected = mail(1L, "reject@test.local");
+        rejected.setAttempts(2);
+
+        dispatcher.sendChunk(List.of(rejected));
+
+        assertEquals(MailOutbox.FAILED, rejected.getStatus());
+        assertEquals(3, rejected.getAttempts());
+        assertEquals("", rejected.getBody());
+    }
+
+    @Test
+    void unreachableServerFailsWholeChunkForRetry() {
+        smtp.stop();
+        MailOutbox first = mail(1L, "a@test.local");
+        MailOutbox second = mail(2L, "b@test.local");
+
+        dispatcher.sendChunk(List.of(first, second));
+
+        assertEquals(MailOutbox.PENDING, first.getStatus());
+        assertEquals(MailOutbox.PENDING, second.getStatus());
+        assertEquals(1, first.getAttempts());
+        assertEquals(1, second.getAttempts());
+    }
+
+    @Test
+    void backoffDoublesUpToCap() {
+        assertEquals(1000, dispatcher.backoffMs(1));
+        assertEquals(2000, dispatcher.backoffMs(2));
+        assertEquals(4000, dispatcher.backoffMs(3));
+        assertEquals(60000, dispatcher.backoffMs(10));
+        assertEquals(60000, dispatcher.backoffMs(100));
+    }
+
+    private static MailOutbox mail(Long id, String recipient) {
+        LocalDateTime now = LocalDateTime.now();
+        return MailOutbox.builder()
+                .mailId(id)
+                .recipient(recipient)
+                .subject("Đặt lại mật khẩu")
+                .body("Mã đặt lại mật khẩu của bạn là: 12345678")
+                .status(MailOutbox.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build();
+    }
+}